@@ -0,0 +1,153 @@
+package com.alami.dpd;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic loans shared by the benchmarks.
+ */
+public final class BenchmarkLoans {
+    static final LocalDate FIRST_MATURITY_DATE = LocalDate.parse("2024-01-20");
+    private static final BigDecimal AMOUNT = BigDecimal.valueOf(1_000_000);
+
+    /**
+     * Repayment pattern of a benchmark schedule.
+     */
+    public enum Mix {
+        /** every period paid, every third one late */
+        PAID,
+        /** nothing paid */
+        NOT_PAID,
+        /** every period has a partial repayment row followed by a paid row */
+        PARTIAL,
+        /** written-off loan: first half paid, rest not paid, plus a write-off row */
+        WRITTEN_OFF,
+        /** first third paid, grace every sixth period, partial every fifth, rest not paid */
+        MIXED
+    }
+
+    private BenchmarkLoans() {
+    }
+
+    /**
+     * Schedules up to 36 installments are monthly, longer ones daily.
+     */
+    static LocalDate maturityDate(int size, int period) {
+        return size > 36
+                ? FIRST_MATURITY_DATE.plusDays(period - 1L)
+                : FIRST_MATURITY_DATE.plusMonths(period - 1L);
+    }
+
+    /**
+     * Fifteen days after the maturity of the middle installment.
+     */
+    static LocalDate calculationDate(int size) {
+        return maturityDate(size, size / 2 + 1).plusDays(15);
+    }
+
+    static InstallmentLoanV3 installmentLoan(int size, Mix mix) {
+        List<InstallmentV3> installments = new ArrayList<>();
+        for (int period = 1; period <= size; period++) {
+            LocalDate maturityDate = maturityDate(size, period);
+            switch (mix) {
+                case PAID -> installments.add(paid(period, maturityDate, period % 3 == 0 ? 4 : 0));
+                case NOT_PAID -> installments.add(notPaid(period, maturityDate));
+                case PARTIAL -> {
+                    installments.add(partial(period, maturityDate));
+                    installments.add(paid(period, maturityDate, 2));
+                }
+                case WRITTEN_OFF -> installments.add(period <= size / 2
+                        ? paid(period, maturityDate, 1)
+                        : notPaid(period, maturityDate));
+                case MIXED -> {
+                    if (period % 6 == 0) {
+                        installments.add(grace(period, maturityDate));
+                    } else if (period <= size / 3) {
+                        installments.add(paid(period, maturityDate, period % 4));
+                    } else if (period % 5 == 0) {
+                        installments.add(partial(period, maturityDate));
+                    } else {
+                        installments.add(notPaid(period, maturityDate));
+                    }
+                }
+            }
+        }
+        if (mix == Mix.WRITTEN_OFF) {
+            installments.add(InstallmentV3.builder()
+                    .repaymentStatus(RepaymentStatus.WRITE_OFF)
+                    .writtenOfDate(calculationDate(size))
+                    .period(size + 1)
+                    .build());
+        }
+        return InstallmentLoanV3.builder()
+                .installments(installments)
+                .status(mix == Mix.WRITTEN_OFF ? Status.WRITE_OFF : Status.DISBURSEMENT)
+                .build();
+    }
+
+    static LumpsumLoan lumpsumLoan(int index, LocalDate today) {
+        return LumpsumLoan.builder()
+                .maturityDate(today.minusDays(index % 120 - 30))
+                .today(today)
+                .status(index % 4 == 0 ? Status.REPAYMENT_SUCCESS : Status.DISBURSEMENT)
+                .repaymentStatus(RepaymentStatus.NOT_PAID)
+                .build();
+    }
+
+    static List<PartialLumpsumLoan> partialLumpsumLoans(int index, int tranches, LocalDate today) {
+        List<PartialLumpsumLoan> partialLumpsumLoans = new ArrayList<>();
+        for (int period = 1; period <= tranches; period++) {
+            partialLumpsumLoans.add(PartialLumpsumLoan.builder()
+                    .period(period)
+                    .amount(AMOUNT)
+                    .benefPaymentAmount(period < tranches ? AMOUNT : BigDecimal.ZERO)
+                    .maturityDate(today.minusDays(index % 90 - 30).plusDays(period * 7L - tranches * 7L))
+                    .today(today)
+                    .status(period < tranches ? RepaymentStatus.PARTIAL_REPAYMENT : RepaymentStatus.NOT_PAID)
+                    .build());
+        }
+        return partialLumpsumLoans;
+    }
+
+    private static InstallmentV3 paid(int period, LocalDate maturityDate, int daysLate) {
+        return InstallmentV3.builder()
+                .maturityDate(maturityDate)
+                .amount(AMOUNT)
+                .paidAmount(AMOUNT)
+                .repaymentStatus(RepaymentStatus.PAID)
+                .repaymentDate(maturityDate.plusDays(daysLate))
+                .period(period)
+                .build();
+    }
+
+    private static InstallmentV3 notPaid(int period, LocalDate maturityDate) {
+        return InstallmentV3.builder()
+                .maturityDate(maturityDate)
+                .amount(AMOUNT)
+                .repaymentStatus(RepaymentStatus.NOT_PAID)
+                .period(period)
+                .build();
+    }
+
+    private static InstallmentV3 partial(int period, LocalDate maturityDate) {
+        return InstallmentV3.builder()
+                .maturityDate(maturityDate)
+                .amount(AMOUNT)
+                .paidAmount(AMOUNT.divide(BigDecimal.valueOf(2)))
+                .repaymentStatus(RepaymentStatus.PARTIAL_REPAYMENT)
+                .repaymentDate(maturityDate.minusDays(1))
+                .period(period)
+                .build();
+    }
+
+    private static InstallmentV3 grace(int period, LocalDate maturityDate) {
+        return InstallmentV3.builder()
+                .maturityDate(maturityDate)
+                .amount(BigDecimal.ZERO)
+                .repaymentStatus(RepaymentStatus.GRACE_PERIOD)
+                .period(period)
+                .build();
+    }
+}
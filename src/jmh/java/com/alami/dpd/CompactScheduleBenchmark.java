@@ -0,0 +1,84 @@
+package com.alami.dpd;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DPD of an irregular schedule, whose dates and amounts fall back to varint deltas, read through
+ * the sequential cursors of {@link CompactSchedule#calculateLatestDpd} and through plain random
+ * access, against the uncompressed {@link ColumnarSchedule}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactScheduleBenchmark {
+    @Param({"36", "360"})
+    private int size;
+
+    private CompactSchedule compact;
+    private ColumnarSchedule columnar;
+    private LocalDate calculationDate;
+    private int calculationDay;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(size);
+        List<InstallmentV3> installments = new ArrayList<>();
+        LocalDate maturityDate = BenchmarkLoans.FIRST_MATURITY_DATE;
+        for (int period = 1; period <= size; period++) {
+            maturityDate = maturityDate.plusDays(20 + random.nextInt(20));
+            boolean paid = period <= size / 2;
+            BigDecimal amount = BigDecimal.valueOf(1_000_000 + random.nextInt(100_000));
+            installments.add(InstallmentV3.builder()
+                    .maturityDate(maturityDate)
+                    .amount(amount)
+                    .paidAmount(paid ? amount : null)
+                    .repaymentStatus(paid ? RepaymentStatus.PAID : RepaymentStatus.NOT_PAID)
+                    .repaymentDate(paid ? maturityDate.plusDays(random.nextInt(10)) : null)
+                    .period(period)
+                    .build());
+        }
+        InstallmentLoanV3 loan = InstallmentLoanV3.builder().installments(installments).status(Status.DISBURSEMENT).build();
+        compact = CompactSchedule.of(loan);
+        columnar = ColumnarSchedule.of(List.of(loan));
+        calculationDate = installments.get(size / 2).getMaturityDate().plusDays(15);
+        calculationDay = EpochDays.of(calculationDate);
+    }
+
+    @Benchmark
+    public Dpd sequential() {
+        return compact.calculateLatestDpd(calculationDate);
+    }
+
+    /**
+     * Each read decodes from its checkpoint, as before the cursors.
+     */
+    @Benchmark
+    public long randomAccess() {
+        return DpdKernel.calculate(compact, 0, compact.rowCount(), false, calculationDay);
+    }
+
+    @Benchmark
+    public Dpd columnar() {
+        return columnar.calculateLatestDpd(0, calculationDate);
+    }
+}
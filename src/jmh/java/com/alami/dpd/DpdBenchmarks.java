@@ -0,0 +1,27 @@
+package com.alami.dpd;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of {@code target/benchmarks.jar}. Takes the usual JMH command line and always adds the
+ * gc profiler, so every run reports allocation rate ({@code gc.alloc.rate.norm}) next to throughput.
+ *
+ * <pre>
+ * mvn -Pjmh package -DskipTests
+ * java -jar target/benchmarks.jar                      # everything
+ * java -jar target/benchmarks.jar InstallmentLoanV3 -p size=360
+ * </pre>
+ */
+public class DpdBenchmarks {
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,101 @@
+package com.alami.dpd;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A portfolio of 10,000 loans sharing {@code shapes} schedule shapes, calculated directly with
+ * {@link PrimitiveDpdCalculator} and through a warm {@link DpdFingerprintCache}. Scores are whole
+ * portfolios per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DpdFingerprintCacheBenchmark {
+    private static final int LOANS = 10_000;
+
+    @Param({"12", "36", "360"})
+    private int size;
+
+    @Param({"100"})
+    private int shapes;
+
+    private List<InstallmentLoanV3> loans;
+    private LocalDate calculationDate;
+    private DpdFingerprintCache cache;
+    private final Checksum checksum = new Checksum();
+
+    @Setup
+    public void setUp() {
+        loans = new ArrayList<>(LOANS);
+        for (int i = 0; i < LOANS; i++) {
+            loans.add(loan(i % shapes, BigDecimal.valueOf(1_000_000 + i)));
+        }
+        calculationDate = BenchmarkLoans.FIRST_MATURITY_DATE.plusMonths(size / 2).plusDays(15);
+        cache = DpdFingerprintCache.builder().maximumBytes(64L << 20).build();
+        cache.calculateAll(loans, calculationDate, checksum);
+    }
+
+    @Benchmark
+    public long direct() {
+        checksum.sum = 0;
+        PrimitiveDpdCalculator.calculateAll(loans, calculationDate, checksum);
+        return checksum.sum;
+    }
+
+    @Benchmark
+    public long cached() {
+        checksum.sum = 0;
+        cache.calculateAll(loans, calculationDate, checksum);
+        return checksum.sum;
+    }
+
+    /**
+     * Monthly schedule disbursed {@code shape % 10} days apart whose first {@code shape / 10} periods
+     * are paid, a few days late.
+     */
+    private InstallmentLoanV3 loan(int shape, BigDecimal amount) {
+        List<InstallmentV3> installments = new ArrayList<>(size);
+        LocalDate firstMaturityDate = BenchmarkLoans.FIRST_MATURITY_DATE.plusDays(shape % 10);
+        for (int period = 1; period <= size; period++) {
+            LocalDate maturityDate = firstMaturityDate.plusMonths(period - 1);
+            boolean paid = period <= shape / 10;
+            installments.add(InstallmentV3.builder()
+                    .maturityDate(maturityDate)
+                    .amount(amount)
+                    .paidAmount(paid ? amount : null)
+                    .repaymentStatus(paid ? RepaymentStatus.PAID : RepaymentStatus.NOT_PAID)
+                    .repaymentDate(paid ? maturityDate.plusDays(period % 4) : null)
+                    .period(period)
+                    .build());
+        }
+        return InstallmentLoanV3.builder().installments(installments).status(Status.DISBURSEMENT).build();
+    }
+
+    private static final class Checksum implements PrimitiveDpdSink {
+        private long sum;
+
+        @Override
+        public void accept(int loanIndex, int latestDpd, int maxDpd) {
+            sum += 31L * latestDpd + maxDpd;
+        }
+    }
+}
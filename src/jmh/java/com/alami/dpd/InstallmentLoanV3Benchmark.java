@@ -0,0 +1,67 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstallmentLoanV3Benchmark {
+    @Param({"3", "12", "36", "360", "1000"})
+    private int size;
+
+    @Param({"PAID", "NOT_PAID", "PARTIAL", "WRITTEN_OFF", "MIXED"})
+    private BenchmarkLoans.Mix mix;
+
+    private InstallmentLoanV3 loan;
+    private List<InstallmentLoanV3> loans;
+    private LocalDate calculationDate;
+    private final Checksum checksum = new Checksum();
+
+    @Setup
+    public void setUp() {
+        loan = BenchmarkLoans.installmentLoan(size, mix);
+        loans = List.of(loan);
+        calculationDate = BenchmarkLoans.calculationDate(size);
+    }
+
+    @Benchmark
+    public Dpd calculateLatestDpd() {
+        return loan.calculateLatestDpd(calculationDate);
+    }
+
+    /**
+     * Allocation-free path; gc.alloc.rate.norm should be about 0 B/op.
+     */
+    @Benchmark
+    public long primitive() {
+        checksum.sum = 0;
+        PrimitiveDpdCalculator.calculateAll(loans, calculationDate, checksum);
+        return checksum.sum;
+    }
+
+    private static final class Checksum implements PrimitiveDpdSink {
+        private long sum;
+
+        @Override
+        public void accept(int loanIndex, int latestDpd, int maxDpd) {
+            sum += 31L * latestDpd + maxDpd;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Array batches of {@link LumpsumBatch}. For the Vector API kernel build with {@code -Pjmh,vector} and
+ * pass {@code -jvmArgsAppend --add-modules=jdk.incubator.vector}; {@code scalar} always measures the fallback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LumpsumBatchBenchmark {
+    private static final int LOANS = 1 << 20;
+
+    @Param({"65536", "1048576"})
+    private int size;
+
+    private final int[] maturityDays = new int[LOANS];
+    private final byte[] statuses = new byte[LOANS];
+    private final int[] dpd = new int[LOANS];
+    private final ScalarLumpsumKernel scalar = new ScalarLumpsumKernel();
+    private LocalDate today;
+
+    @Setup
+    public void setUp() {
+        today = LocalDate.parse("2025-04-30");
+        for (int i = 0; i < LOANS; i++) {
+            LumpsumLoan loan = BenchmarkLoans.lumpsumLoan(i, today);
+            maturityDays[i] = (int) loan.getMaturityDate().toEpochDay();
+            statuses[i] = (byte) loan.getStatus().ordinal();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOANS)
+    public int[] batch() {
+        for (int from = 0; from < LOANS; from += size) {
+            LumpsumBatch.calculate(maturityDays, statuses, from, from + size, today, dpd);
+        }
+        return dpd;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOANS)
+    public int[] scalar() {
+        scalar.calculate(maturityDays, statuses, 0, LOANS, (int) today.toEpochDay(), dpd);
+        return dpd;
+    }
+}
@@ -0,0 +1,59 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartialLumpsumBenchmark {
+    private static final int LOANS = 1024;
+
+    @Param({"1", "4"})
+    private int tranches;
+
+    private final PartialLumpsum partialLumpsum = new PartialLumpsum();
+    private final List<List<PartialLumpsumLoan>> loans = new ArrayList<>();
+    private LocalDate today;
+
+    @Setup
+    public void setUp() {
+        today = LocalDate.parse("2025-04-30");
+        for (int i = 0; i < LOANS; i++) {
+            loans.add(BenchmarkLoans.partialLumpsumLoans(i, tranches, today));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOANS)
+    public void calculate(Blackhole blackhole) {
+        for (List<PartialLumpsumLoan> partialLumpsumLoans : loans) {
+            blackhole.consume(partialLumpsum.calculate(partialLumpsumLoans));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOANS)
+    public void calculateAll(Blackhole blackhole) {
+        partialLumpsum.calculateAll(loans, today, (loan, dpd) -> blackhole.consume(dpd));
+    }
+}
@@ -0,0 +1,94 @@
+package com.alami.dpd;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Allocating a payment a month over a schedule that is fully unpaid, through the {@link InstallmentLoanV3}
+ * API and through the primitive path on {@link InstallmentRowBuffer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaymentWaterfallBenchmark {
+    @Param({"36", "360"})
+    private int size;
+
+    @Param({"false", "true"})
+    private boolean prepayment;
+
+    private PaymentWaterfall waterfall;
+    private InstallmentLoanV3 loan;
+    private List<PaymentWaterfall.Payment> payments;
+    private LocalDate calculationDate;
+
+    private final InstallmentRowBuffer rows = new InstallmentRowBuffer();
+    private int[] maturityDays;
+    private long amount;
+    private int[] paymentDays;
+    private long[] paymentAmounts;
+    private int calculationDay;
+
+    @Setup
+    public void setUp() {
+        waterfall = PaymentWaterfall.builder().prepayment(prepayment).build();
+        loan = BenchmarkLoans.installmentLoan(size, BenchmarkLoans.Mix.NOT_PAID);
+        calculationDate = BenchmarkLoans.calculationDate(size);
+
+        BigDecimal installmentAmount = loan.getInstallments().get(0).getAmount();
+        payments = new ArrayList<>();
+        for (LocalDate date = BenchmarkLoans.FIRST_MATURITY_DATE; !date.isAfter(calculationDate); date = date.plusDays(30)) {
+            payments.add(new PaymentWaterfall.Payment(date, installmentAmount.multiply(BigDecimal.valueOf(size > 36 ? 25 : 1))));
+        }
+
+        maturityDays = new int[size];
+        for (int row = 0; row < size; row++) {
+            maturityDays[row] = EpochDays.of(loan.getInstallments().get(row).getMaturityDate());
+        }
+        amount = MinorUnits.of(installmentAmount, waterfall.getScale());
+        paymentDays = new int[payments.size()];
+        paymentAmounts = new long[payments.size()];
+        for (int i = 0; i < payments.size(); i++) {
+            paymentDays[i] = EpochDays.of(payments.get(i).getDate());
+            paymentAmounts[i] = MinorUnits.of(payments.get(i).getAmount(), waterfall.getScale());
+        }
+        calculationDay = EpochDays.of(calculationDate);
+    }
+
+    @Benchmark
+    public PaymentWaterfall.Allocation allocate() {
+        return waterfall.allocate(loan, payments, calculationDate);
+    }
+
+    /**
+     * Refills the rows and allocates in place; includes the kernel pass the loan API also makes.
+     */
+    @Benchmark
+    public long primitive() {
+        rows.clear();
+        for (int row = 0; row < size; row++) {
+            rows.add(row + 1, maturityDays[row], InstallmentRows.NO_DATE, InstallmentRows.NO_DATE,
+                    amount, InstallmentRows.NO_AMOUNT, DpdKernel.NOT_PAID);
+        }
+        long unallocated = waterfall.allocate(rows, paymentDays, paymentAmounts, paymentDays.length, calculationDay);
+        return unallocated + DpdKernel.calculate(rows, 0, rows.size(), false, calculationDay);
+    }
+}
@@ -0,0 +1,141 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Consolidates the DPD of every borrower's loans into the borrower's worst latestDpd and worst
+ * maxDpd, across products.
+ *
+ * <p>Loans are tagged with their borrower by a {@code borrowerOf} function and calculated in parallel
+ * by a {@link PortfolioDpdEngine}. Unsorted input goes through a hash aggregation that keeps one packed
+ * {@code long} per borrower; input sorted (or just grouped) by borrower goes through a sorted merge
+ * that keeps nothing but the borrower being merged and hands every borrower to a sink as soon as its
+ * last loan is calculated. Either way memory grows with the number of borrowers at most, not loans.
+ */
+@Getter
+public final class BorrowerDpdAggregator {
+    private final PortfolioDpdEngine engine;
+
+    /**
+     * @param engine engine to calculate loans with, a default {@link PortfolioDpdEngine} when null
+     */
+    @Builder
+    private BorrowerDpdAggregator(PortfolioDpdEngine engine) {
+        this.engine = engine != null ? engine : PortfolioDpdEngine.builder().build();
+    }
+
+    /**
+     * Hash aggregation of loans in any order.
+     */
+    public <K, L> Map<K, Dpd> aggregate(Collection<? extends L> loans, Function<? super L, ? extends K> borrowerOf,
+                                        LocalDate calculationDate) {
+        ConcurrentHashMap<K, Long> borrowers = new ConcurrentHashMap<>();
+        engine.calculate(loans, calculationDate, (L loan, Dpd dpd) ->
+                borrowers.merge(borrowerOf.apply(loan), pack(dpd), BorrowerDpdAggregator::worst));
+
+        Map<K, Dpd> results = new HashMap<>(borrowers.size() * 4 / 3 + 1);
+        borrowers.forEach((borrower, packed) -> results.put(borrower, DpdKernel.toDpd(packed)));
+        return results;
+    }
+
+    /**
+     * Sorted merge of loans whose borrowers are contiguous, as they are when the input is sorted by
+     * borrower. The list is split at borrower boundaries so each borrower is merged by one worker;
+     * the sink is called once per borrower, from several threads at once.
+     */
+    public <K, L> void aggregateSorted(List<? extends L> loans, Function<? super L, ? extends K> borrowerOf,
+                                       LocalDate calculationDate, DpdSink<? super K> sink) {
+        engine.getPool().invoke(new MergeTask<>(engine, loans, 0, loans.size(), borrowerOf, calculationDate, sink));
+    }
+
+    private static long pack(Dpd dpd) {
+        return DpdKernel.pack(dpd.getLatestDpd(), dpd.getMaxDpd());
+    }
+
+    private static long worst(long a, long b) {
+        return DpdKernel.pack(Math.max(DpdKernel.latestDpd(a), DpdKernel.latestDpd(b)),
+                Math.max(DpdKernel.maxDpd(a), DpdKernel.maxDpd(b)));
+    }
+
+    /**
+     * Merges {@code [from, to)}, a range that starts and ends at borrower boundaries. Ranges larger
+     * than the engine's chunk size are split in two near the middle, at the next borrower boundary.
+     */
+    private static final class MergeTask<K, L> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final PortfolioDpdEngine engine;
+        private final List<? extends L> loans;
+        private final int from;
+        private final int to;
+        private final Function<? super L, ? extends K> borrowerOf;
+        private final LocalDate calculationDate;
+        private final DpdSink<? super K> sink;
+
+        MergeTask(PortfolioDpdEngine engine, List<? extends L> loans, int from, int to,
+                  Function<? super L, ? extends K> borrowerOf, LocalDate calculationDate, DpdSink<? super K> sink) {
+            this.engine = engine;
+            this.loans = loans;
+            this.from = from;
+            this.to = to;
+            this.borrowerOf = borrowerOf;
+            this.calculationDate = calculationDate;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > engine.getChunkSize()) {
+                int split = nextBorrowerBoundary((from + to) >>> 1);
+                if (split < to) {
+                    invokeAll(new MergeTask<>(engine, loans, from, split, borrowerOf, calculationDate, sink),
+                            new MergeTask<>(engine, loans, split, to, borrowerOf, calculationDate, sink));
+                    return;
+                }
+            }
+            merge();
+        }
+
+        private int nextBorrowerBoundary(int index) {
+            K borrower = borrowerOf.apply(loans.get(index - 1));
+            while (index < to && Objects.equals(borrower, borrowerOf.apply(loans.get(index)))) {
+                index++;
+            }
+            return index;
+        }
+
+        private void merge() {
+            DpdCalculator<Object> calculator = engine.getCalculator();
+            K borrower = null;
+            long packed = 0;
+            for (int i = from; i < to; i++) {
+                L loan = loans.get(i);
+                K loanBorrower = borrowerOf.apply(loan);
+                long dpd = pack(calculator.calculate(loan, calculationDate));
+                if (i == from || !Objects.equals(borrower, loanBorrower)) {
+                    if (i > from) {
+                        sink.accept(borrower, DpdKernel.toDpd(packed));
+                    }
+                    borrower = loanBorrower;
+                    packed = dpd;
+                } else {
+                    packed = worst(packed, dpd);
+                }
+            }
+            if (to > from) {
+                sink.accept(borrower, DpdKernel.toDpd(packed));
+            }
+        }
+    }
+}
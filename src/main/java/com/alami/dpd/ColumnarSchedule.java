@@ -0,0 +1,355 @@
+package com.alami.dpd;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Struct-of-arrays store of many installment schedules: one primitive array per installment field
+ * instead of one {@link InstallmentV3} object per row.
+ *
+ * <p>Dates are kept as epoch days, amounts as minor units of the given scale (2 decimals by default),
+ * statuses as enum ordinals. Rows of one loan are contiguous and stably ordered by period, so
+ * {@link #installments(int)} returns them in period order. Instances are immutable once built and
+ * can be shared between threads.
+ */
+public final class ColumnarSchedule implements InstallmentRows {
+    public static final int DEFAULT_SCALE = 2;
+
+    private final int scale;
+    private final int loanCount;
+    private final int[] rowOffsets;
+    private final byte[] loanStatuses;
+    private final int[] periods;
+    private final int[] maturityDays;
+    private final int[] repaymentDays;
+    private final int[] writtenOffDays;
+    private final long[] amounts;
+    private final long[] paidAmounts;
+    private final byte[] repaymentStatuses;
+    private final int[] promotedRows;
+    private final byte[] recordedRepaymentStatuses;
+    private final int[] recordedRepaymentDays;
+
+    private ColumnarSchedule(Builder builder) {
+        int rowCount = builder.rowCount;
+        this.scale = builder.scale;
+        this.loanCount = builder.loanCount;
+        this.rowOffsets = Arrays.copyOf(builder.rowOffsets, loanCount + 1);
+        this.loanStatuses = Arrays.copyOf(builder.loanStatuses, loanCount);
+        this.periods = Arrays.copyOf(builder.periods, rowCount);
+        this.maturityDays = Arrays.copyOf(builder.maturityDays, rowCount);
+        this.repaymentDays = Arrays.copyOf(builder.repaymentDays, rowCount);
+        this.writtenOffDays = Arrays.copyOf(builder.writtenOffDays, rowCount);
+        this.amounts = Arrays.copyOf(builder.amounts, rowCount);
+        this.paidAmounts = Arrays.copyOf(builder.paidAmounts, rowCount);
+        this.repaymentStatuses = Arrays.copyOf(builder.repaymentStatuses, rowCount);
+        this.promotedRows = Arrays.copyOf(builder.promotedRows, builder.promotedCount);
+        this.recordedRepaymentStatuses = Arrays.copyOf(builder.recordedRepaymentStatuses, builder.promotedCount);
+        this.recordedRepaymentDays = Arrays.copyOf(builder.recordedRepaymentDays, builder.promotedCount);
+    }
+
+    public static ColumnarSchedule of(List<InstallmentLoanV3> loans) {
+        Builder builder = builder(DEFAULT_SCALE);
+        for (InstallmentLoanV3 loan : loans) {
+            builder.add(loan);
+        }
+        return builder.build();
+    }
+
+    public static ColumnarSchedule of(List<InstallmentV3> installments, Status status) {
+        return builder(DEFAULT_SCALE).add(installments, status).build();
+    }
+
+    public static Builder builder(int scale) {
+        return new Builder(scale);
+    }
+
+    public int loanCount() {
+        return loanCount;
+    }
+
+    public int rowCount() {
+        return rowOffsets[loanCount];
+    }
+
+    public int scale() {
+        return scale;
+    }
+
+    /**
+     * First row of the loan; its rows are {@code [firstRow(loan), firstRow(loan + 1))}.
+     */
+    public int firstRow(int loan) {
+        return rowOffsets[loan];
+    }
+
+    public Status status(int loan) {
+        return loanStatuses[loan] == NO_STATUS ? null : Status.values()[loanStatuses[loan]];
+    }
+
+    public Dpd calculateLatestDpd(int loan, LocalDate calculationDate) {
+        return DpdKernel.toDpd(calculate(loan, (int) calculationDate.toEpochDay(), new DpdTrend()));
+    }
+
+    /**
+     * Calculates every loan as of the given date into the caller's arrays, indexed by loan.
+     */
+    public void calculateAll(LocalDate calculationDate, int[] latestDpd, int[] maxDpd) {
+        int calculationDay = (int) calculationDate.toEpochDay();
+        DpdTrend scratch = new DpdTrend();
+        for (int loan = 0; loan < loanCount; loan++) {
+            long dpd = calculate(loan, calculationDay, scratch);
+            latestDpd[loan] = DpdKernel.latestDpd(dpd);
+            maxDpd[loan] = DpdKernel.maxDpd(dpd);
+        }
+    }
+
+    /**
+     * Calculates every loan as of the given date and reports it by loan index, allocating nothing.
+     */
+    public void calculateAll(LocalDate calculationDate, PrimitiveDpdSink sink) {
+        int calculationDay = (int) calculationDate.toEpochDay();
+        DpdTrend scratch = new DpdTrend();
+        for (int loan = 0; loan < loanCount; loan++) {
+            long dpd = calculate(loan, calculationDay, scratch);
+            sink.accept(loan, DpdKernel.latestDpd(dpd), DpdKernel.maxDpd(dpd));
+        }
+    }
+
+    /**
+     * latestDpd and maxDpd of the loan for every day of {@code [from, to]}, see {@link DpdHistory}.
+     */
+    public DpdHistory calculateHistory(int loan, LocalDate from, LocalDate to) {
+        boolean writtenOff = loanStatuses[loan] == Status.WRITE_OFF.ordinal();
+        return DpdHistory.sweep(this, rowOffsets[loan], rowOffsets[loan + 1], writtenOff, from, to);
+    }
+
+    /**
+     * Precomputed latestDpd and maxDpd of the loan for any calculation date, see {@link DpdSummary}.
+     */
+    public DpdSummary summarize(int loan) {
+        boolean writtenOff = loanStatuses[loan] == Status.WRITE_OFF.ordinal();
+        return DpdSummary.of(this, rowOffsets[loan], rowOffsets[loan + 1], writtenOff);
+    }
+
+    long calculate(int loan, int calculationDay, DpdTrend scratch) {
+        return trend(loan, calculationDay, scratch).pack(calculationDay);
+    }
+
+    DpdTrend trend(int loan, int calculationDay, DpdTrend trend) {
+        boolean writtenOff = loanStatuses[loan] == Status.WRITE_OFF.ordinal();
+        return DpdKernel.trend(this, rowOffsets[loan], rowOffsets[loan + 1], writtenOff, calculationDay, trend);
+    }
+
+    /**
+     * The loan's installments as they were added: rows that a paid tolerance made PAID keep their
+     * recorded status and repayment date here.
+     */
+    public List<InstallmentV3> installments(int loan) {
+        List<InstallmentV3> installments = new ArrayList<>(rowOffsets[loan + 1] - rowOffsets[loan]);
+        for (int row = rowOffsets[loan]; row < rowOffsets[loan + 1]; row++) {
+            int promoted = promotedRows.length == 0 ? -1 : Arrays.binarySearch(promotedRows, row);
+            byte repaymentStatus = promoted >= 0 ? recordedRepaymentStatuses[promoted] : repaymentStatuses[row];
+            installments.add(InstallmentV3.builder()
+                    .maturityDate(EpochDays.toDate(maturityDays[row]))
+                    .amount(toBigDecimal(amounts[row]))
+                    .paidAmount(toBigDecimal(paidAmounts[row]))
+                    .repaymentStatus(repaymentStatus == NO_STATUS ? null : RepaymentStatus.values()[repaymentStatus])
+                    .repaymentDate(EpochDays.toDate(promoted >= 0 ? recordedRepaymentDays[promoted] : repaymentDays[row]))
+                    .writtenOfDate(EpochDays.toDate(writtenOffDays[row]))
+                    .period(periods[row])
+                    .build());
+        }
+        return installments;
+    }
+
+    public InstallmentLoanV3 loan(int loan) {
+        return InstallmentLoanV3.builder()
+                .installments(installments(loan))
+                .status(status(loan))
+                .build();
+    }
+
+    @Override
+    public int period(int row) {
+        return periods[row];
+    }
+
+    @Override
+    public int maturityDay(int row) {
+        return maturityDays[row];
+    }
+
+    @Override
+    public int repaymentDay(int row) {
+        return repaymentDays[row];
+    }
+
+    @Override
+    public int writtenOffDay(int row) {
+        return writtenOffDays[row];
+    }
+
+    @Override
+    public byte repaymentStatus(int row) {
+        return repaymentStatuses[row];
+    }
+
+    @Override
+    public long amount(int row) {
+        return amounts[row];
+    }
+
+    public long paidAmount(int row) {
+        return paidAmounts[row];
+    }
+
+    private BigDecimal toBigDecimal(long minorUnits) {
+        return MinorUnits.toBigDecimal(minorUnits, scale);
+    }
+
+    /**
+     * Appends loans to growing arrays. Not thread-safe.
+     */
+    public static final class Builder {
+        private final int scale;
+        private int loanCount;
+        private int rowCount;
+        private int[] rowOffsets = new int[17];
+        private byte[] loanStatuses = new byte[16];
+        private int[] periods = new int[64];
+        private int[] maturityDays = new int[64];
+        private int[] repaymentDays = new int[64];
+        private int[] writtenOffDays = new int[64];
+        private long[] amounts = new long[64];
+        private long[] paidAmounts = new long[64];
+        private byte[] repaymentStatuses = new byte[64];
+        private long paidTolerance = -1;
+        private int promotedCount;
+        private int[] promotedRows = new int[0];
+        private byte[] recordedRepaymentStatuses = new byte[0];
+        private int[] recordedRepaymentDays = new int[0];
+
+        private Builder(int scale) {
+            if (scale < 0) {
+                throw new IllegalArgumentException("scale must not be negative: " + scale);
+            }
+            this.scale = scale;
+        }
+
+        /**
+         * Treats NOT_PAID and PARTIAL_REPAYMENT installments added from now on as PAID when their paid
+         * amount is at least their amount minus {@code tolerance}, for instance to absorb rounding
+         * differences. Such a row without a repayment date is taken as paid on its maturity date; its
+         * recorded status and date are still returned by {@link ColumnarSchedule#installments(int)}.
+         * The tolerance must fit the scale exactly; null turns the rule off again.
+         */
+        public Builder paidTolerance(BigDecimal tolerance) {
+            if (tolerance != null && tolerance.signum() < 0) {
+                throw new IllegalArgumentException("paidTolerance must not be negative: " + tolerance);
+            }
+            this.paidTolerance = tolerance == null ? -1 : MinorUnits.of(tolerance, scale);
+            return this;
+        }
+
+        public Builder add(InstallmentLoanV3 loan) {
+            return add(loan.getInstallments(), loan.getStatus());
+        }
+
+        /**
+         * Appends one loan. Installments are stably sorted by period; amounts must fit the scale
+         * exactly, otherwise an {@link ArithmeticException} is thrown.
+         */
+        public Builder add(List<InstallmentV3> installments, Status status) {
+            List<InstallmentV3> byPeriod = installments;
+            if (!isSortedByPeriod(installments)) {
+                byPeriod = new ArrayList<>(installments);
+                byPeriod.sort(Comparator.comparingInt(InstallmentV3::getPeriod));
+            }
+
+            ensureLoanCapacity(loanCount + 1);
+            ensureRowCapacity(rowCount + byPeriod.size());
+            for (InstallmentV3 installment : byPeriod) {
+                periods[rowCount] = installment.getPeriod();
+                maturityDays[rowCount] = EpochDays.of(installment.getMaturityDate());
+                repaymentDays[rowCount] = EpochDays.of(installment.getRepaymentDate());
+                writtenOffDays[rowCount] = EpochDays.of(installment.getWrittenOfDate());
+                amounts[rowCount] = toMinorUnits(installment.getAmount());
+                paidAmounts[rowCount] = toMinorUnits(installment.getPaidAmount());
+                byte recordedStatus = installment.getRepaymentStatus() == null
+                        ? NO_STATUS
+                        : (byte) installment.getRepaymentStatus().ordinal();
+                repaymentStatuses[rowCount] = MinorUnits.repaymentStatus(recordedStatus,
+                        amounts[rowCount], paidAmounts[rowCount], paidTolerance);
+                if (repaymentStatuses[rowCount] != recordedStatus) {
+                    promote(recordedStatus);
+                }
+                rowCount++;
+            }
+            loanStatuses[loanCount] = status == null ? NO_STATUS : (byte) status.ordinal();
+            loanCount++;
+            rowOffsets[loanCount] = rowCount;
+            return this;
+        }
+
+        public ColumnarSchedule build() {
+            return new ColumnarSchedule(this);
+        }
+
+        private long toMinorUnits(BigDecimal amount) {
+            return MinorUnits.of(amount, scale);
+        }
+
+        /**
+         * Remembers the recorded status and repayment day of the current row, which a paid tolerance
+         * made PAID, and gives it a repayment day.
+         */
+        private void promote(byte recordedStatus) {
+            if (promotedCount == promotedRows.length) {
+                int capacity = Math.max(8, promotedCount * 2);
+                promotedRows = Arrays.copyOf(promotedRows, capacity);
+                recordedRepaymentStatuses = Arrays.copyOf(recordedRepaymentStatuses, capacity);
+                recordedRepaymentDays = Arrays.copyOf(recordedRepaymentDays, capacity);
+            }
+            promotedRows[promotedCount] = rowCount;
+            recordedRepaymentStatuses[promotedCount] = recordedStatus;
+            recordedRepaymentDays[promotedCount] = repaymentDays[rowCount];
+            promotedCount++;
+            repaymentDays[rowCount] = MinorUnits.promotedRepaymentDay(repaymentDays[rowCount], maturityDays[rowCount]);
+        }
+
+        private static boolean isSortedByPeriod(List<InstallmentV3> installments) {
+            for (int i = 1; i < installments.size(); i++) {
+                if (installments.get(i - 1).getPeriod() > installments.get(i).getPeriod()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void ensureLoanCapacity(int loans) {
+            if (loans >= loanStatuses.length) {
+                int capacity = Math.max(loans + 1, loanStatuses.length * 2);
+                rowOffsets = Arrays.copyOf(rowOffsets, capacity + 1);
+                loanStatuses = Arrays.copyOf(loanStatuses, capacity);
+            }
+        }
+
+        private void ensureRowCapacity(int rows) {
+            if (rows > periods.length) {
+                int capacity = Math.max(rows, periods.length * 2);
+                periods = Arrays.copyOf(periods, capacity);
+                maturityDays = Arrays.copyOf(maturityDays, capacity);
+                repaymentDays = Arrays.copyOf(repaymentDays, capacity);
+                writtenOffDays = Arrays.copyOf(writtenOffDays, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                paidAmounts = Arrays.copyOf(paidAmounts, capacity);
+                repaymentStatuses = Arrays.copyOf(repaymentStatuses, capacity);
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Installment schedule of one loan encoded column by column, that {@link DpdKernel} calculates on
+ * without expanding it.
+ *
+ * <p>A regular schedule is stored as its rule: periods as a start and a step, maturity dates as a
+ * first month, a month interval and a day of month, equal amounts as one value, statuses as runs.
+ * Rows that do not follow the rule are kept as exceptions, and irregular columns fall back to varint
+ * deltas, see {@link IntColumn}. Rows are ordered by period and amounts are minor units of
+ * {@link ColumnarSchedule#DEFAULT_SCALE} decimals. Instances are immutable and can be shared between
+ * threads.
+ */
+public final class CompactSchedule implements InstallmentRows {
+    private final int rowCount;
+    private final byte loanStatus;
+    private final IntColumn periods;
+    private final IntColumn maturityDays;
+    private final IntColumn repaymentDays;
+    private final IntColumn writtenOffDays;
+    private final IntColumn repaymentStatuses;
+    private final LongColumn amounts;
+    private final LongColumn paidAmounts;
+
+    private CompactSchedule(ColumnarSchedule schedule, int loan) {
+        int firstRow = schedule.firstRow(loan);
+        this.rowCount = schedule.firstRow(loan + 1) - firstRow;
+        Status status = schedule.status(loan);
+        this.loanStatus = status == null ? NO_STATUS : (byte) status.ordinal();
+
+        int[] ints = new int[rowCount];
+        long[] longs = new long[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            ints[row] = schedule.period(firstRow + row);
+        }
+        this.periods = IntColumn.encode(ints, false);
+        for (int row = 0; row < rowCount; row++) {
+            ints[row] = schedule.maturityDay(firstRow + row);
+        }
+        this.maturityDays = IntColumn.encode(ints, true);
+        for (int row = 0; row < rowCount; row++) {
+            ints[row] = schedule.repaymentDay(firstRow + row);
+        }
+        this.repaymentDays = IntColumn.encode(ints, true);
+        for (int row = 0; row < rowCount; row++) {
+            ints[row] = schedule.writtenOffDay(firstRow + row);
+        }
+        this.writtenOffDays = IntColumn.encode(ints, true);
+        for (int row = 0; row < rowCount; row++) {
+            ints[row] = schedule.repaymentStatus(firstRow + row);
+        }
+        this.repaymentStatuses = IntColumn.encode(ints, false);
+        for (int row = 0; row < rowCount; row++) {
+            longs[row] = schedule.amount(firstRow + row);
+        }
+        this.amounts = LongColumn.encode(longs);
+        for (int row = 0; row < rowCount; row++) {
+            longs[row] = schedule.paidAmount(firstRow + row);
+        }
+        this.paidAmounts = LongColumn.encode(longs);
+    }
+
+    public static CompactSchedule of(InstallmentLoanV3 loan) {
+        return of(loan.getInstallments(), loan.getStatus());
+    }
+
+    public static CompactSchedule of(List<InstallmentV3> installments, Status status) {
+        return new CompactSchedule(ColumnarSchedule.of(installments, status), 0);
+    }
+
+    /**
+     * Encodes one loan of a columnar store, keeping the store's scale.
+     */
+    public static CompactSchedule of(ColumnarSchedule schedule, int loan) {
+        return new CompactSchedule(schedule, loan);
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public Status status() {
+        return loanStatus == NO_STATUS ? null : Status.values()[loanStatus];
+    }
+
+    /**
+     * Approximate heap bytes of the encoded columns, without object headers.
+     */
+    public int encodedBytes() {
+        return periods.encodedBytes() + maturityDays.encodedBytes() + repaymentDays.encodedBytes()
+                + writtenOffDays.encodedBytes() + repaymentStatuses.encodedBytes()
+                + amounts.encodedBytes() + paidAmounts.encodedBytes();
+    }
+
+    public Dpd calculateLatestDpd(LocalDate calculationDate) {
+        return DpdKernel.toDpd(DpdKernel.calculate(new Reader(), 0, rowCount, isWrittenOff(),
+                (int) calculationDate.toEpochDay()));
+    }
+
+    /**
+     * Precomputed latestDpd and maxDpd for any calculation date, see {@link DpdSummary}.
+     */
+    public DpdSummary summarize() {
+        return DpdSummary.of(new Reader(), 0, rowCount, isWrittenOff());
+    }
+
+    private boolean isWrittenOff() {
+        return loanStatus == Status.WRITE_OFF.ordinal();
+    }
+
+    @Override
+    public int period(int row) {
+        return periods.get(row);
+    }
+
+    @Override
+    public int maturityDay(int row) {
+        return maturityDays.get(row);
+    }
+
+    @Override
+    public int repaymentDay(int row) {
+        return repaymentDays.get(row);
+    }
+
+    @Override
+    public int writtenOffDay(int row) {
+        return writtenOffDays.get(row);
+    }
+
+    @Override
+    public byte repaymentStatus(int row) {
+        return (byte) repaymentStatuses.get(row);
+    }
+
+    @Override
+    public long amount(int row) {
+        return amounts.get(row);
+    }
+
+    public long paidAmount(int row) {
+        return paidAmounts.get(row);
+    }
+
+    /**
+     * Sequential view for one calculation: each delta-encoded column keeps a cursor, so reading the
+     * rows in order decodes one varint per row and column instead of up to a checkpoint interval.
+     */
+    private final class Reader implements InstallmentRows {
+        private final IntColumn.Cursor periodCursor = periods.cursor();
+        private final IntColumn.Cursor maturityDayCursor = maturityDays.cursor();
+        private final IntColumn.Cursor repaymentDayCursor = repaymentDays.cursor();
+        private final IntColumn.Cursor writtenOffDayCursor = writtenOffDays.cursor();
+        private final IntColumn.Cursor repaymentStatusCursor = repaymentStatuses.cursor();
+        private final IntColumn.Cursor amountCursor = amounts.cursor();
+
+        @Override
+        public int period(int row) {
+            return periods.get(row, periodCursor);
+        }
+
+        @Override
+        public int maturityDay(int row) {
+            return maturityDays.get(row, maturityDayCursor);
+        }
+
+        @Override
+        public int repaymentDay(int row) {
+            return repaymentDays.get(row, repaymentDayCursor);
+        }
+
+        @Override
+        public int writtenOffDay(int row) {
+            return writtenOffDays.get(row, writtenOffDayCursor);
+        }
+
+        @Override
+        public byte repaymentStatus(int row) {
+            return (byte) repaymentStatuses.get(row, repaymentStatusCursor);
+        }
+
+        @Override
+        public long amount(int row) {
+            return amounts.get(row, amountCursor);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.alami.dpd;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of latestDpd and maxDpd per DPD bucket, {@link Product} and {@link Status}, filled while a
+ * portfolio is being calculated.
+ *
+ * <p>Buckets are given by their inclusive upper bounds: {@code 0, 30, 60, 90} makes the standard
+ * buckets current, 1-30, 31-60, 61-90 and 91+. Every counter is a {@link LongAdder}, which stripes
+ * its count over per-thread cells under contention, so worker threads of a
+ * {@link PortfolioDpdEngine} can count the same bucket without fighting over one cache line.
+ * Partial lumpsum loans have no loan status and are counted under a {@code null} status.
+ */
+public final class DpdBuckets implements DpdSink<Object> {
+    private static final int[] STANDARD_BOUNDARIES = {0, 30, 60, 90};
+    private static final Product[] PRODUCTS = Product.values();
+    private static final Status[] STATUSES = Status.values();
+    private static final int STATUS_SLOTS = STATUSES.length + 1;
+
+    private final int[] boundaries;
+    private final LongAdder[] latestCounts;
+    private final LongAdder[] maxCounts;
+
+    private DpdBuckets(int[] boundaries) {
+        for (int i = 1; i < boundaries.length; i++) {
+            if (boundaries[i - 1] >= boundaries[i]) {
+                throw new IllegalArgumentException("boundaries must be strictly increasing: " + Arrays.toString(boundaries));
+            }
+        }
+        this.boundaries = boundaries.clone();
+        int counters = PRODUCTS.length * STATUS_SLOTS * bucketCount();
+        this.latestCounts = new LongAdder[counters];
+        this.maxCounts = new LongAdder[counters];
+        for (int i = 0; i < counters; i++) {
+            latestCounts[i] = new LongAdder();
+            maxCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Current, 1-30, 31-60, 61-90 and 91+.
+     */
+    public static DpdBuckets standard() {
+        return new DpdBuckets(STANDARD_BOUNDARIES);
+    }
+
+    /**
+     * Buckets with the given strictly increasing inclusive upper bounds, plus one bucket above the last.
+     */
+    public static DpdBuckets withBoundaries(int... upperBounds) {
+        return new DpdBuckets(upperBounds);
+    }
+
+    /**
+     * Counts the result under the loan's product and status.
+     */
+    @Override
+    public void accept(Object loan, Dpd dpd) {
+        add(Product.of(loan), status(loan), dpd.getLatestDpd(), dpd.getMaxDpd());
+    }
+
+    public void add(Product product, Status status, int latestDpd, int maxDpd) {
+        int offset = (product.ordinal() * STATUS_SLOTS + statusSlot(status)) * bucketCount();
+        latestCounts[offset + bucketOf(latestDpd)].increment();
+        maxCounts[offset + bucketOf(maxDpd)].increment();
+    }
+
+    public int bucketCount() {
+        return boundaries.length + 1;
+    }
+
+    /**
+     * Bucket of a DPD; anything up to the first boundary, including negative DPD, falls in bucket 0.
+     */
+    public int bucketOf(int dpd) {
+        int bucket = 0;
+        while (bucket < boundaries.length && dpd > boundaries[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    /**
+     * Label such as {@code current}, {@code 1-30} or {@code 91+}.
+     */
+    public String bucketLabel(int bucket) {
+        if (boundaries.length == 0) {
+            return "all";
+        }
+        if (bucket == boundaries.length) {
+            return (boundaries[bucket - 1] + 1) + "+";
+        }
+        if (bucket == 0) {
+            return boundaries[0] == 0 ? "current" : "<=" + boundaries[0];
+        }
+        return (boundaries[bucket - 1] + 1) + "-" + boundaries[bucket];
+    }
+
+    public long latestCount(Product product, Status status, int bucket) {
+        return latestCounts[index(product, status, bucket)].sum();
+    }
+
+    public long maxCount(Product product, Status status, int bucket) {
+        return maxCounts[index(product, status, bucket)].sum();
+    }
+
+    /**
+     * latestDpd count of the bucket over every status of the product.
+     */
+    public long latestCount(Product product, int bucket) {
+        return sum(latestCounts, product, bucket);
+    }
+
+    /**
+     * maxDpd count of the bucket over every status of the product.
+     */
+    public long maxCount(Product product, int bucket) {
+        return sum(maxCounts, product, bucket);
+    }
+
+    /**
+     * Resets every count, for reuse across runs. Not atomic with respect to concurrent {@link #add}.
+     */
+    public void reset() {
+        for (int i = 0; i < latestCounts.length; i++) {
+            latestCounts[i].reset();
+            maxCounts[i].reset();
+        }
+    }
+
+    private long sum(LongAdder[] counts, Product product, int bucket) {
+        long sum = 0;
+        for (int slot = 0; slot < STATUS_SLOTS; slot++) {
+            sum += counts[(product.ordinal() * STATUS_SLOTS + slot) * bucketCount() + bucket].sum();
+        }
+        return sum;
+    }
+
+    private int index(Product product, Status status, int bucket) {
+        return (product.ordinal() * STATUS_SLOTS + statusSlot(status)) * bucketCount() + bucket;
+    }
+
+    private static int statusSlot(Status status) {
+        return status == null ? STATUSES.length : status.ordinal();
+    }
+
+    private static Status status(Object loan) {
+        if (loan instanceof InstallmentLoanV3 installmentLoan) {
+            return installmentLoan.getStatus();
+        }
+        if (loan instanceof LumpsumLoan lumpsumLoan) {
+            return lumpsumLoan.getStatus();
+        }
+        return null;
+    }
+}
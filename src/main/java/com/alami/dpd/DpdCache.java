@@ -0,0 +1,93 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.util.function.Supplier;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Bounded cache of DPD results keyed by loan id, schedule version and calculation date.
+ *
+ * <p>The version is whatever changes when the loan's schedule changes, for instance a ledger
+ * sequence number or a fingerprint of the installments, so a stale result is never returned for a
+ * changed schedule; {@link #invalidate(long)} additionally drops every cached result of a loan as
+ * soon as a repayment is applied. Entries are evicted least recently used first, see
+ * {@link StripedLruCache}; all results of one loan live in the same segment and are indexed by loan,
+ * so invalidating a loan only touches its own results. Results are stored
+ * packed into a long and every call returns a new {@link Dpd}, so callers may modify what they get.
+ * Thread-safe.
+ */
+public final class DpdCache {
+    public static final int DEFAULT_SEGMENTS = 64;
+
+    private final StripedLruCache<Key, Long> cache;
+
+    /**
+     * @param maximumSize number of results kept, required
+     * @param segments    number of independently locked segments, {@link #DEFAULT_SEGMENTS} when 0
+     */
+    @Builder
+    private DpdCache(long maximumSize, int segments) {
+        this.cache = StripedLruCache.grouped(maximumSize, segments > 0 ? segments : DEFAULT_SEGMENTS,
+                Key::getLoanId);
+    }
+
+    /**
+     * Returns the cached DPD of the loan or calculates and caches it.
+     */
+    public Dpd get(long loanId, long version, LocalDate calculationDate, Supplier<Dpd> calculation) {
+        Long packed = cache.computeIfAbsent(new Key(loanId, version, (int) calculationDate.toEpochDay()), key -> {
+            Dpd dpd = calculation.get();
+            return DpdKernel.pack(dpd.getLatestDpd(), dpd.getMaxDpd());
+        });
+        return DpdKernel.toDpd(packed);
+    }
+
+    public Dpd calculateLatestDpd(long loanId, long version, InstallmentLoanV3 loan, LocalDate calculationDate) {
+        return get(loanId, version, calculationDate, () -> loan.calculateLatestDpd(calculationDate));
+    }
+
+    /**
+     * Drops every cached result of the loan, whatever its version and date.
+     */
+    public void invalidate(long loanId) {
+        cache.removeGroup(loanId);
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long hitCount() {
+        return cache.hitCount();
+    }
+
+    public long missCount() {
+        return cache.missCount();
+    }
+
+    public long evictionCount() {
+        return cache.evictionCount();
+    }
+
+    /**
+     * Share of lookups served from the cache, 0 before the first lookup.
+     */
+    public double hitRate() {
+        long hits = hitCount();
+        long lookups = hits + missCount();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Value
+    private static class Key {
+        long loanId;
+        long version;
+        int calculationDay;
+    }
+}
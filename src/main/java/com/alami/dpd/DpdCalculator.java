@@ -0,0 +1,24 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Calculates DPD for one loan product. Implementations are stateless and safe to share between
+ * threads.
+ *
+ * @param <L> the loan type of the product
+ */
+public interface DpdCalculator<L> {
+    Dpd calculate(L loan, LocalDate calculationDate);
+
+    /**
+     * Calculates every loan of the batch as of the same date and hands each result to the sink.
+     * Implementations may override this to do per-batch setup, such as date conversion, only once.
+     */
+    default void calculateAll(List<? extends L> loans, LocalDate calculationDate, DpdSink<? super L> sink) {
+        for (L loan : loans) {
+            sink.accept(loan, calculate(loan, calculationDate));
+        }
+    }
+}
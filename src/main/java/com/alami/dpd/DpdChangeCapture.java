@@ -0,0 +1,200 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Change-data-capture stage: compares a run's results against the previous run's
+ * {@link DpdResultFile} and passes on only inserted, changed and deleted loans.
+ *
+ * <p>Results of the new run are fed in any order with {@link #accept(long, int, int)} and looked up in
+ * the memory-mapped previous file; {@link #finish()} then reports the loans the new run did not have
+ * as deletions. When both runs are files, {@link #diff} merges them in loan id order instead.
+ *
+ * <p>With {@code suppressAgeing}, a change that is only the mechanical ageing of an overdue loan is
+ * not passed on: latestDpd grew by exactly the days between the runs and maxDpd is what that ageing
+ * alone gives. Loans that become overdue, get paid or move in any other way are still reported.
+ * Not thread-safe.
+ */
+@Getter
+public final class DpdChangeCapture {
+    private final DpdResultFile previous;
+    private final int elapsedDays;
+    private final boolean suppressAgeing;
+    private final ChangeSink sink;
+    @Getter(AccessLevel.NONE)
+    private final BitSet seen;
+    @Getter(AccessLevel.NONE)
+    private final InsertedIds insertedIds = new InsertedIds();
+    private long inserts;
+    private long updates;
+    private long deletes;
+    private long suppressed;
+
+    /**
+     * @param previous        results of the previous run
+     * @param calculationDate calculation date of the new run
+     * @param suppressAgeing  whether to drop changes that are only the ageing of overdue loans
+     * @param sink            receives the changes
+     */
+    @Builder
+    private DpdChangeCapture(DpdResultFile previous, LocalDate calculationDate, boolean suppressAgeing,
+                             ChangeSink sink) {
+        this.previous = previous;
+        this.elapsedDays = (int) (calculationDate.toEpochDay() - previous.calculationDay());
+        this.suppressAgeing = suppressAgeing;
+        this.sink = sink;
+        this.seen = new BitSet(previous.size());
+    }
+
+    /**
+     * Compares one result of the new run against the previous file. A loan id passed twice is rejected
+     * with an {@link IllegalArgumentException}.
+     */
+    public void accept(long loanId, int latestDpd, int maxDpd) {
+        int index = previous.indexOf(loanId);
+        if (index < 0) {
+            if (!insertedIds.add(loanId)) {
+                throw new IllegalArgumentException("loan id " + loanId + " was passed twice");
+            }
+            inserted(loanId, latestDpd, maxDpd);
+            return;
+        }
+        if (seen.get(index)) {
+            throw new IllegalArgumentException("loan id " + loanId + " was passed twice");
+        }
+        seen.set(index);
+        compare(loanId, previous.latestDpd(index), previous.maxDpd(index), latestDpd, maxDpd);
+    }
+
+    /**
+     * Reports every loan of the previous file that the new run did not have, with its previous DPD.
+     */
+    public void finish() {
+        for (int index = seen.nextClearBit(0); index < previous.size(); index = seen.nextClearBit(index + 1)) {
+            deleted(previous.loanId(index), previous.latestDpd(index), previous.maxDpd(index));
+        }
+    }
+
+    /**
+     * Merges two result files in loan id order and reports the changes from {@code previous} to
+     * {@code current}.
+     */
+    public static DpdChangeCapture diff(DpdResultFile previous, DpdResultFile current, boolean suppressAgeing,
+                                        ChangeSink sink) {
+        DpdChangeCapture capture = new DpdChangeCapture(previous, current.calculationDate(), suppressAgeing, sink);
+        int p = 0;
+        int c = 0;
+        while (p < previous.size() || c < current.size()) {
+            long previousId = p < previous.size() ? previous.loanId(p) : Long.MAX_VALUE;
+            long currentId = c < current.size() ? current.loanId(c) : Long.MAX_VALUE;
+            if (c == current.size() || (p < previous.size() && previousId < currentId)) {
+                capture.deleted(previousId, previous.latestDpd(p), previous.maxDpd(p));
+                p++;
+            } else if (p == previous.size() || currentId < previousId) {
+                capture.inserted(currentId, current.latestDpd(c), current.maxDpd(c));
+                c++;
+            } else {
+                capture.compare(currentId, previous.latestDpd(p), previous.maxDpd(p), current.latestDpd(c), current.maxDpd(c));
+                p++;
+                c++;
+            }
+        }
+        return capture;
+    }
+
+    private void compare(long loanId, int previousLatest, int previousMax, int latestDpd, int maxDpd) {
+        if (previousLatest == latestDpd && previousMax == maxDpd) {
+            return;
+        }
+        if (suppressAgeing && isAgeing(previousLatest, previousMax, latestDpd, maxDpd)) {
+            suppressed++;
+            return;
+        }
+        updates++;
+        sink.accept(Change.UPDATE, loanId, latestDpd, maxDpd);
+    }
+
+    private boolean isAgeing(int previousLatest, int previousMax, int latestDpd, int maxDpd) {
+        return elapsedDays > 0 && previousLatest > 0
+                && latestDpd == previousLatest + elapsedDays
+                && maxDpd == Math.max(previousMax, latestDpd);
+    }
+
+    private void inserted(long loanId, int latestDpd, int maxDpd) {
+        inserts++;
+        sink.accept(Change.INSERT, loanId, latestDpd, maxDpd);
+    }
+
+    private void deleted(long loanId, int latestDpd, int maxDpd) {
+        deletes++;
+        sink.accept(Change.DELETE, loanId, latestDpd, maxDpd);
+    }
+
+    /**
+     * Open-addressing set of the loan ids not found in the previous file, which only grow with the
+     * inserts of a run.
+     */
+    private static final class InsertedIds {
+        private long[] ids = new long[16];
+        private boolean[] used = new boolean[16];
+        private int size;
+
+        /**
+         * Adds the id, false when it was there already.
+         */
+        boolean add(long id) {
+            if (size * 2 >= ids.length) {
+                grow();
+            }
+            int mask = ids.length - 1;
+            int slot = (int) mix(id) & mask;
+            while (used[slot]) {
+                if (ids[slot] == id) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            ids[slot] = id;
+            size++;
+            return true;
+        }
+
+        private void grow() {
+            long[] oldIds = ids;
+            boolean[] oldUsed = used;
+            ids = new long[oldIds.length * 2];
+            used = new boolean[oldIds.length * 2];
+            size = 0;
+            for (int slot = 0; slot < oldIds.length; slot++) {
+                if (oldUsed[slot]) {
+                    add(oldIds[slot]);
+                }
+            }
+        }
+
+        private static long mix(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return h ^ (h >>> 32);
+        }
+    }
+
+    public enum Change {
+        INSERT,
+        UPDATE,
+        DELETE
+    }
+
+    /**
+     * Receives the changes of a run; deletions carry the loan's previous DPD.
+     */
+    @FunctionalInterface
+    public interface ChangeSink {
+        void accept(Change change, long loanId, int latestDpd, int maxDpd);
+    }
+}
@@ -0,0 +1,226 @@
+package com.alami.dpd;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import lombok.Builder;
+
+/**
+ * Bounded cache of DPD results shared by loans with the same schedule shape.
+ *
+ * <p>Loans of one product disbursed on the same day usually have identical maturity dates and often
+ * the same payment pattern. The fingerprint of a loan is everything its DPD depends on: the loan
+ * status and, per installment in list order, the period, maturity, repayment and write-off dates, the
+ * repayment status and the sign of the amount. Equal fingerprints give equal DPD, so each distinct
+ * fingerprint is calculated once per calculation date and every other loan with it is a hit.
+ *
+ * <p>A lookup reads the installment fields once into a thread-confined probe, dates as their packed
+ * year, month and day rather than epoch days, and hashes them on the way; only a miss copies the probe
+ * and loads the rows for {@link DpdKernel}. Fingerprints are compared in full, never by hash alone,
+ * so a hash collision cannot return another shape's DPD. The cache is bounded by the estimated heap
+ * bytes of its entries and evicts least recently used entries first, see {@link StripedLruCache}.
+ * Loans with dates outside the years 0 to 4,194,303 are calculated without the cache. Thread-safe.
+ */
+public final class DpdFingerprintCache {
+    public static final int DEFAULT_SEGMENTS = 64;
+    private static final int HEADER_FIELDS = 2;
+    private static final int FIELDS_PER_ROW = 5;
+    /**
+     * Fingerprint object, its array header, the boxed result and the map entry and slot.
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 104;
+    private static final int MAX_PACKED_YEAR = (1 << 22) - 1;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final StripedLruCache<Fingerprint, Long> cache;
+
+    /**
+     * @param maximumBytes estimated heap bytes the entries may take, required
+     * @param segments     number of independently locked segments, {@link #DEFAULT_SEGMENTS} when 0
+     */
+    @Builder
+    private DpdFingerprintCache(long maximumBytes, int segments) {
+        this.cache = StripedLruCache.weighed(maximumBytes, segments > 0 ? segments : DEFAULT_SEGMENTS,
+                Fingerprint::hashCode, Fingerprint::bytes);
+    }
+
+    /**
+     * Same result as {@link InstallmentLoanV3#calculateLatestDpd(LocalDate)}, calculated only for the
+     * first loan of each fingerprint and date.
+     */
+    public Dpd calculateLatestDpd(InstallmentLoanV3 loan, LocalDate calculationDate) {
+        return DpdKernel.toDpd(calculate(SCRATCH.get(), loan, (int) calculationDate.toEpochDay()));
+    }
+
+    /**
+     * Calculates every loan and reports it under its index in the list, without creating {@link Dpd}s.
+     */
+    public void calculateAll(List<? extends InstallmentLoanV3> loans, LocalDate calculationDate,
+                             PrimitiveDpdSink sink) {
+        int calculationDay = (int) calculationDate.toEpochDay();
+        Scratch scratch = SCRATCH.get();
+        for (int index = 0, size = loans.size(); index < size; index++) {
+            long dpd = calculate(scratch, loans.get(index), calculationDay);
+            sink.accept(index, DpdKernel.latestDpd(dpd), DpdKernel.maxDpd(dpd));
+        }
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Estimated heap bytes of the cached entries.
+     */
+    public long estimatedBytes() {
+        return cache.weight();
+    }
+
+    public long hitCount() {
+        return cache.hitCount();
+    }
+
+    public long missCount() {
+        return cache.missCount();
+    }
+
+    public long evictionCount() {
+        return cache.evictionCount();
+    }
+
+    /**
+     * Share of lookups served from the cache, 0 before the first lookup.
+     */
+    public double hitRate() {
+        long hits = hitCount();
+        long lookups = hits + missCount();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Fingerprints the loan into the probe and only loads and calculates it on a miss.
+     */
+    private long calculate(Scratch scratch, InstallmentLoanV3 loan, int calculationDay) {
+        Fingerprint probe = scratch.probe;
+        if (!probe.set(loan, calculationDay)) {
+            return scratch.calculate(loan, calculationDay);
+        }
+        Long packed = cache.get(probe);
+        if (packed == null) {
+            packed = scratch.calculate(loan, calculationDay);
+            cache.put(probe.copy(), packed);
+        }
+        return packed;
+    }
+
+    /**
+     * Thread-confined probe, rows and trend reused for every loan.
+     */
+    private static final class Scratch {
+        private final Fingerprint probe = new Fingerprint(new int[HEADER_FIELDS + 16 * FIELDS_PER_ROW], 0, 0);
+        private final InstallmentRowBuffer rows = new InstallmentRowBuffer();
+        private final DpdTrend trend = new DpdTrend();
+
+        long calculate(InstallmentLoanV3 loan, int calculationDay) {
+            PrimitiveDpdCalculator.load(loan, rows);
+            boolean writtenOff = loan.getStatus() == Status.WRITE_OFF;
+            return DpdKernel.calculate(rows, 0, rows.size(), writtenOff, calculationDay, trend);
+        }
+    }
+
+    /**
+     * Calculation day and loan status followed by the DPD inputs of each installment. The probe of a
+     * thread is refilled for every lookup; the keys in the cache are copies trimmed to their length.
+     */
+    private static final class Fingerprint {
+        private int[] values;
+        private int length;
+        private int hash;
+
+        private Fingerprint(int[] values, int length, int hash) {
+            this.values = values;
+            this.length = length;
+            this.hash = hash;
+        }
+
+        /**
+         * Fills the probe from the loan, false when a date is out of the packed range.
+         */
+        boolean set(InstallmentLoanV3 loan, int calculationDay) {
+            List<InstallmentV3> installments = loan.getInstallments();
+            int size = installments.size();
+            int needed = HEADER_FIELDS + size * FIELDS_PER_ROW;
+            if (values.length < needed) {
+                values = new int[Math.max(needed, values.length * 2)];
+            }
+            Status status = loan.getStatus();
+            int[] values = this.values;
+            values[0] = calculationDay;
+            values[1] = status == null ? -1 : status.ordinal();
+            int hash = 31 * (31 + calculationDay) + values[1];
+            for (int row = 0, i = HEADER_FIELDS; row < size; row++, i += FIELDS_PER_ROW) {
+                InstallmentV3 installment = installments.get(row);
+                int maturityDate = pack(installment.getMaturityDate());
+                int repaymentDate = pack(installment.getRepaymentDate());
+                int writtenOffDate = pack(installment.getWrittenOfDate());
+                if (maturityDate == -1 || repaymentDate == -1 || writtenOffDate == -1) {
+                    return false;
+                }
+                BigDecimal amount = installment.getAmount();
+                RepaymentStatus repaymentStatus = installment.getRepaymentStatus();
+                values[i] = installment.getPeriod();
+                values[i + 1] = maturityDate;
+                values[i + 2] = repaymentDate;
+                values[i + 3] = writtenOffDate;
+                values[i + 4] = (repaymentStatus == null ? -1 : repaymentStatus.ordinal()) << 2
+                        | (amount == null ? 3 : amount.signum() + 1);
+                for (int field = i; field < i + FIELDS_PER_ROW; field++) {
+                    hash = 31 * hash + values[field];
+                }
+            }
+            this.length = needed;
+            this.hash = hash;
+            return true;
+        }
+
+        Fingerprint copy() {
+            return new Fingerprint(Arrays.copyOf(values, length), length, hash);
+        }
+
+        int bytes() {
+            return ENTRY_OVERHEAD_BYTES + length * Integer.BYTES;
+        }
+
+        /**
+         * {@code year * 512 + month * 32 + day}, {@link InstallmentRows#NO_DATE} for null and -1 for
+         * a year out of range.
+         */
+        private static int pack(LocalDate date) {
+            if (date == null) {
+                return InstallmentRows.NO_DATE;
+            }
+            int year = date.getYear();
+            if (year < 0 || year > MAX_PACKED_YEAR) {
+                return -1;
+            }
+            return year << 9 | date.getMonthValue() << 5 | date.getDayOfMonth();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Fingerprint fingerprint && hash == fingerprint.hash
+                    && Arrays.equals(values, 0, length, fingerprint.values, 0, fingerprint.length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Daily latestDpd and maxDpd of one loan for every day of {@code [from, to]}.
+ *
+ * <p>Calculated in one sweep instead of once per day: as the day advances, a loan only changes when
+ * one of its installments passes its maturity date, and every such change only adds a term to the
+ * running maxima, to the set of latestDpd candidates or to the count of overdue installments. The
+ * rows are scanned once to collect those activation events, the events are sorted by day and then
+ * applied while walking the days, so the cost is O(rows log rows + days) and only O(rows + days)
+ * when the maturity dates are already in order. Each day gives the same result as
+ * {@link InstallmentLoanV3#calculateLatestDpd(LocalDate)} on that day.
+ */
+@Getter
+public final class DpdHistory {
+    private static final int NONE = DpdTrend.NONE;
+    private static final int COUNT_EVENT = 0;
+    private static final int PERIOD_EVENT = 1;
+
+    private final LocalDate from;
+    private final LocalDate to;
+    @Getter(AccessLevel.NONE)
+    private final int[] latestDpd;
+    @Getter(AccessLevel.NONE)
+    private final int[] maxDpd;
+
+    private DpdHistory(LocalDate from, LocalDate to, int[] latestDpd, int[] maxDpd) {
+        this.from = from;
+        this.to = to;
+        this.latestDpd = latestDpd;
+        this.maxDpd = maxDpd;
+    }
+
+    /**
+     * Number of days in the range.
+     */
+    public int size() {
+        return latestDpd.length;
+    }
+
+    /**
+     * latestDpd of the {@code index}-th day, counting {@link #getFrom()} as day 0.
+     */
+    public int getLatestDpd(int index) {
+        return latestDpd[index];
+    }
+
+    /**
+     * maxDpd of the {@code index}-th day, counting {@link #getFrom()} as day 0.
+     */
+    public int getMaxDpd(int index) {
+        return maxDpd[index];
+    }
+
+    public Dpd get(LocalDate date) {
+        int index = Math.toIntExact(date.toEpochDay() - from.toEpochDay());
+        if (index < 0 || index >= latestDpd.length) {
+            throw new IllegalArgumentException(date + " is outside of " + from + ".." + to);
+        }
+        return new Dpd(latestDpd[index], maxDpd[index]);
+    }
+
+    /**
+     * Sweeps the loan made of rows {@code [fromRow, toRow)}, which must be ordered by period.
+     *
+     * @param writtenOffLoan whether the loan status is {@link Status#WRITE_OFF}
+     */
+    static DpdHistory sweep(InstallmentRows rows, int fromRow, int toRow, boolean writtenOffLoan,
+                            LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from " + from + " is after to " + to);
+        }
+        int fromDay = (int) from.toEpochDay();
+        int days = Math.toIntExact(to.toEpochDay() - from.toEpochDay() + 1);
+        int[] latestDpd = new int[days];
+        int[] maxDpd = new int[days];
+        new Sweep(rows, fromRow, toRow).run(writtenOffLoan, fromDay, latestDpd, maxDpd);
+        return new DpdHistory(from, to, latestDpd, maxDpd);
+    }
+
+    /**
+     * Running state of one sweep. The aggregates mirror the locals of
+     * {@link DpdKernel#trend(InstallmentRows, int, int, boolean, int, DpdTrend)}; {@link DpdSummary}
+     * walks the same sweep from event to event instead of day by day.
+     */
+    static final class Sweep {
+        private final InstallmentRows rows;
+        private final int[] periodFirstRows;
+        private final int[] periodFirstPaidRows;
+        private int periodCount;
+        private long[] events;
+        private int eventCount;
+        private int event;
+
+        private int earliestMaturityDay = Integer.MAX_VALUE;
+        private int latestMaturityDay = Integer.MIN_VALUE;
+        private boolean writeOffFound;
+        private int writtenOffDay = InstallmentRows.NO_DATE;
+
+        private int fixedMax = NONE;
+        private int maxAgeingBase = NONE;
+        private int notActivatedPeriods;
+        private int overdueNotPaidCount;
+        private boolean notPaidFound;
+        private int firstNotPaidPeriod = Integer.MAX_VALUE;
+        private int firstNotPaidFixed = NONE;
+        private int firstNotPaidAgeingBase = NONE;
+        private int highestNotPaidFixed = NONE;
+        private int highestNotPaidAgeingBase = NONE;
+        private boolean paidFound;
+        private int latestPaidDpd;
+        private int latestPaidMaturityDay = Integer.MIN_VALUE;
+
+        Sweep(InstallmentRows rows, int fromRow, int toRow) {
+            this.rows = rows;
+            int rowCount = toRow - fromRow;
+            this.periodFirstRows = new int[rowCount];
+            this.periodFirstPaidRows = new int[rowCount];
+            this.events = new long[rowCount * 2];
+            collect(fromRow, toRow);
+        }
+
+        /**
+         * Groups the rows into periods, applies every term that does not depend on the day and records
+         * the day each remaining term becomes active: the day after the maturity date.
+         */
+        private void collect(int fromRow, int toRow) {
+            int period = 0;
+            for (int row = fromRow; row < toRow; row++) {
+                if (DpdKernel.isGracePeriod(rows, row)) {
+                    continue;
+                }
+                if (periodCount == 0 || rows.period(row) != period) {
+                    period = rows.period(row);
+                    periodFirstRows[periodCount] = row;
+                    periodFirstPaidRows[periodCount] = -1;
+                    periodCount++;
+                }
+
+                int maturityDay = rows.maturityDay(row);
+                if (maturityDay != InstallmentRows.NO_DATE) {
+                    earliestMaturityDay = Math.min(earliestMaturityDay, maturityDay);
+                    latestMaturityDay = Math.max(latestMaturityDay, maturityDay);
+                }
+                byte repaymentStatus = rows.repaymentStatus(row);
+                if (repaymentStatus == DpdKernel.WRITE_OFF && !writeOffFound) {
+                    writeOffFound = true;
+                    writtenOffDay = rows.writtenOffDay(row);
+                }
+                if (repaymentStatus == DpdKernel.PAID) {
+                    if (periodFirstPaidRows[periodCount - 1] < 0) {
+                        periodFirstPaidRows[periodCount - 1] = row;
+                    }
+                } else if (maturityDay != InstallmentRows.NO_DATE
+                        && DpdKernel.rowDpd(rows, row, maturityDay + 1) > 0) {
+                    addEvent(maturityDay + 1, row, COUNT_EVENT);
+                }
+            }
+
+            for (int i = 0; i < periodCount; i++) {
+                int firstRow = periodFirstRows[i];
+                int firstPaidRow = periodFirstPaidRows[i];
+                if (firstPaidRow >= 0 && rows.repaymentDay(firstPaidRow) != InstallmentRows.NO_DATE) {
+                    fixedMax = Math.max(fixedMax, DpdKernel.paidPeriodDpd(rows, firstRow, firstPaidRow));
+                } else {
+                    // contributes a DPD of 0 to maxDpd until its first row matures
+                    notActivatedPeriods++;
+                    if (rows.maturityDay(firstRow) != InstallmentRows.NO_DATE) {
+                        addEvent(rows.maturityDay(firstRow) + 1, i, PERIOD_EVENT);
+                    }
+                }
+
+                if (firstPaidRow >= 0) {
+                    int candidateDpd = DpdKernel.latePaymentDpd(rows, firstPaidRow);
+                    if (candidateDpd <= 0) {
+                        continue;
+                    }
+                    if (rows.repaymentStatus(firstRow) == DpdKernel.PAID) {
+                        int maturityDay = rows.maturityDay(firstPaidRow);
+                        if (!paidFound || maturityDay > latestPaidMaturityDay) {
+                            paidFound = true;
+                            latestPaidMaturityDay = maturityDay;
+                            latestPaidDpd = candidateDpd;
+                        }
+                    } else {
+                        addNotPaid(i, candidateDpd, NONE);
+                    }
+                }
+            }
+            Arrays.sort(events, 0, eventCount);
+        }
+
+        void run(boolean writtenOffLoan, int fromDay, int[] latestDpd, int[] maxDpd) {
+            DpdTrend trend = new DpdTrend();
+            int index = 0;
+            while (index < latestDpd.length) {
+                advance(writtenOffLoan, fromDay + index, trend);
+                long end = Math.min((long) trend.validUntilDay - fromDay, latestDpd.length - 1);
+                for (; index <= end; index++) {
+                    latestDpd[index] = trend.latestDpd(fromDay + index);
+                    maxDpd[index] = trend.maxDpd(fromDay + index);
+                }
+            }
+        }
+
+        /**
+         * Applies the events up to {@code day}, which must not go back, and describes latestDpd and
+         * maxDpd from that day until the next event, the same way
+         * {@link DpdKernel#trend(InstallmentRows, int, int, boolean, int, DpdTrend)} does.
+         */
+        DpdTrend advance(boolean writtenOffLoan, int day, DpdTrend trend) {
+            while (event < eventCount && (int) (events[event] >> 32) <= day) {
+                apply((int) events[event], day);
+                event++;
+            }
+            int validUntilDay = event < eventCount ? (int) (events[event] >> 32) - 1 : Integer.MAX_VALUE;
+            boolean anyMaturity = earliestMaturityDay != Integer.MAX_VALUE;
+            int fixedMax = periodCount == 0 ? 0 : notActivatedPeriods > 0 ? Math.max(this.fixedMax, 0) : this.fixedMax;
+            int maxAgeingBase = periodCount == 0 ? NONE : this.maxAgeingBase;
+
+            if (writtenOffLoan) {
+                if (!writeOffFound || writtenOffDay == InstallmentRows.NO_DATE) {
+                    trend.set(validUntilDay, 0, NONE, fixedMax, maxAgeingBase);
+                } else if (anyMaturity) {
+                    int dpd = writtenOffDay - latestMaturityDay;
+                    trend.set(Integer.MAX_VALUE, dpd, NONE, dpd, NONE);
+                } else {
+                    // measured up to the calculation day itself, only valid on that day
+                    int dpd = writtenOffDay - day;
+                    trend.set(day, dpd, NONE, dpd, NONE);
+                }
+            } else if (!anyMaturity) {
+                trend.set(Integer.MAX_VALUE, 0, NONE, 0, NONE);
+            } else if (day <= earliestMaturityDay) {
+                trend.set(Math.min(validUntilDay, earliestMaturityDay), 0, NONE, 0, NONE);
+            } else if (notPaidFound) {
+                if (overdueNotPaidCount > 1) {
+                    trend.set(validUntilDay, highestNotPaidFixed, highestNotPaidAgeingBase, fixedMax, maxAgeingBase);
+                } else {
+                    trend.set(validUntilDay, firstNotPaidFixed, firstNotPaidAgeingBase, fixedMax, maxAgeingBase);
+                }
+            } else {
+                trend.set(validUntilDay, paidFound ? latestPaidDpd : 0, NONE, fixedMax, maxAgeingBase);
+            }
+            return trend;
+        }
+
+        private void apply(int payload, int day) {
+            int index = payload >>> 1;
+            if ((payload & 1) == COUNT_EVENT) {
+                overdueNotPaidCount++;
+                return;
+            }
+
+            notActivatedPeriods--;
+            int firstRow = periodFirstRows[index];
+            boolean ageing = DpdKernel.isAgeing(rows, firstRow, day);
+            int rowDpd = DpdKernel.rowDpd(rows, firstRow, day);
+            if (ageing) {
+                maxAgeingBase = Math.max(maxAgeingBase, -rows.maturityDay(firstRow));
+            } else {
+                fixedMax = Math.max(fixedMax, rowDpd);
+            }
+            // with a paid row the latestDpd candidate is its fixed late payment, applied up front
+            if (periodFirstPaidRows[index] < 0 && rowDpd > 0) {
+                addNotPaid(index, ageing ? NONE : rowDpd, ageing ? -rows.maturityDay(firstRow) : NONE);
+            }
+        }
+
+        private void addNotPaid(int period, int fixed, int ageingBase) {
+            notPaidFound = true;
+            if (period < firstNotPaidPeriod) {
+                firstNotPaidPeriod = period;
+                firstNotPaidFixed = fixed;
+                firstNotPaidAgeingBase = ageingBase;
+            }
+            highestNotPaidFixed = Math.max(highestNotPaidFixed, fixed);
+            highestNotPaidAgeingBase = Math.max(highestNotPaidAgeingBase, ageingBase);
+        }
+
+        private void addEvent(int day, int index, int type) {
+            events[eventCount++] = (long) day << 32 | (index << 1 | type);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+
+/**
+ * DPD calculation over {@link InstallmentRows}, giving the same latestDpd and maxDpd
+ * as {@link InstallmentLoanV3#calculateLatestDpd(LocalDate)}.
+ *
+ * <p>Works in one pass over the rows of a loan, which must be ordered by period. The result is
+ * packed into a long, see {@link #latestDpd(long)} and {@link #maxDpd(long)}, or returned as a
+ * {@link DpdTrend} that stays valid until the next installment matures.
+ */
+final class DpdKernel {
+    private static final int NONE = DpdTrend.NONE;
+
+    static final byte NOT_PAID = (byte) RepaymentStatus.NOT_PAID.ordinal();
+    static final byte PARTIAL_REPAYMENT = (byte) RepaymentStatus.PARTIAL_REPAYMENT.ordinal();
+    static final byte PAID = (byte) RepaymentStatus.PAID.ordinal();
+    static final byte GRACE_PERIOD = (byte) RepaymentStatus.GRACE_PERIOD.ordinal();
+    static final byte WRITE_OFF = (byte) RepaymentStatus.WRITE_OFF.ordinal();
+
+    private DpdKernel() {
+    }
+
+    /**
+     * Calculates the loan made of rows {@code [from, to)} as of the given epoch day.
+     *
+     * @param writtenOffLoan whether the loan status is {@link Status#WRITE_OFF}
+     */
+    static long calculate(InstallmentRows rows, int from, int to, boolean writtenOffLoan, int calculationDay) {
+        return calculate(rows, from, to, writtenOffLoan, calculationDay, new DpdTrend());
+    }
+
+    /**
+     * Same as {@link #calculate(InstallmentRows, int, int, boolean, int)}, using the caller's scratch
+     * trend so that nothing is allocated.
+     */
+    static long calculate(InstallmentRows rows, int from, int to, boolean writtenOffLoan, int calculationDay,
+                          DpdTrend scratch) {
+        return trend(rows, from, to, writtenOffLoan, calculationDay, scratch).pack(calculationDay);
+    }
+
+    /**
+     * Calculates how latestDpd and maxDpd of the loan made of rows {@code [from, to)} develop from the
+     * given epoch day on, until the next installment matures.
+     *
+     * @param writtenOffLoan whether the loan status is {@link Status#WRITE_OFF}
+     */
+    static DpdTrend trend(InstallmentRows rows, int from, int to, boolean writtenOffLoan, int calculationDay,
+                          DpdTrend trend) {
+        int earliestMaturityDay = Integer.MAX_VALUE;
+        int latestMaturityDay = Integer.MIN_VALUE;
+        int nextMaturityDay = Integer.MAX_VALUE;
+        boolean writeOffFound = false;
+        int writtenOffDay = InstallmentRows.NO_DATE;
+
+        boolean anyPeriod = false;
+        int fixedMax = NONE;
+        int maxAgeingBase = NONE;
+        int overdueNotPaidCount = 0;
+        boolean notPaidFound = false;
+        int firstNotPaidFixed = NONE;
+        int firstNotPaidAgeingBase = NONE;
+        int highestNotPaidFixed = NONE;
+        int highestNotPaidAgeingBase = NONE;
+        int latestPaidDpd = 0;
+        int latestPaidMaturityDay = Integer.MIN_VALUE;
+        boolean paidFound = false;
+
+        int firstRow = -1;
+        int firstPaidRow = -1;
+        int period = 0;
+        for (int row = from; row <= to; row++) {
+            boolean end = row == to;
+            if (!end && isGracePeriod(rows, row)) {
+                continue;
+            }
+            if (firstRow >= 0 && (end || rows.period(row) != period)) {
+                // close the previous period
+                anyPeriod = true;
+                boolean paidOnRecord = firstPaidRow >= 0 && rows.repaymentDay(firstPaidRow) != InstallmentRows.NO_DATE;
+                if (!paidOnRecord && isAgeing(rows, firstRow, calculationDay)) {
+                    maxAgeingBase = Math.max(maxAgeingBase, -rows.maturityDay(firstRow));
+                } else {
+                    fixedMax = Math.max(fixedMax, paidOnRecord
+                            ? paidPeriodDpd(rows, firstRow, firstPaidRow)
+                            : rowDpd(rows, firstRow, calculationDay));
+                }
+
+                int candidateRow = firstPaidRow >= 0 ? firstPaidRow : firstRow;
+                boolean ageing = firstPaidRow < 0 && isAgeing(rows, firstRow, calculationDay);
+                int candidateDpd = firstPaidRow >= 0
+                        ? latePaymentDpd(rows, firstPaidRow)
+                        : rowDpd(rows, firstRow, calculationDay);
+                if (candidateDpd > 0) {
+                    if (rows.repaymentStatus(firstRow) == PAID) {
+                        int maturityDay = rows.maturityDay(candidateRow);
+                        if (!paidFound || maturityDay > latestPaidMaturityDay) {
+                            paidFound = true;
+                            latestPaidMaturityDay = maturityDay;
+                            latestPaidDpd = candidateDpd;
+                        }
+                    } else {
+                        if (!notPaidFound) {
+                            notPaidFound = true;
+                            firstNotPaidFixed = ageing ? NONE : candidateDpd;
+                            firstNotPaidAgeingBase = ageing ? -rows.maturityDay(firstRow) : NONE;
+                        }
+                        if (ageing) {
+                            highestNotPaidAgeingBase = Math.max(highestNotPaidAgeingBase, -rows.maturityDay(firstRow));
+                        } else {
+                            highestNotPaidFixed = Math.max(highestNotPaidFixed, candidateDpd);
+                        }
+                    }
+                }
+                firstRow = -1;
+            }
+            if (end) {
+                break;
+            }
+
+            if (firstRow < 0) {
+                firstRow = row;
+                firstPaidRow = -1;
+                period = rows.period(row);
+            }
+
+            int maturityDay = rows.maturityDay(row);
+            if (maturityDay != InstallmentRows.NO_DATE) {
+                earliestMaturityDay = Math.min(earliestMaturityDay, maturityDay);
+                latestMaturityDay = Math.max(latestMaturityDay, maturityDay);
+                if (maturityDay >= calculationDay) {
+                    nextMaturityDay = Math.min(nextMaturityDay, maturityDay);
+                }
+            }
+
+            byte repaymentStatus = rows.repaymentStatus(row);
+            if (repaymentStatus == WRITE_OFF && !writeOffFound) {
+                writeOffFound = true;
+                writtenOffDay = rows.writtenOffDay(row);
+            }
+            if (repaymentStatus == PAID) {
+                if (firstPaidRow < 0) {
+                    firstPaidRow = row;
+                }
+            } else if (rowDpd(rows, row, calculationDay) > 0) {
+                overdueNotPaidCount++;
+            }
+        }
+
+        if (!anyPeriod) {
+            fixedMax = 0;
+        }
+        boolean anyMaturity = earliestMaturityDay != Integer.MAX_VALUE;
+        if (writtenOffLoan) {
+            if (!writeOffFound || writtenOffDay == InstallmentRows.NO_DATE) {
+                trend.set(nextMaturityDay, 0, NONE, fixedMax, maxAgeingBase);
+            } else if (anyMaturity) {
+                int dpd = writtenOffDay - latestMaturityDay;
+                trend.set(Integer.MAX_VALUE, dpd, NONE, dpd, NONE);
+            } else {
+                // measured up to the calculation day itself, only valid on that day
+                int dpd = writtenOffDay - calculationDay;
+                trend.set(calculationDay, dpd, NONE, dpd, NONE);
+            }
+            return trend;
+        }
+
+        if (calculationDay <= (anyMaturity ? earliestMaturityDay : calculationDay)) {
+            trend.set(anyMaturity ? earliestMaturityDay : calculationDay, 0, NONE, 0, NONE);
+            return trend;
+        }
+        if (notPaidFound) {
+            if (overdueNotPaidCount > 1) {
+                trend.set(nextMaturityDay, highestNotPaidFixed, highestNotPaidAgeingBase, fixedMax, maxAgeingBase);
+            } else {
+                trend.set(nextMaturityDay, firstNotPaidFixed, firstNotPaidAgeingBase, fixedMax, maxAgeingBase);
+            }
+        } else {
+            trend.set(nextMaturityDay, paidFound ? latestPaidDpd : 0, NONE, fixedMax, maxAgeingBase);
+        }
+        return trend;
+    }
+
+    static int latestDpd(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    static int maxDpd(long packed) {
+        return (int) packed;
+    }
+
+    static long pack(int latestDpd, int maxDpd) {
+        return ((long) latestDpd << 32) | (maxDpd & 0xFFFFFFFFL);
+    }
+
+    static Dpd toDpd(long packed) {
+        return new Dpd(latestDpd(packed), maxDpd(packed));
+    }
+
+    static boolean isGracePeriod(InstallmentRows rows, int row) {
+        return rows.repaymentStatus(row) == GRACE_PERIOD && rows.amount(row) == 0;
+    }
+
+    /**
+     * Same as {@link InstallmentV3#calculateDpd(LocalDate)}; a row without maturity date has no DPD.
+     */
+    static int rowDpd(InstallmentRows rows, int row, int calculationDay) {
+        int maturityDay = rows.maturityDay(row);
+        if (maturityDay == InstallmentRows.NO_DATE || calculationDay <= maturityDay || isGracePeriod(rows, row)) {
+            return 0;
+        }
+        byte repaymentStatus = rows.repaymentStatus(row);
+        if (repaymentStatus == WRITE_OFF && rows.writtenOffDay(row) != InstallmentRows.NO_DATE) {
+            return rows.writtenOffDay(row) - maturityDay;
+        }
+        if (repaymentStatus == PAID && rows.repaymentDay(row) != InstallmentRows.NO_DATE) {
+            return Math.max(rows.repaymentDay(row) - maturityDay, 0);
+        }
+        return calculationDay - maturityDay;
+    }
+
+    /**
+     * Whether the row's DPD grows with the calculation day, that is it is overdue and neither paid
+     * nor written off on record.
+     */
+    static boolean isAgeing(InstallmentRows rows, int row, int calculationDay) {
+        int maturityDay = rows.maturityDay(row);
+        if (maturityDay == InstallmentRows.NO_DATE || calculationDay <= maturityDay || isGracePeriod(rows, row)) {
+            return false;
+        }
+        byte repaymentStatus = rows.repaymentStatus(row);
+        return !(repaymentStatus == WRITE_OFF && rows.writtenOffDay(row) != InstallmentRows.NO_DATE)
+                && !(repaymentStatus == PAID && rows.repaymentDay(row) != InstallmentRows.NO_DATE);
+    }
+
+    /**
+     * DPD a paid period contributes to maxDpd: the repayment delay of its first paid row, measured
+     * from the maturity of the period's first row.
+     */
+    static int paidPeriodDpd(InstallmentRows rows, int firstRow, int firstPaidRow) {
+        int maturityDay = rows.maturityDay(firstRow);
+        return maturityDay == InstallmentRows.NO_DATE ? 0 : rows.repaymentDay(firstPaidRow) - maturityDay;
+    }
+
+    /**
+     * DPD of a paid row at its repayment date, 0 when it was paid on time.
+     */
+    static int latePaymentDpd(InstallmentRows rows, int paidRow) {
+        int maturityDay = rows.maturityDay(paidRow);
+        int repaymentDay = rows.repaymentDay(paidRow);
+        if (maturityDay == InstallmentRows.NO_DATE || repaymentDay == InstallmentRows.NO_DATE) {
+            return 0;
+        }
+        return Math.max(repaymentDay - maturityDay, 0);
+    }
+}
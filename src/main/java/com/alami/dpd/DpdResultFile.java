@@ -0,0 +1,160 @@
+package com.alami.dpd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Compact binary file of one run's DPD results, read in place from a memory-mapped file.
+ *
+ * <p>The file is little-endian: a 16-byte header with magic {@code DPDR}, version, calculation epoch
+ * day and result count, then one 16-byte entry per loan ordered by loan id: loan id (long), latestDpd
+ * (int) and maxDpd (int). 8 million loans take 128 MB. Lookups are binary searches over the mapping,
+ * and two files can be merged in loan id order, see {@link DpdChangeCapture}. Instances are immutable
+ * and can be shared between threads.
+ */
+public final class DpdResultFile {
+    static final int MAGIC = 'D' | 'P' << 8 | 'D' << 16 | 'R' << 24;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int ENTRY_BYTES = 16;
+
+    private final ByteBuffer buffer;
+    private final int calculationDay;
+    private final int size;
+
+    private DpdResultFile(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("not a DPD result file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("unsupported DPD result file version " + buffer.getInt(4));
+        }
+        this.calculationDay = buffer.getInt(8);
+        this.size = buffer.getInt(12);
+        if (buffer.capacity() != HEADER_BYTES + (long) size * ENTRY_BYTES) {
+            throw new IllegalArgumentException("truncated DPD result file");
+        }
+    }
+
+    /**
+     * Maps the file read-only. The mapping outlives the channel, which is closed right away.
+     */
+    public static DpdResultFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static DpdResultFile wrap(ByteBuffer buffer) {
+        return new DpdResultFile(buffer.duplicate().clear());
+    }
+
+    public static Writer writer(LocalDate calculationDate) {
+        return new Writer(calculationDate);
+    }
+
+    public LocalDate calculationDate() {
+        return LocalDate.ofEpochDay(calculationDay);
+    }
+
+    int calculationDay() {
+        return calculationDay;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Position of the loan in the file, -1 when it is not there.
+     */
+    public int indexOf(long loanId) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long id = loanId(middle);
+            if (id < loanId) {
+                low = middle + 1;
+            } else if (id > loanId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public long loanId(int index) {
+        return buffer.getLong(entry(index));
+    }
+
+    public int latestDpd(int index) {
+        return buffer.getInt(entry(index) + Long.BYTES);
+    }
+
+    public int maxDpd(int index) {
+        return buffer.getInt(entry(index) + Long.BYTES + Integer.BYTES);
+    }
+
+    private static int entry(int index) {
+        return HEADER_BYTES + index * ENTRY_BYTES;
+    }
+
+    /**
+     * Collects results and writes them as one file. Not thread-safe.
+     */
+    public static final class Writer {
+        private final int calculationDay;
+        private long[] loanIds = new long[1024];
+        private long[] dpds = new long[1024];
+        private int size;
+
+        private Writer(LocalDate calculationDate) {
+            this.calculationDay = (int) calculationDate.toEpochDay();
+        }
+
+        public Writer add(long loanId, int latestDpd, int maxDpd) {
+            if (size == loanIds.length) {
+                loanIds = Arrays.copyOf(loanIds, size * 2);
+                dpds = Arrays.copyOf(dpds, size * 2);
+            }
+            loanIds[size] = loanId;
+            dpds[size] = DpdKernel.pack(latestDpd, maxDpd);
+            size++;
+            return this;
+        }
+
+        /**
+         * Writes the file, replacing it. Results are stored in loan id order; a loan id that was added
+         * twice is rejected with an {@link IllegalArgumentException}.
+         */
+        public void write(Path file) throws IOException {
+            int[] order = PrimitiveSort.order(loanIds, size);
+            long bytes = HEADER_BYTES + (long) size * ENTRY_BYTES;
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("result file of " + bytes + " bytes does not fit one mapping");
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(calculationDay).putInt(size);
+                for (int i : order) {
+                    buffer.putLong(loanIds[i])
+                            .putInt(DpdKernel.latestDpd(dpds[i]))
+                            .putInt(DpdKernel.maxDpd(dpds[i]));
+                }
+                buffer.force();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+
+/**
+ * Day-over-day DPD of every loan of a {@link ColumnarSchedule}, recalculating only the loans that
+ * need it.
+ *
+ * <p>Per loan it keeps a compact state of five ints: the fixed and the ageing part of latestDpd and
+ * maxDpd and the last day the state is valid, which is the next maturity of one of the loan's
+ * installments. Rolling to a later day derives the new latestDpd and maxDpd from that state in O(1)
+ * for every untouched loan. A loan is recalculated in full when it is in the set of loans with
+ * repayment or status changes, when one of its installments matured since the last roll or when
+ * the roll goes back in time.
+ *
+ * <p>Not thread-safe; roll disjoint loan ranges from separate instances to parallelize.
+ */
+public final class DpdRollForward {
+    private final int[] validUntilDays;
+    private final int[] fixedLatest;
+    private final int[] latestAgeingBases;
+    private final int[] fixedMax;
+    private final int[] maxAgeingBases;
+    private final DpdTrend scratch = new DpdTrend();
+
+    private int lastDay = InstallmentRows.NO_DATE;
+    private long rolledLoans;
+    private long recalculatedLoans;
+
+    public DpdRollForward(int loanCount) {
+        this.validUntilDays = new int[loanCount];
+        this.fixedLatest = new int[loanCount];
+        this.latestAgeingBases = new int[loanCount];
+        this.fixedMax = new int[loanCount];
+        this.maxAgeingBases = new int[loanCount];
+    }
+
+    /**
+     * Rolls every loan of the schedule to the given date and writes its DPD into the caller's arrays.
+     * The first roll calculates every loan.
+     *
+     * @param schedule     the schedules as of {@code date}, with the same loans in the same order as before
+     * @param changedLoans loans with repayment or status changes since the previous roll
+     */
+    public void rollTo(ColumnarSchedule schedule, LocalDate date, BitSet changedLoans, int[] latestDpd, int[] maxDpd) {
+        int day = (int) date.toEpochDay();
+        boolean recalculateAll = lastDay == InstallmentRows.NO_DATE || day < lastDay;
+        for (int loan = 0; loan < validUntilDays.length; loan++) {
+            if (recalculateAll || day > validUntilDays[loan] || changedLoans.get(loan)) {
+                recalculate(schedule, loan, day);
+            } else {
+                rolledLoans++;
+            }
+            latestDpd[loan] = DpdTrend.evaluate(fixedLatest[loan], latestAgeingBases[loan], day);
+            maxDpd[loan] = DpdTrend.evaluate(fixedMax[loan], maxAgeingBases[loan], day);
+        }
+        lastDay = day;
+    }
+
+    /**
+     * Loans whose DPD was derived from their state without recalculation, over all rolls.
+     */
+    public long getRolledLoans() {
+        return rolledLoans;
+    }
+
+    /**
+     * Loans that were recalculated in full, over all rolls.
+     */
+    public long getRecalculatedLoans() {
+        return recalculatedLoans;
+    }
+
+    private void recalculate(ColumnarSchedule schedule, int loan, int day) {
+        DpdTrend trend = schedule.trend(loan, day, scratch);
+        validUntilDays[loan] = trend.validUntilDay;
+        fixedLatest[loan] = trend.fixedLatest;
+        latestAgeingBases[loan] = trend.latestAgeingBase;
+        fixedMax[loan] = trend.fixedMax;
+        maxAgeingBases[loan] = trend.maxAgeingBase;
+        recalculatedLoans++;
+    }
+}
@@ -0,0 +1,21 @@
+package com.alami.dpd;
+
+/**
+ * Receives calculated DPD results. Batch engines call it from several worker threads at once,
+ * so implementations must be thread-safe.
+ */
+@FunctionalInterface
+public interface DpdSink<L> {
+    void accept(L loan, Dpd dpd);
+
+    /**
+     * Passes every result to this sink and then to {@code next}, for instance to aggregate results
+     * while they are being stored.
+     */
+    default DpdSink<L> andThen(DpdSink<? super L> next) {
+        return (loan, dpd) -> {
+            accept(loan, dpd);
+            next.accept(loan, dpd);
+        };
+    }
+}
@@ -0,0 +1,290 @@
+package com.alami.dpd;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * latestDpd and maxDpd of one loan for any calculation date, precomputed once per schedule.
+ *
+ * <p>Between two maturity dates no installment becomes due, so each result is a fixed part or a part
+ * that grows by one a day, see {@link DpdTrend}. The segments are built in one sweep over the
+ * maturity events, as {@link DpdHistory} does, in O(rows log rows), and only the segments where that
+ * form changes are kept, five ints each. A date is answered in constant time: dates after the last
+ * segment start, where most queries fall, go straight to it, others through a bucket index that has
+ * about one segment per bucket. Results are the same as
+ * {@link InstallmentLoanV3#calculateLatestDpd(LocalDate)}.
+ *
+ * <p>The summary also keeps the facts most queries about a schedule need and can be written next to
+ * the schedule with {@link #writeTo(ByteBuffer)} and read back with {@link #readFrom(ByteBuffer)}.
+ * Instances are immutable and thread-safe.
+ */
+public final class DpdSummary {
+    private static final int NONE = DpdTrend.NONE;
+    private static final int HEADER_INTS = 7;
+    private static final int SEGMENT_INTS = 5;
+    private static final int START_DAY = 0;
+    private static final int FIXED_LATEST = 1;
+    private static final int LATEST_AGEING_BASE = 2;
+    private static final int FIXED_MAX = 3;
+    private static final int MAX_AGEING_BASE = 4;
+
+    private final int earliestMaturityDay;
+    private final int latestMaturityDay;
+    private final int firstUnpaidPeriod;
+    private final int maxLatePaymentDpd;
+    private final int writtenOffDay;
+    /**
+     * Written-off loan without any maturity date: its DPD is measured up to the calculation day itself.
+     */
+    private final boolean measuredToCalculationDay;
+    /**
+     * {@link #SEGMENT_INTS} ints per segment, ordered by start day. Segment 0 also applies to every day
+     * before its start.
+     */
+    private final int[] segments;
+    private final int segmentCount;
+    /**
+     * Per bucket of {@code 1 << bucketShift} days from {@code bucketBase}, the start of segment 1, the
+     * segment that applies on the bucket's first day; null with fewer than three segments.
+     */
+    private final int[] buckets;
+    private final int bucketBase;
+    private final int bucketShift;
+
+    private DpdSummary(int earliestMaturityDay, int latestMaturityDay, int firstUnpaidPeriod, int maxLatePaymentDpd,
+                       int writtenOffDay, boolean measuredToCalculationDay, int[] segments, int segmentCount) {
+        this.earliestMaturityDay = earliestMaturityDay;
+        this.latestMaturityDay = latestMaturityDay;
+        this.firstUnpaidPeriod = firstUnpaidPeriod;
+        this.maxLatePaymentDpd = maxLatePaymentDpd;
+        this.writtenOffDay = writtenOffDay;
+        this.measuredToCalculationDay = measuredToCalculationDay;
+        this.segments = segments;
+        this.segmentCount = segmentCount;
+        if (segmentCount > 2) {
+            bucketBase = segments[SEGMENT_INTS + START_DAY];
+            long span = (long) segments[(segmentCount - 1) * SEGMENT_INTS + START_DAY] - bucketBase;
+            int shift = 0;
+            while ((span >> shift) >= segmentCount) {
+                shift++;
+            }
+            bucketShift = shift;
+            buckets = new int[(int) (span >> shift) + 1];
+            int segment = 1;
+            for (int bucket = 0; bucket < buckets.length; bucket++) {
+                long day = bucketBase + ((long) bucket << shift);
+                while (segment + 1 < segmentCount && segments[(segment + 1) * SEGMENT_INTS + START_DAY] <= day) {
+                    segment++;
+                }
+                buckets[bucket] = segment;
+            }
+        } else {
+            bucketBase = 0;
+            bucketShift = 0;
+            buckets = null;
+        }
+    }
+
+    /**
+     * Summarizes the loan made of rows {@code [from, to)}, which must be ordered by period.
+     *
+     * @param writtenOffLoan whether the loan status is {@link Status#WRITE_OFF}
+     */
+    static DpdSummary of(InstallmentRows rows, int from, int to, boolean writtenOffLoan) {
+        int earliestMaturityDay = Integer.MAX_VALUE;
+        int latestMaturityDay = Integer.MIN_VALUE;
+        int firstUnpaidPeriod = NONE;
+        int maxLatePaymentDpd = 0;
+        boolean writeOffFound = false;
+        int writtenOffDay = InstallmentRows.NO_DATE;
+        int firstRow = -1;
+        int firstPaidRow = -1;
+        for (int row = from; row <= to; row++) {
+            boolean end = row == to;
+            if (!end && DpdKernel.isGracePeriod(rows, row)) {
+                continue;
+            }
+            if (firstRow >= 0 && (end || rows.period(row) != rows.period(firstRow))) {
+                if (firstPaidRow >= 0 && rows.repaymentDay(firstPaidRow) != InstallmentRows.NO_DATE) {
+                    maxLatePaymentDpd = Math.max(maxLatePaymentDpd, DpdKernel.paidPeriodDpd(rows, firstRow, firstPaidRow));
+                }
+                firstRow = -1;
+            }
+            if (end) {
+                break;
+            }
+            if (firstRow < 0) {
+                firstRow = row;
+                firstPaidRow = -1;
+                byte repaymentStatus = rows.repaymentStatus(row);
+                if (firstUnpaidPeriod == NONE
+                        && (repaymentStatus == DpdKernel.NOT_PAID || repaymentStatus == DpdKernel.PARTIAL_REPAYMENT)) {
+                    firstUnpaidPeriod = rows.period(row);
+                }
+            }
+            if (rows.repaymentStatus(row) == DpdKernel.PAID && firstPaidRow < 0) {
+                firstPaidRow = row;
+            }
+            if (rows.repaymentStatus(row) == DpdKernel.WRITE_OFF && !writeOffFound) {
+                writeOffFound = true;
+                writtenOffDay = rows.writtenOffDay(row);
+            }
+            int maturityDay = rows.maturityDay(row);
+            if (maturityDay != InstallmentRows.NO_DATE) {
+                earliestMaturityDay = Math.min(earliestMaturityDay, maturityDay);
+                latestMaturityDay = Math.max(latestMaturityDay, maturityDay);
+            }
+        }
+        boolean anyMaturity = earliestMaturityDay != Integer.MAX_VALUE;
+        boolean measuredToCalculationDay = writtenOffLoan && writtenOffDay != InstallmentRows.NO_DATE && !anyMaturity;
+
+        int[] segments = new int[4 * SEGMENT_INTS];
+        int segmentCount = 0;
+        if (!measuredToCalculationDay) {
+            DpdHistory.Sweep sweep = new DpdHistory.Sweep(rows, from, to);
+            DpdTrend trend = new DpdTrend();
+            int day = InstallmentRows.NO_DATE + 1;
+            while (true) {
+                sweep.advance(writtenOffLoan, day, trend);
+                int last = (segmentCount - 1) * SEGMENT_INTS;
+                if (segmentCount == 0
+                        || segments[last + FIXED_LATEST] != trend.fixedLatest
+                        || segments[last + LATEST_AGEING_BASE] != trend.latestAgeingBase
+                        || segments[last + FIXED_MAX] != trend.fixedMax
+                        || segments[last + MAX_AGEING_BASE] != trend.maxAgeingBase) {
+                    if ((segmentCount + 1) * SEGMENT_INTS > segments.length) {
+                        segments = Arrays.copyOf(segments, segments.length * 2);
+                    }
+                    int offset = segmentCount * SEGMENT_INTS;
+                    segments[offset + START_DAY] = day;
+                    segments[offset + FIXED_LATEST] = trend.fixedLatest;
+                    segments[offset + LATEST_AGEING_BASE] = trend.latestAgeingBase;
+                    segments[offset + FIXED_MAX] = trend.fixedMax;
+                    segments[offset + MAX_AGEING_BASE] = trend.maxAgeingBase;
+                    segmentCount++;
+                }
+                if (trend.validUntilDay == Integer.MAX_VALUE) {
+                    break;
+                }
+                day = trend.validUntilDay + 1;
+            }
+        }
+        return new DpdSummary(anyMaturity ? earliestMaturityDay : InstallmentRows.NO_DATE,
+                anyMaturity ? latestMaturityDay : InstallmentRows.NO_DATE,
+                firstUnpaidPeriod, maxLatePaymentDpd, writtenOffDay, measuredToCalculationDay,
+                Arrays.copyOf(segments, segmentCount * SEGMENT_INTS), segmentCount);
+    }
+
+    public Dpd calculateLatestDpd(LocalDate calculationDate) {
+        long dpd = calculate((int) calculationDate.toEpochDay());
+        return DpdKernel.toDpd(dpd);
+    }
+
+    public int getLatestDpd(LocalDate calculationDate) {
+        return DpdKernel.latestDpd(calculate((int) calculationDate.toEpochDay()));
+    }
+
+    public int getMaxDpd(LocalDate calculationDate) {
+        return DpdKernel.maxDpd(calculate((int) calculationDate.toEpochDay()));
+    }
+
+    long calculate(int calculationDay) {
+        if (measuredToCalculationDay) {
+            int dpd = writtenOffDay - calculationDay;
+            return DpdKernel.pack(dpd, dpd);
+        }
+        int offset = segmentOf(calculationDay) * SEGMENT_INTS;
+        return DpdKernel.pack(DpdTrend.evaluate(segments[offset + FIXED_LATEST], segments[offset + LATEST_AGEING_BASE], calculationDay),
+                DpdTrend.evaluate(segments[offset + FIXED_MAX], segments[offset + MAX_AGEING_BASE], calculationDay));
+    }
+
+    private int segmentOf(int day) {
+        int last = segmentCount - 1;
+        if (day >= segments[last * SEGMENT_INTS + START_DAY]) {
+            return last;
+        }
+        if (buckets == null || day < bucketBase) {
+            return last > 0 && day >= segments[SEGMENT_INTS + START_DAY] ? 1 : 0;
+        }
+        int segment = buckets[(int) (((long) day - bucketBase) >> bucketShift)];
+        while (segments[(segment + 1) * SEGMENT_INTS + START_DAY] <= day) {
+            segment++;
+        }
+        return segment;
+    }
+
+    public LocalDate getEarliestMaturityDate() {
+        return EpochDays.toDate(earliestMaturityDay);
+    }
+
+    public LocalDate getLatestMaturityDate() {
+        return EpochDays.toDate(latestMaturityDay);
+    }
+
+    /**
+     * Lowest period whose first installment is NOT_PAID or PARTIAL_REPAYMENT, null when there is none.
+     */
+    public Integer getFirstUnpaidPeriod() {
+        return firstUnpaidPeriod == NONE ? null : firstUnpaidPeriod;
+    }
+
+    /**
+     * Largest repayment delay among the periods paid on record, 0 when none was paid late.
+     */
+    public int getMaxLatePaymentDpd() {
+        return maxLatePaymentDpd;
+    }
+
+    /**
+     * Written-off date of the first write-off installment, null when there is none.
+     */
+    public LocalDate getWrittenOffDate() {
+        return EpochDays.toDate(writtenOffDay);
+    }
+
+    /**
+     * Number of bytes {@link #writeTo(ByteBuffer)} writes.
+     */
+    public int serializedSize() {
+        return (HEADER_INTS + segments.length) * Integer.BYTES;
+    }
+
+    /**
+     * Writes the summary at the buffer's position, in the buffer's byte order.
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(segmentCount)
+                .putInt(earliestMaturityDay)
+                .putInt(latestMaturityDay)
+                .putInt(firstUnpaidPeriod)
+                .putInt(maxLatePaymentDpd)
+                .putInt(writtenOffDay)
+                .putInt(measuredToCalculationDay ? 1 : 0);
+        for (int segment : segments) {
+            buffer.putInt(segment);
+        }
+    }
+
+    /**
+     * Reads a summary written by {@link #writeTo(ByteBuffer)} from the buffer's position.
+     */
+    public static DpdSummary readFrom(ByteBuffer buffer) {
+        int segments = buffer.getInt();
+        int earliestMaturityDay = buffer.getInt();
+        int latestMaturityDay = buffer.getInt();
+        int firstUnpaidPeriod = buffer.getInt();
+        int maxLatePaymentDpd = buffer.getInt();
+        int writtenOffDay = buffer.getInt();
+        boolean measuredToCalculationDay = buffer.getInt() != 0;
+        if (segments < 0 || (segments == 0) != measuredToCalculationDay) {
+            throw new IllegalArgumentException("Not a DPD summary: " + segments + " segments");
+        }
+        int[] segmentInts = new int[segments * SEGMENT_INTS];
+        for (int i = 0; i < segmentInts.length; i++) {
+            segmentInts[i] = buffer.getInt();
+        }
+        return new DpdSummary(earliestMaturityDay, latestMaturityDay, firstUnpaidPeriod, maxLatePaymentDpd,
+                writtenOffDay, measuredToCalculationDay, segmentInts, segments);
+    }
+}
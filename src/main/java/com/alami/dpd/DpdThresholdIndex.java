@@ -0,0 +1,394 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import lombok.Value;
+
+/**
+ * Forward index of the days on which unpaid installments reach DPD thresholds such as 30, 60 and 90,
+ * assuming nothing more is paid.
+ *
+ * <p>An unpaid installment (not paid, not written off on record, not a grace period) that matures on
+ * day {@code m} has a DPD of {@code d - m} on day {@code d}, so it crosses threshold {@code t} on
+ * {@code m + t}. Installments are therefore indexed once, by maturity epoch day, in primitive arrays of
+ * loan ids and periods per day: the crossings of threshold {@code t} on day {@code D} are the
+ * installments maturing on {@code D - t}, and a date range is one range lookup per threshold. That is
+ * about 12 bytes per unpaid installment, whatever the number of thresholds. As in {@link DpdKernel}, an
+ * installment is the first row of a period, and a period with a PAID row has a fixed late-payment DPD
+ * and is not indexed.
+ *
+ * <p>A loan's latestDpd grows with its oldest unpaid installment, which is indexed the same way in a
+ * second map for loan-level questions. Late payments and the number of overdue rows also move
+ * latestDpd, so the loan's primitive rows are kept as well and each loan-level crossing is checked
+ * against {@link DpdKernel} on its date and the day before. Written-off loans have a fixed DPD and are
+ * not indexed.
+ *
+ * <p>Repayments update the index incrementally: only the repaid installment, and the loan's oldest
+ * unpaid installment when that changes, are removed or added. Updates of one loan are serialized;
+ * each maturity day is locked on its own while it is read or updated. Thread-safe.
+ */
+public final class DpdThresholdIndex {
+    private static final Comparator<Crossing> BY_DATE = Comparator.comparing(Crossing::getDate)
+            .thenComparingLong(Crossing::getLoanId)
+            .thenComparingInt(Crossing::getPeriod)
+            .thenComparingInt(Crossing::getThreshold);
+    private static final ThreadLocal<InstallmentRowBuffer> ROWS = ThreadLocal.withInitial(InstallmentRowBuffer::new);
+
+    private final int[] thresholds;
+    private final Map<Long, UnpaidInstallments> loans = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, MaturityDay> installments = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Integer, MaturityDay> oldestInstallments = new ConcurrentSkipListMap<>();
+
+    public DpdThresholdIndex(int... thresholds) {
+        if (thresholds.length == 0) {
+            throw new IllegalArgumentException("at least one threshold is required");
+        }
+        this.thresholds = thresholds.clone();
+        Arrays.sort(this.thresholds);
+        for (int i = 0; i < this.thresholds.length; i++) {
+            if (this.thresholds[i] <= 0 || (i > 0 && this.thresholds[i - 1] == this.thresholds[i])) {
+                throw new IllegalArgumentException("thresholds must be positive and distinct: "
+                        + Arrays.toString(thresholds));
+            }
+        }
+    }
+
+    /**
+     * DPD 30, 60 and 90.
+     */
+    public static DpdThresholdIndex standard() {
+        return new DpdThresholdIndex(30, 60, 90);
+    }
+
+    /**
+     * Indexes the loan's unpaid installments, replacing whatever was indexed for the loan id before.
+     */
+    public void add(long loanId, InstallmentLoanV3 loan) {
+        loans.compute(loanId, (id, previous) -> {
+            if (previous != null) {
+                unindex(id, previous);
+            }
+            if (loan.getStatus() == Status.WRITE_OFF) {
+                return null;
+            }
+            UnpaidInstallments unpaid = unpaidInstallments(loan);
+            if (unpaid.count == 0) {
+                return null;
+            }
+            for (int i = 0; i < unpaid.periods.length; i++) {
+                day(installments, unpaid.maturityDays[i]).add(id, unpaid.periods[i]);
+            }
+            unpaid.oldest = oldest(unpaid);
+            day(oldestInstallments, unpaid.maturityDays[unpaid.oldest]).add(id, unpaid.periods[unpaid.oldest]);
+            return unpaid;
+        });
+    }
+
+    public void remove(long loanId) {
+        loans.computeIfPresent(loanId, (id, unpaid) -> {
+            unindex(id, unpaid);
+            return null;
+        });
+    }
+
+    /**
+     * Drops an installment paid on its maturity date and moves the loan's crossings to its next oldest
+     * unpaid installment when needed.
+     */
+    public void repaid(long loanId, int period) {
+        settle(loanId, period, DpdKernel.PAID, InstallmentRows.NO_DATE);
+    }
+
+    /**
+     * Records the open rows of the period as paid or written off on the given epoch day, on their
+     * maturity day when there is none, and drops the installment from the index.
+     */
+    private void settle(long loanId, int period, byte repaymentStatus, int day) {
+        loans.computeIfPresent(loanId, (id, unpaid) -> {
+            unpaid.settle(period, repaymentStatus, day);
+            int i = Arrays.binarySearch(unpaid.periods, period);
+            if (i < 0 || unpaid.maturityDays[i] == InstallmentRows.NO_DATE) {
+                return unpaid;
+            }
+            installments.get(unpaid.maturityDays[i]).remove(id, period);
+            if (i == unpaid.oldest) {
+                oldestInstallments.get(unpaid.maturityDays[i]).remove(id, period);
+            }
+            unpaid.maturityDays[i] = InstallmentRows.NO_DATE;
+            if (--unpaid.count == 0) {
+                return null;
+            }
+            if (i == unpaid.oldest) {
+                unpaid.oldest = oldest(unpaid);
+                day(oldestInstallments, unpaid.maturityDays[unpaid.oldest]).add(id, unpaid.periods[unpaid.oldest]);
+            }
+            return unpaid;
+        });
+    }
+
+    /**
+     * Applies a repayment event: a full repayment or an installment write-off ends the installment's
+     * ageing, a loan write-off fixes the loan's DPD. Partial repayments change nothing.
+     *
+     * @throws IllegalArgumentException for a PAID event without period
+     */
+    public void apply(RepaymentEvent event) {
+        if (event.getStatus() == RepaymentStatus.WRITE_OFF && event.getPeriod() == null) {
+            remove(event.getLoanId());
+        } else if (event.getStatus() == RepaymentStatus.PAID || event.getStatus() == RepaymentStatus.WRITE_OFF) {
+            if (event.getPeriod() == null) {
+                throw new IllegalArgumentException("PAID event of loan " + event.getLoanId() + " has no period");
+            }
+            settle(event.getLoanId(), event.getPeriod(), (byte) event.getStatus().ordinal(),
+                    EpochDays.of(event.getDate()));
+        }
+    }
+
+    public List<Crossing> crossingsOn(LocalDate date) {
+        return crossingsBetween(date, date);
+    }
+
+    /**
+     * Installment crossings from {@code from} to {@code to}, both inclusive, ordered by date.
+     */
+    public List<Crossing> crossingsBetween(LocalDate from, LocalDate to) {
+        return range(installments, from, to);
+    }
+
+    /**
+     * Days on which loans' latestDpd reaches a threshold from {@code from} to {@code to}, both inclusive,
+     * ordered by date: the crossings of each loan's oldest unpaid installment on which latestDpd is
+     * below the threshold the day before and at or above it on the day.
+     */
+    public List<Crossing> loanCrossingsBetween(LocalDate from, LocalDate to) {
+        List<Crossing> crossings = range(oldestInstallments, from, to);
+        crossings.removeIf(crossing -> {
+            UnpaidInstallments unpaid = loans.get(crossing.getLoanId());
+            return unpaid == null
+                    || !unpaid.reaches(crossing.getThreshold(), (int) crossing.getDate().toEpochDay());
+        });
+        return crossings;
+    }
+
+    private List<Crossing> range(ConcurrentSkipListMap<Integer, MaturityDay> days, LocalDate from, LocalDate to) {
+        List<Crossing> crossings = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return crossings;
+        }
+        for (int threshold : thresholds) {
+            int fromDay = clamp(from.toEpochDay() - threshold);
+            int toDay = clamp(to.toEpochDay() - threshold);
+            NavigableMap<Integer, MaturityDay> maturing = days.subMap(fromDay, true, toDay, true);
+            for (Map.Entry<Integer, MaturityDay> day : maturing.entrySet()) {
+                LocalDate date = LocalDate.ofEpochDay((long) day.getKey() + threshold);
+                day.getValue().forEach((loanId, period) -> crossings.add(new Crossing(loanId, period, threshold, date)));
+            }
+        }
+        crossings.sort(BY_DATE);
+        return crossings;
+    }
+
+    private static int clamp(long epochDay) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, epochDay));
+    }
+
+    private void unindex(long loanId, UnpaidInstallments unpaid) {
+        for (int i = 0; i < unpaid.periods.length; i++) {
+            if (unpaid.maturityDays[i] != InstallmentRows.NO_DATE) {
+                installments.get(unpaid.maturityDays[i]).remove(loanId, unpaid.periods[i]);
+            }
+        }
+        oldestInstallments.get(unpaid.maturityDays[unpaid.oldest]).remove(loanId, unpaid.periods[unpaid.oldest]);
+    }
+
+    private static MaturityDay day(ConcurrentSkipListMap<Integer, MaturityDay> days, int maturityDay) {
+        return days.computeIfAbsent(maturityDay, day -> new MaturityDay());
+    }
+
+    /**
+     * The first row of every period without a PAID row, when that row ages: the row
+     * {@link DpdKernel#trend} measures an unpaid period's DPD from. A period with a PAID row has a
+     * fixed late-payment DPD and never crosses a threshold.
+     */
+    private static UnpaidInstallments unpaidInstallments(InstallmentLoanV3 loan) {
+        InstallmentRowBuffer rows = ROWS.get();
+        PrimitiveDpdCalculator.load(loan, rows);
+        int[] periods = new int[rows.size()];
+        int[] maturityDays = new int[rows.size()];
+        int count = 0;
+        int row = 0;
+        while (row < rows.size()) {
+            if (DpdKernel.isGracePeriod(rows, row)) {
+                row++;
+                continue;
+            }
+            int firstRow = row;
+            int period = rows.period(firstRow);
+            boolean paid = false;
+            for (; row < rows.size() && (DpdKernel.isGracePeriod(rows, row) || rows.period(row) == period); row++) {
+                paid |= !DpdKernel.isGracePeriod(rows, row) && rows.repaymentStatus(row) == DpdKernel.PAID;
+            }
+            int maturityDay = rows.maturityDay(firstRow);
+            if (!paid && maturityDay != InstallmentRows.NO_DATE
+                    && DpdKernel.isAgeing(rows, firstRow, maturityDay + 1)) {
+                periods[count] = period;
+                maturityDays[count] = maturityDay;
+                count++;
+            }
+        }
+        return new UnpaidInstallments(rows.copy(), Arrays.copyOf(periods, count), Arrays.copyOf(maturityDays, count));
+    }
+
+    /**
+     * Position of the unpaid installment that matures first, the earlier period on ties.
+     */
+    private static int oldest(UnpaidInstallments unpaid) {
+        int oldest = -1;
+        for (int i = 0; i < unpaid.periods.length; i++) {
+            int maturityDay = unpaid.maturityDays[i];
+            if (maturityDay != InstallmentRows.NO_DATE && (oldest < 0 || maturityDay < unpaid.maturityDays[oldest])) {
+                oldest = i;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * One installment reaching a threshold on a date.
+     */
+    @Value
+    public static class Crossing {
+        long loanId;
+        int period;
+        int threshold;
+        LocalDate date;
+    }
+
+    /**
+     * A loan's rows and its unpaid installments ordered by period, with {@link InstallmentRows#NO_DATE}
+     * as maturity day once repaid, and the position of the oldest one still unpaid. The rows are read
+     * by queries while the loan may be updated, so they are guarded by the instance.
+     */
+    private static final class UnpaidInstallments {
+        private final InstallmentRowBuffer rows;
+        private final int[] periods;
+        private final int[] maturityDays;
+        private int count;
+        private int oldest;
+
+        UnpaidInstallments(InstallmentRowBuffer rows, int[] periods, int[] maturityDays) {
+            this.rows = rows;
+            this.periods = periods;
+            this.maturityDays = maturityDays;
+            this.count = periods.length;
+        }
+
+        synchronized void settle(int period, byte repaymentStatus, int day) {
+            for (int row = 0; row < rows.size(); row++) {
+                byte current = rows.repaymentStatus(row);
+                if (rows.period(row) != period || DpdKernel.isGracePeriod(rows, row)
+                        || current == DpdKernel.PAID || current == DpdKernel.WRITE_OFF) {
+                    continue;
+                }
+                int settledDay = day == InstallmentRows.NO_DATE ? rows.maturityDay(row) : day;
+                if (repaymentStatus == DpdKernel.PAID) {
+                    rows.setRepayment(row, repaymentStatus, settledDay, rows.writtenOffDay(row), rows.paidAmount(row));
+                } else {
+                    rows.setRepayment(row, repaymentStatus, rows.repaymentDay(row), settledDay, rows.paidAmount(row));
+                }
+            }
+        }
+
+        /**
+         * Whether latestDpd is below the threshold on the day before the epoch day and reaches it on
+         * the day.
+         */
+        synchronized boolean reaches(int threshold, int day) {
+            DpdTrend trend = new DpdTrend();
+            return DpdKernel.latestDpd(DpdKernel.calculate(rows, 0, rows.size(), false, day - 1, trend)) < threshold
+                    && DpdKernel.latestDpd(DpdKernel.calculate(rows, 0, rows.size(), false, day, trend)) >= threshold;
+        }
+    }
+
+    /**
+     * The installments maturing on one day as parallel loan id and period arrays. Appends leave the
+     * arrays unsorted; the first removal or read after them sorts by (loan id, period), so removals
+     * are binary searches. Removed entries are only marked and dropped when the arrays are sorted next
+     * or once they are half of the entries.
+     */
+    private static final class MaturityDay {
+        private long[] loanIds = new long[4];
+        private int[] periods = new int[4];
+        private final BitSet removed = new BitSet();
+        private int size;
+        private int removedCount;
+        private boolean sorted = true;
+
+        synchronized void add(long loanId, int period) {
+            if (size == loanIds.length) {
+                loanIds = Arrays.copyOf(loanIds, size * 2);
+                periods = Arrays.copyOf(periods, size * 2);
+            }
+            loanIds[size] = loanId;
+            periods[size] = period;
+            size++;
+            sorted = false;
+        }
+
+        synchronized void remove(long loanId, int period) {
+            sort();
+            int i = PrimitiveSort.binarySearch(loanIds, periods, 0, size, loanId, period);
+            if (i >= 0 && !removed.get(i)) {
+                removed.set(i);
+                if (++removedCount > size / 2) {
+                    compact();
+                }
+            }
+        }
+
+        synchronized void forEach(InstallmentConsumer consumer) {
+            sort();
+            for (int i = 0; i < size; i++) {
+                if (!removed.get(i)) {
+                    consumer.accept(loanIds[i], periods[i]);
+                }
+            }
+        }
+
+        private void sort() {
+            if (!sorted) {
+                compact();
+                PrimitiveSort.sort(loanIds, periods, 0, size);
+                sorted = true;
+            }
+        }
+
+        private void compact() {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!removed.get(i)) {
+                    loanIds[kept] = loanIds[i];
+                    periods[kept] = periods[i];
+                    kept++;
+                }
+            }
+            size = kept;
+            removed.clear();
+            removedCount = 0;
+        }
+    }
+
+    @FunctionalInterface
+    private interface InstallmentConsumer {
+        void accept(long loanId, int period);
+    }
+}
@@ -0,0 +1,43 @@
+package com.alami.dpd;
+
+/**
+ * latestDpd and maxDpd of one loan as functions of the calculation day, valid from the day they were
+ * calculated at until {@link #validUntilDay}.
+ *
+ * <p>Within that window no installment of the loan matures, so every DPD term is either fixed or grows
+ * by one a day. Each result is the larger of its fixed part and its ageing part, where the ageing part
+ * is {@code day + ageingBase}. {@link #NONE} marks an absent part.
+ */
+final class DpdTrend {
+    static final int NONE = Integer.MIN_VALUE;
+
+    int validUntilDay;
+    int fixedLatest;
+    int latestAgeingBase;
+    int fixedMax;
+    int maxAgeingBase;
+
+    int latestDpd(int day) {
+        return evaluate(fixedLatest, latestAgeingBase, day);
+    }
+
+    int maxDpd(int day) {
+        return evaluate(fixedMax, maxAgeingBase, day);
+    }
+
+    long pack(int day) {
+        return DpdKernel.pack(latestDpd(day), maxDpd(day));
+    }
+
+    void set(int validUntilDay, int fixedLatest, int latestAgeingBase, int fixedMax, int maxAgeingBase) {
+        this.validUntilDay = validUntilDay;
+        this.fixedLatest = fixedLatest;
+        this.latestAgeingBase = latestAgeingBase;
+        this.fixedMax = fixedMax;
+        this.maxAgeingBase = maxAgeingBase;
+    }
+
+    static int evaluate(int fixed, int ageingBase, int day) {
+        return ageingBase == NONE ? fixed : Math.max(fixed, day + ageingBase);
+    }
+}
@@ -0,0 +1,45 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+
+/**
+ * Conversions between dates and the int epoch days of {@link InstallmentRows}.
+ */
+final class EpochDays {
+    private EpochDays() {
+    }
+
+    static int of(LocalDate date) {
+        return date == null ? InstallmentRows.NO_DATE : (int) date.toEpochDay();
+    }
+
+    static LocalDate toDate(int epochDay) {
+        return epochDay == InstallmentRows.NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * Epoch day of a proleptic Gregorian date without creating a {@link LocalDate}. The fields are
+     * expected to be valid, see {@link #isValid(int, int, int)}.
+     */
+    static int of(int year, int month, int day) {
+        // days from civil, counting years from March so that the leap day is the last day of a year
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    static boolean isValid(int year, int month, int day) {
+        return month >= 1 && month <= 12 && day >= 1 && day <= lengthOfMonth(year, month);
+    }
+
+    static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+}
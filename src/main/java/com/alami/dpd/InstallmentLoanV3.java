@@ -5,31 +5,36 @@ import lombok.Getter;
 import lombok.Value;
 
 import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * An installment loan and its DPD calculation.
+ *
+ * <p>The loan is never modified by {@link #calculateLatestDpd(LocalDate)}: grace period installments
+ * are skipped while iterating instead of being removed from {@link #getInstallments()}. A loan whose
+ * installment list is not mutated by its owner can therefore be shared between threads and cached,
+ * and concurrent calls with different calculation dates are safe.
+ */
 @Getter
 @Builder
 public class InstallmentLoanV3 {
-    private List<InstallmentV3> installments;
-    private Status status;
+    private final List<InstallmentV3> installments;
+    private final Status status;
 
+    /**
+     * Calculates latestDpd and maxDpd as of the given date. Pure and safe to call concurrently.
+     */
     public Dpd calculateLatestDpd(LocalDate calculationDate) {
-        // Filter out grace period installments first
-        List<InstallmentV3> validInstallments = installments.stream()
-                .filter(installment -> !installment.isGracePeriod())
-                .collect(Collectors.toList());
-
-        // Update installments list to exclude grace periods
-        this.installments = validInstallments;
-
         if (status == Status.WRITE_OFF) {
             return calculateWrittenOffDpd(calculationDate);
         }
 
-        LocalDate earliestMaturityDate = installments.stream()
+        LocalDate earliestMaturityDate = nonGraceInstallments()
                 .map(InstallmentV3::getMaturityDate)
                 .filter(Objects::nonNull)
                 .min(LocalDate::compareTo)
@@ -39,11 +44,39 @@ public class InstallmentLoanV3 {
             return buildDpd(0, 0);
         }
 
-        int latestDpd = findLatestDpd(calculationDate, earliestMaturityDate);
+        int latestDpd = findLatestDpd(calculationDate);
         int maxDpd = calculateMaxDpd(calculationDate);
         return buildDpd(latestDpd, maxDpd);
     }
 
+    /**
+     * latestDpd and maxDpd for every day of {@code [from, to]}, the same as calling
+     * {@link #calculateLatestDpd(LocalDate)} for each day but in a single sweep over the installments.
+     */
+    public DpdHistory calculateDpdHistory(LocalDate from, LocalDate to) {
+        InstallmentRowBuffer rows = rows();
+        return DpdHistory.sweep(rows, 0, rows.size(), status == Status.WRITE_OFF, from, to);
+    }
+
+    /**
+     * Summary of the installments that answers {@link #calculateLatestDpd(LocalDate)} for any date
+     * without going over the installments again, see {@link DpdSummary}.
+     */
+    public DpdSummary calculateDpdSummary() {
+        InstallmentRowBuffer rows = rows();
+        return DpdSummary.of(rows, 0, rows.size(), status == Status.WRITE_OFF);
+    }
+
+    /**
+     * The installments as primitive rows ordered by period. DPD only tells grace periods apart by a
+     * zero amount, so amounts are loaded as their sign and any scale works.
+     */
+    private InstallmentRowBuffer rows() {
+        InstallmentRowBuffer rows = new InstallmentRowBuffer();
+        PrimitiveDpdCalculator.load(this, rows);
+        return rows;
+    }
+
     private Dpd calculateWrittenOffDpd(LocalDate calculationDate) {
         Optional<InstallmentV3> writtenOffInstallment = findWrittenOffInstallment();
         if (writtenOffInstallment.isEmpty() || writtenOffInstallment.get().getWrittenOfDate() == null) {
@@ -54,8 +87,13 @@ public class InstallmentLoanV3 {
         return buildDpd(dpd, dpd);
     }
 
-    private Optional<InstallmentV3> findWrittenOffInstallment() {
+    private Stream<InstallmentV3> nonGraceInstallments() {
         return installments.stream()
+                .filter(installment -> !installment.isGracePeriod());
+    }
+
+    private Optional<InstallmentV3> findWrittenOffInstallment() {
+        return nonGraceInstallments()
                 .filter(InstallmentV3::isWrittenOff)
                 .findFirst();
     }
@@ -67,138 +105,129 @@ public class InstallmentLoanV3 {
     }
 
     private LocalDate findLatestMaturityDateForNonGracePeriods(LocalDate defaultDate) {
-        return installments.stream()
+        return nonGraceInstallments()
                 .map(InstallmentV3::getMaturityDate)
                 .filter(Objects::nonNull)
                 .max(LocalDate::compareTo)
                 .orElse(defaultDate);
     }
 
-    private int findLatestDpd(LocalDate calculationDate, LocalDate earliestMaturityDate) {
-        InstallmentDpd latestPeriod = findLatestPeriodWithDpd(calculationDate, earliestMaturityDate);
+    private int findLatestDpd(LocalDate calculationDate) {
+        InstallmentDpd latestPeriod = findLatestPeriodWithDpd(calculationDate);
         return latestPeriod != null ? (int) latestPeriod.getDpd() : 0;
     }
 
-    private InstallmentDpd findLatestPeriodWithDpd(LocalDate calculationDate, LocalDate earliestMaturityDate) {
-        var res = installments.stream()
-                .collect(Collectors.groupingBy(InstallmentV3::getPeriod))
-                .values().stream()
-                .map(periodInstallments -> {
-                    Optional<InstallmentV3> paidInstallment = periodInstallments.stream()
-                            .filter(InstallmentV3::isFullyPaid)
-                            .findFirst();
-
-                    if (paidInstallment.isPresent()) {
-                        LocalDate repaymentDate = paidInstallment.get().getRepaymentDate();
-                        LocalDate maturityDate = paidInstallment.get().getMaturityDate();
-                        
-                        if (repaymentDate.isAfter(maturityDate)) {
-                            // For late payments, calculate DPD from maturity to repayment date
-                            return createInstallmentDpd(
-                                paidInstallment.get(),
-                                repaymentDate,
-                                earliestMaturityDate
-                            );
-                        }
-                        return null;
-                    }
-                    InstallmentV3 installment = periodInstallments.get(0);
-                    if (!installment.isFullyPaid()) {
-                        return createInstallmentDpd(
-                            installment,
-                            calculationDate,
-                            earliestMaturityDate
-                        );
-                    }
-                    
-                    return null;
-                })
-                .filter(Objects::nonNull)
-                .filter(dpd -> dpd.getDpd() > 0)  // Only consider periods with DPD > 0
-                .max((a, b) -> {
-                    // Get the installments for both periods
-                    InstallmentV3 installmentA = installments.stream()
-                            .filter(i -> i.getMaturityDate().equals(a.getMaturityDate()))
-                            .findFirst()
-                            .orElse(null);
-                    InstallmentV3 installmentB = installments.stream()
-                            .filter(i -> i.getMaturityDate().equals(b.getMaturityDate()))
-                            .findFirst()
-                            .orElse(null);
-                    
-                    if (installmentA != null && installmentB != null) {
-                        // If one is NOT_PAID and the other is PAID, prioritize NOT_PAID
-                        boolean isNotPaidA = !installmentA.isFullyPaid();
-                        boolean isNotPaidB = !installmentB.isFullyPaid();
-                        if (isNotPaidA && !isNotPaidB) return 1;
-                        if (!isNotPaidA && isNotPaidB) return -1;
-                        
-                        // If both are NOT_PAID, check if there are multiple NOT_PAID periods with DPD > 0
-                        if (isNotPaidA && isNotPaidB) {
-                            // Count how many NOT_PAID periods with DPD > 0
-                            long notPaidCount = installments.stream()
-                                    .filter(i -> !i.isFullyPaid())
-                                    .filter(i -> {
-                                        InstallmentDpd dpd = createInstallmentDpd(i, calculationDate, earliestMaturityDate);
-                                        return dpd != null && dpd.getDpd() > 0;
-                                    })
-                                    .count();
-                            
-                            // If there are multiple NOT_PAID periods with DPD > 0
-                            // Otherwise, return its DPD
-                            if (notPaidCount > 1) {
-                                return Long.compare(a.getDpd(), b.getDpd());
-                            } else {
-                                return 0;
-                            }
-                        }
-                        
-                        // If both are PAID, compare by maturity date
-                        return a.getMaturityDate().compareTo(b.getMaturityDate());
-                    }
-                    
-                    return 0;
-                })
-                .orElse(null);
-
-        return res;
-    }
-
-    private InstallmentDpd createInstallmentDpd(InstallmentV3 installment, LocalDate calculationDate, LocalDate earliestMaturityDate) {
+    /**
+     * Picks the period that drives latestDpd in one pass over the grouped periods.
+     * A period counts as not paid when its first installment is not PAID, and not-paid periods
+     * always win over paid ones. Among not-paid periods the highest DPD wins when more than one
+     * not-paid installment is overdue, otherwise the earliest period wins. Among paid periods the
+     * latest maturity date wins. Remaining ties go to the earlier period.
+     */
+    private InstallmentDpd findLatestPeriodWithDpd(LocalDate calculationDate) {
+        InstallmentDpd firstNotPaid = null;
+        InstallmentDpd highestNotPaid = null;
+        InstallmentDpd latestPaid = null;
+        long overdueNotPaidCount = 0;
+
+        for (PeriodInstallments periodInstallments : groupByPeriod(calculationDate).values()) {
+            overdueNotPaidCount += periodInstallments.getOverdueNotPaidCount();
+
+            InstallmentDpd candidate = createPeriodDpd(periodInstallments, calculationDate);
+            if (candidate == null || candidate.getDpd() <= 0) {
+                continue;
+            }
+
+            if (candidate.isPaid()) {
+                if (latestPaid == null || isLaterPaidPeriod(candidate, latestPaid)) {
+                    latestPaid = candidate;
+                }
+                continue;
+            }
+
+            if (firstNotPaid == null || candidate.getPeriod() < firstNotPaid.getPeriod()) {
+                firstNotPaid = candidate;
+            }
+            if (highestNotPaid == null || isHigherNotPaidPeriod(candidate, highestNotPaid)) {
+                highestNotPaid = candidate;
+            }
+        }
+
+        if (firstNotPaid != null) {
+            return overdueNotPaidCount > 1 ? highestNotPaid : firstNotPaid;
+        }
+        return latestPaid;
+    }
+
+    private boolean isHigherNotPaidPeriod(InstallmentDpd candidate, InstallmentDpd current) {
+        return candidate.getDpd() > current.getDpd()
+                || (candidate.getDpd() == current.getDpd() && candidate.getPeriod() < current.getPeriod());
+    }
+
+    private boolean isLaterPaidPeriod(InstallmentDpd candidate, InstallmentDpd current) {
+        int byMaturity = candidate.getMaturityDate().compareTo(current.getMaturityDate());
+        return byMaturity > 0 || (byMaturity == 0 && candidate.getPeriod() < current.getPeriod());
+    }
+
+    private InstallmentDpd createPeriodDpd(PeriodInstallments periodInstallments, LocalDate calculationDate) {
+        InstallmentV3 first = periodInstallments.getFirst();
+        boolean paid = first.isFullyPaid();
+        InstallmentV3 paidInstallment = periodInstallments.getFirstPaid();
+
+        if (paidInstallment != null) {
+            LocalDate repaymentDate = paidInstallment.getRepaymentDate();
+            LocalDate maturityDate = paidInstallment.getMaturityDate();
+            if (repaymentDate == null || !repaymentDate.isAfter(maturityDate)) {
+                return null;
+            }
+            // For late payments, calculate DPD from maturity to repayment date
+            return createInstallmentDpd(paidInstallment, repaymentDate, paid, periodInstallments.getPeriod());
+        }
+        return createInstallmentDpd(first, calculationDate, paid, periodInstallments.getPeriod());
+    }
+
+    private InstallmentDpd createInstallmentDpd(InstallmentV3 installment, LocalDate calculationDate, boolean paid, int period) {
         return new InstallmentDpd(
                 installment.calculateDpd(calculationDate),
-                installment.isFullyPaid(),
-                installment.getMaturityDate() != null ? installment.getMaturityDate() : earliestMaturityDate,
-                installment.getRepaymentDate(),
-                installment.isPartiallyPaid(),
-                false,
-                null
+                paid,
+                installment.getMaturityDate(),
+                period
         );
     }
 
+    /**
+     * Groups the non-grace installments by period in a single pass, keeping the first installment,
+     * the first fully paid installment and the number of overdue not-paid installments of each period.
+     */
+    private Map<Integer, PeriodInstallments> groupByPeriod(LocalDate calculationDate) {
+        Map<Integer, PeriodInstallments> periods = new HashMap<>();
+        for (InstallmentV3 installment : installments) {
+            if (installment.isGracePeriod()) {
+                continue;
+            }
+            PeriodInstallments periodInstallments = periods.get(installment.getPeriod());
+            if (periodInstallments == null) {
+                periodInstallments = new PeriodInstallments(installment.getPeriod(), installment);
+                periods.put(installment.getPeriod(), periodInstallments);
+            }
+            periodInstallments.add(installment, calculationDate);
+        }
+        return periods;
+    }
+
     private int calculateMaxDpd(LocalDate calculationDate) {
-        return installments.stream()
-                .collect(Collectors.groupingBy(InstallmentV3::getPeriod))
-                .values().stream()
-                .map(periodInstallments -> calculatePeriodDpd(periodInstallments, calculationDate))
-                .filter(Objects::nonNull)
-                .mapToInt(dpd -> dpd.intValue())
+        return groupByPeriod(calculationDate).values().stream()
+                .mapToInt(periodInstallments -> calculatePeriodDpd(periodInstallments, calculationDate))
                 .max()
                 .orElse(0);
     }
 
-    private int calculatePeriodDpd(List<InstallmentV3> periodInstallments, LocalDate calculationDate) {
-        Optional<InstallmentV3> paidInstallment = findFullyPaidInstallment(periodInstallments);
-        if (paidInstallment.isPresent() && paidInstallment.get().getRepaymentDate() != null) {
-            return calculatePaidInstallmentDpd(periodInstallments.get(0), paidInstallment.get());
+    private int calculatePeriodDpd(PeriodInstallments periodInstallments, LocalDate calculationDate) {
+        InstallmentV3 paidInstallment = periodInstallments.getFirstPaid();
+        if (paidInstallment != null && paidInstallment.getRepaymentDate() != null) {
+            return calculatePaidInstallmentDpd(periodInstallments.getFirst(), paidInstallment);
         }
-        return (int) periodInstallments.get(0).calculateDpd(calculationDate);
-    }
-
-    private Optional<InstallmentV3> findFullyPaidInstallment(List<InstallmentV3> periodInstallments) {
-        return periodInstallments.stream()
-                .filter(InstallmentV3::isFullyPaid)
-                .findFirst();
+        return (int) periodInstallments.getFirst().calculateDpd(calculationDate);
     }
 
     private int calculatePaidInstallmentDpd(InstallmentV3 firstInstallment, InstallmentV3 paidInstallment) {
@@ -220,9 +249,29 @@ public class InstallmentLoanV3 {
         long dpd;
         boolean paid;
         LocalDate maturityDate;
-        LocalDate repaymentDate;
-        boolean partiallyPaid;
-        boolean writtenOff;
-        LocalDate writtenOfDate;
+        int period;
+    }
+
+    @Getter
+    private static class PeriodInstallments {
+        private final int period;
+        private final InstallmentV3 first;
+        private InstallmentV3 firstPaid;
+        private long overdueNotPaidCount;
+
+        PeriodInstallments(int period, InstallmentV3 first) {
+            this.period = period;
+            this.first = first;
+        }
+
+        void add(InstallmentV3 installment, LocalDate calculationDate) {
+            if (installment.isFullyPaid()) {
+                if (firstPaid == null) {
+                    firstPaid = installment;
+                }
+            } else if (installment.getMaturityDate() != null && installment.calculateDpd(calculationDate) > 0) {
+                overdueNotPaidCount++;
+            }
+        }
     }
 }
@@ -0,0 +1,14 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+
+/**
+ * {@link DpdCalculator} for {@link InstallmentLoanV3}, delegating to
+ * {@link InstallmentLoanV3#calculateLatestDpd(LocalDate)}.
+ */
+public class InstallmentLoanV3Calculator implements DpdCalculator<InstallmentLoanV3> {
+    @Override
+    public Dpd calculate(InstallmentLoanV3 loan, LocalDate calculationDate) {
+        return loan.calculateLatestDpd(calculationDate);
+    }
+}
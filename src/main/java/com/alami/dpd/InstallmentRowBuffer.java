@@ -0,0 +1,182 @@
+package com.alami.dpd;
+
+import java.util.Arrays;
+
+/**
+ * Growable, reusable primitive rows of one loan. Meant to be filled, calculated and cleared again
+ * for every loan by a single thread, so it stops allocating once it has grown to the longest schedule.
+ */
+final class InstallmentRowBuffer implements InstallmentRows {
+    private int size;
+    private int[] periods;
+    private int[] maturityDays;
+    private int[] repaymentDays;
+    private int[] writtenOffDays;
+    private long[] amounts;
+    private long[] paidAmounts;
+    private byte[] repaymentStatuses;
+
+    InstallmentRowBuffer() {
+        this(64);
+    }
+
+    private InstallmentRowBuffer(int capacity) {
+        periods = new int[capacity];
+        maturityDays = new int[capacity];
+        repaymentDays = new int[capacity];
+        writtenOffDays = new int[capacity];
+        amounts = new long[capacity];
+        paidAmounts = new long[capacity];
+        repaymentStatuses = new byte[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void add(int period, int maturityDay, int repaymentDay, int writtenOffDay,
+             long amount, long paidAmount, byte repaymentStatus) {
+        if (size == periods.length) {
+            grow();
+        }
+        periods[size] = period;
+        maturityDays[size] = maturityDay;
+        repaymentDays[size] = repaymentDay;
+        writtenOffDays[size] = writtenOffDay;
+        amounts[size] = amount;
+        paidAmounts[size] = paidAmount;
+        repaymentStatuses[size] = repaymentStatus;
+        size++;
+    }
+
+    /**
+     * A copy of the rows trimmed to their number, for keeping a loan's rows beyond one calculation.
+     */
+    InstallmentRowBuffer copy() {
+        InstallmentRowBuffer copy = new InstallmentRowBuffer(Math.max(size, 1));
+        System.arraycopy(periods, 0, copy.periods, 0, size);
+        System.arraycopy(maturityDays, 0, copy.maturityDays, 0, size);
+        System.arraycopy(repaymentDays, 0, copy.repaymentDays, 0, size);
+        System.arraycopy(writtenOffDays, 0, copy.writtenOffDays, 0, size);
+        System.arraycopy(amounts, 0, copy.amounts, 0, size);
+        System.arraycopy(paidAmounts, 0, copy.paidAmounts, 0, size);
+        System.arraycopy(repaymentStatuses, 0, copy.repaymentStatuses, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Records a repayment or write-off on an existing row.
+     */
+    void setRepayment(int row, byte repaymentStatus, int repaymentDay, int writtenOffDay, long paidAmount) {
+        repaymentStatuses[row] = repaymentStatus;
+        repaymentDays[row] = repaymentDay;
+        writtenOffDays[row] = writtenOffDay;
+        paidAmounts[row] = paidAmount;
+    }
+
+    /**
+     * Whether the rows are ordered by period, as {@link DpdKernel} requires.
+     */
+    boolean isSortedByPeriod() {
+        for (int row = 1; row < size; row++) {
+            if (periods[row - 1] > periods[row]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stable insertion sort by period, in place. Cheap for the nearly sorted schedules seen in practice.
+     */
+    void sortByPeriod() {
+        for (int row = 1; row < size; row++) {
+            int period = periods[row];
+            int target = row;
+            while (target > 0 && periods[target - 1] > period) {
+                target--;
+            }
+            if (target != row) {
+                rotate(target, row);
+            }
+        }
+    }
+
+    @Override
+    public int period(int row) {
+        return periods[row];
+    }
+
+    @Override
+    public int maturityDay(int row) {
+        return maturityDays[row];
+    }
+
+    @Override
+    public int repaymentDay(int row) {
+        return repaymentDays[row];
+    }
+
+    @Override
+    public int writtenOffDay(int row) {
+        return writtenOffDays[row];
+    }
+
+    @Override
+    public byte repaymentStatus(int row) {
+        return repaymentStatuses[row];
+    }
+
+    @Override
+    public long amount(int row) {
+        return amounts[row];
+    }
+
+    long paidAmount(int row) {
+        return paidAmounts[row];
+    }
+
+    /**
+     * Moves row {@code to} to position {@code from}, shifting the rows in between up by one.
+     */
+    private void rotate(int from, int to) {
+        int period = periods[to];
+        int maturityDay = maturityDays[to];
+        int repaymentDay = repaymentDays[to];
+        int writtenOffDay = writtenOffDays[to];
+        long amount = amounts[to];
+        long paidAmount = paidAmounts[to];
+        byte repaymentStatus = repaymentStatuses[to];
+        int length = to - from;
+        System.arraycopy(periods, from, periods, from + 1, length);
+        System.arraycopy(maturityDays, from, maturityDays, from + 1, length);
+        System.arraycopy(repaymentDays, from, repaymentDays, from + 1, length);
+        System.arraycopy(writtenOffDays, from, writtenOffDays, from + 1, length);
+        System.arraycopy(amounts, from, amounts, from + 1, length);
+        System.arraycopy(paidAmounts, from, paidAmounts, from + 1, length);
+        System.arraycopy(repaymentStatuses, from, repaymentStatuses, from + 1, length);
+        periods[from] = period;
+        maturityDays[from] = maturityDay;
+        repaymentDays[from] = repaymentDay;
+        writtenOffDays[from] = writtenOffDay;
+        amounts[from] = amount;
+        paidAmounts[from] = paidAmount;
+        repaymentStatuses[from] = repaymentStatus;
+    }
+
+    private void grow() {
+        int capacity = periods.length * 2;
+        periods = Arrays.copyOf(periods, capacity);
+        maturityDays = Arrays.copyOf(maturityDays, capacity);
+        repaymentDays = Arrays.copyOf(repaymentDays, capacity);
+        writtenOffDays = Arrays.copyOf(writtenOffDays, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        paidAmounts = Arrays.copyOf(paidAmounts, capacity);
+        repaymentStatuses = Arrays.copyOf(repaymentStatuses, capacity);
+    }
+}
@@ -0,0 +1,29 @@
+package com.alami.dpd;
+
+/**
+ * Primitive, row-indexed view of installment schedules that {@link DpdKernel} calculates on.
+ *
+ * <p>Dates are epoch days and amounts are minor units. A missing date is {@link #NO_DATE}, a missing
+ * amount {@link #NO_AMOUNT} and a missing status {@link #NO_STATUS}. The rows of one loan are
+ * contiguous and ordered by period, so that every period is one run of rows.
+ */
+interface InstallmentRows {
+    int NO_DATE = Integer.MIN_VALUE;
+    long NO_AMOUNT = Long.MIN_VALUE;
+    byte NO_STATUS = -1;
+
+    int period(int row);
+
+    int maturityDay(int row);
+
+    int repaymentDay(int row);
+
+    int writtenOffDay(int row);
+
+    /**
+     * {@link RepaymentStatus} ordinal.
+     */
+    byte repaymentStatus(int row);
+
+    long amount(int row);
+}
@@ -18,7 +18,7 @@ public class InstallmentV3 {
     private Integer period;
 
     public boolean isGracePeriod() {
-        return amount != null && BigDecimal.ZERO.compareTo(amount) == 0 && repaymentStatus == RepaymentStatus.GRACE_PERIOD;
+        return repaymentStatus == RepaymentStatus.GRACE_PERIOD && amount != null && amount.signum() == 0;
     }
 
     public boolean isFullyPaid() {
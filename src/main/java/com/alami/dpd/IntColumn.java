@@ -0,0 +1,375 @@
+package com.alami.dpd;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Immutable, compressed column of ints with random access, for {@link CompactSchedule}.
+ *
+ * <p>{@link #encode} picks the smallest of: an arithmetic sequence with exceptions, a monthly date
+ * sequence with exceptions (epoch days of {@code start.plusMonths(row * step)}), runs of equal values,
+ * and zigzag varint deltas with a checkpoint every {@value #CHECKPOINT_INTERVAL} values. Every
+ * encoding answers {@link #get(int)} without decoding the whole column. A random read of the delta
+ * encoding decodes up to {@value #CHECKPOINT_INTERVAL} - 1 varints, half that on average; sequential
+ * readers pass a {@link Cursor} to {@link #get(int, Cursor)} and decode one varint per row instead.
+ */
+abstract class IntColumn {
+    static final int CHECKPOINT_INTERVAL = 16;
+
+    abstract int get(int row);
+
+    /**
+     * Same as {@link #get(int)}, resuming from the cursor when it is at or before the row in the same
+     * checkpoint block. Encodings other than deltas ignore the cursor.
+     */
+    int get(int row, Cursor cursor) {
+        return get(row);
+    }
+
+    /**
+     * A cursor for sequential reads of this column, null when reads do not need one.
+     */
+    Cursor cursor() {
+        return null;
+    }
+
+    /**
+     * Approximate heap bytes of the encoded data, without object headers.
+     */
+    abstract int encodedBytes();
+
+    /**
+     * @param dates whether the values are epoch days, which makes the monthly encoding a candidate
+     */
+    static IntColumn encode(int[] values, boolean dates) {
+        IntColumn best = Runs.encode(values);
+        best = smaller(best, Arithmetic.encode(values));
+        if (dates) {
+            best = smaller(best, Monthly.encode(values));
+        }
+        return smaller(best, Deltas.encode(values));
+    }
+
+    private static IntColumn smaller(IntColumn best, IntColumn candidate) {
+        return candidate != null && candidate.encodedBytes() < best.encodedBytes() ? candidate : best;
+    }
+
+    /**
+     * The value occurring most often among the first {@code count} candidates, the first of them on ties.
+     */
+    static long mostFrequent(long[] candidates, int count) {
+        if (count <= 0) {
+            return 0;
+        }
+        Map<Long, Integer> frequencies = new HashMap<>();
+        long best = candidates[0];
+        int bestFrequency = 0;
+        for (int i = 0; i < count; i++) {
+            int frequency = frequencies.merge(candidates[i], 1, Integer::sum);
+            if (frequency > bestFrequency) {
+                best = candidates[i];
+                bestFrequency = frequency;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Last row a sequential reader decoded from a delta column, with its value and the byte offset of
+     * the next delta. Confined to the reader's thread.
+     */
+    static final class Cursor {
+        int row = -1;
+        int offset;
+        long value;
+
+        /**
+         * Row to resume decoding at for {@code row}, or -1 to start at its checkpoint.
+         */
+        int resumeRow(int row) {
+            return this.row <= row && this.row >= row - row % CHECKPOINT_INTERVAL ? this.row : -1;
+        }
+
+        void set(int row, int offset, long value) {
+            this.row = row;
+            this.offset = offset;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Values that follow a rule except at a few rows, whose actual values are kept sorted by row.
+     */
+    private abstract static class RuleWithExceptions extends IntColumn {
+        private final int[] exceptionRows;
+        private final int[] exceptionValues;
+
+        RuleWithExceptions(int[] values, IntUnaryOperator rule) {
+            int count = 0;
+            int[] rows = new int[values.length];
+            for (int row = 0; row < values.length; row++) {
+                if (rule.applyAsInt(row) != values[row]) {
+                    rows[count++] = row;
+                }
+            }
+            this.exceptionRows = Arrays.copyOf(rows, count);
+            this.exceptionValues = new int[count];
+            for (int i = 0; i < count; i++) {
+                exceptionValues[i] = values[exceptionRows[i]];
+            }
+        }
+
+        abstract int rule(int row);
+
+        @Override
+        final int get(int row) {
+            if (exceptionRows.length > 0) {
+                int exception = Arrays.binarySearch(exceptionRows, row);
+                if (exception >= 0) {
+                    return exceptionValues[exception];
+                }
+            }
+            return rule(row);
+        }
+
+        @Override
+        int encodedBytes() {
+            return 2 * Integer.BYTES * exceptionRows.length;
+        }
+    }
+
+    /**
+     * {@code base + row * step}, for periods and fixed-interval dates.
+     */
+    private static final class Arithmetic extends RuleWithExceptions {
+        private final int base;
+        private final int step;
+
+        private Arithmetic(int[] values, int base, int step) {
+            super(values, row -> base + row * step);
+            this.base = base;
+            this.step = step;
+        }
+
+        static Arithmetic encode(int[] values) {
+            long[] candidates = new long[values.length];
+            for (int row = 1; row < values.length; row++) {
+                candidates[row - 1] = (long) values[row] - values[row - 1];
+            }
+            long step = mostFrequent(candidates, values.length - 1);
+            if (step != (int) step) {
+                step = 0;
+            }
+            for (int row = 0; row < values.length; row++) {
+                candidates[row] = values[row] - row * step;
+            }
+            long base = mostFrequent(candidates, values.length);
+            return new Arithmetic(values, (int) base, (int) step);
+        }
+
+        @Override
+        int rule(int row) {
+            return base + row * step;
+        }
+
+        @Override
+        int encodedBytes() {
+            return super.encodedBytes() + 2 * Integer.BYTES;
+        }
+    }
+
+    /**
+     * Epoch days of {@code start.plusMonths(row * step)}: months counted from year 0 plus a day of
+     * month that is clamped to the length of each month, as {@link LocalDate#plusMonths} does.
+     */
+    private static final class Monthly extends RuleWithExceptions {
+        private final int startMonth;
+        private final int step;
+        private final int dayOfMonth;
+
+        private Monthly(int[] values, int startMonth, int step, int dayOfMonth) {
+            super(values, row -> epochDay(startMonth + row * step, dayOfMonth));
+            this.startMonth = startMonth;
+            this.step = step;
+            this.dayOfMonth = dayOfMonth;
+        }
+
+        static Monthly encode(int[] values) {
+            long[] months = new long[values.length];
+            long[] days = new long[values.length];
+            int dates = 0;
+            for (int value : values) {
+                if (value != InstallmentRows.NO_DATE) {
+                    LocalDate date = LocalDate.ofEpochDay(value);
+                    months[dates] = date.getYear() * 12L + date.getMonthValue() - 1;
+                    days[dates] = date.getDayOfMonth();
+                    dates++;
+                }
+            }
+            if (dates < 2) {
+                return null;
+            }
+            long dayOfMonth = mostFrequent(days, dates);
+            long[] candidates = new long[values.length];
+            for (int i = 1; i < dates; i++) {
+                candidates[i - 1] = months[i] - months[i - 1];
+            }
+            long step = mostFrequent(candidates, dates - 1);
+            int count = 0;
+            for (int row = 0; row < values.length; row++) {
+                if (values[row] != InstallmentRows.NO_DATE) {
+                    LocalDate date = LocalDate.ofEpochDay(values[row]);
+                    candidates[count++] = date.getYear() * 12L + date.getMonthValue() - 1 - row * step;
+                }
+            }
+            long startMonth = mostFrequent(candidates, count);
+            if (step <= 0 || startMonth != (int) startMonth || startMonth + values.length * step > Integer.MAX_VALUE) {
+                return null;
+            }
+            return new Monthly(values, (int) startMonth, (int) step, (int) dayOfMonth);
+        }
+
+        @Override
+        int rule(int row) {
+            return epochDay(startMonth + row * step, dayOfMonth);
+        }
+
+        private static int epochDay(int month, int dayOfMonth) {
+            int year = Math.floorDiv(month, 12);
+            int monthOfYear = Math.floorMod(month, 12) + 1;
+            return EpochDays.of(year, monthOfYear, Math.min(dayOfMonth, EpochDays.lengthOfMonth(year, monthOfYear)));
+        }
+
+        @Override
+        int encodedBytes() {
+            return super.encodedBytes() + 3 * Integer.BYTES;
+        }
+    }
+
+    /**
+     * Runs of equal values, for statuses such as a paid prefix followed by unpaid installments.
+     */
+    private static final class Runs extends IntColumn {
+        private final int[] runEnds;
+        private final int[] runValues;
+
+        private Runs(int[] runEnds, int[] runValues) {
+            this.runEnds = runEnds;
+            this.runValues = runValues;
+        }
+
+        static Runs encode(int[] values) {
+            int[] ends = new int[values.length];
+            int[] runValues = new int[values.length];
+            int runs = 0;
+            for (int row = 0; row < values.length; row++) {
+                if (runs == 0 || runValues[runs - 1] != values[row]) {
+                    runValues[runs++] = values[row];
+                }
+                ends[runs - 1] = row + 1;
+            }
+            return new Runs(Arrays.copyOf(ends, runs), Arrays.copyOf(runValues, runs));
+        }
+
+        @Override
+        int get(int row) {
+            int run = Arrays.binarySearch(runEnds, row + 1);
+            return runValues[run >= 0 ? run : -run - 1];
+        }
+
+        @Override
+        int encodedBytes() {
+            return 2 * Integer.BYTES * runEnds.length;
+        }
+    }
+
+    /**
+     * Zigzag varint deltas between consecutive values, with the value and byte offset of every
+     * {@value #CHECKPOINT_INTERVAL}-th row so that a lookup decodes at most that many deltas.
+     */
+    private static final class Deltas extends IntColumn {
+        private final byte[] deltas;
+        private final int[] checkpointValues;
+        private final int[] checkpointOffsets;
+
+        private Deltas(byte[] deltas, int[] checkpointValues, int[] checkpointOffsets) {
+            this.deltas = deltas;
+            this.checkpointValues = checkpointValues;
+            this.checkpointOffsets = checkpointOffsets;
+        }
+
+        static Deltas encode(int[] values) {
+            int checkpoints = (values.length + CHECKPOINT_INTERVAL - 1) / CHECKPOINT_INTERVAL;
+            int[] checkpointValues = new int[checkpoints];
+            int[] checkpointOffsets = new int[checkpoints];
+            ByteArrayOutputStream deltas = new ByteArrayOutputStream(values.length);
+            for (int row = 0; row < values.length; row++) {
+                if (row % CHECKPOINT_INTERVAL == 0) {
+                    checkpointValues[row / CHECKPOINT_INTERVAL] = values[row];
+                    checkpointOffsets[row / CHECKPOINT_INTERVAL] = deltas.size();
+                } else {
+                    long delta = (long) values[row] - values[row - 1];
+                    long zigzag = (delta << 1) ^ (delta >> 63);
+                    while ((zigzag & ~0x7FL) != 0) {
+                        deltas.write((int) (zigzag & 0x7F) | 0x80);
+                        zigzag >>>= 7;
+                    }
+                    deltas.write((int) zigzag);
+                }
+            }
+            return new Deltas(deltas.toByteArray(), checkpointValues, checkpointOffsets);
+        }
+
+        @Override
+        int get(int row) {
+            return get(row, null);
+        }
+
+        @Override
+        int get(int row, Cursor cursor) {
+            int resumeRow = cursor == null ? -1 : cursor.resumeRow(row);
+            int from;
+            long value;
+            int offset;
+            if (resumeRow >= 0) {
+                from = resumeRow;
+                value = cursor.value;
+                offset = cursor.offset;
+            } else {
+                int checkpoint = row / CHECKPOINT_INTERVAL;
+                from = checkpoint * CHECKPOINT_INTERVAL;
+                value = checkpointValues[checkpoint];
+                offset = checkpointOffsets[checkpoint];
+            }
+            for (int i = from; i < row; i++) {
+                long zigzag = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = deltas[offset++];
+                    zigzag |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                value += (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            if (cursor != null) {
+                cursor.set(row, offset, value);
+            }
+            return (int) value;
+        }
+
+        @Override
+        Cursor cursor() {
+            return new Cursor();
+        }
+
+        @Override
+        int encodedBytes() {
+            return deltas.length + 2 * Integer.BYTES * checkpointValues.length;
+        }
+    }
+}
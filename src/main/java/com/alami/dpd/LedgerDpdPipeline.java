@@ -0,0 +1,416 @@
+package com.alami.dpd;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Value;
+
+/**
+ * Streams a flat installment ledger into {@code loanId,latestDpd,maxDpd} rows.
+ *
+ * <p>The ledger has one installment per line, sorted by loan id and then by period, with the columns
+ * <pre>
+ * loan_id, loan_status, period, maturity_date, amount, paid_amount, repayment_status, repayment_date, written_off_date
+ * </pre>
+ * separated by the configured delimiter (comma or tab). Statuses are {@link Status} and
+ * {@link RepaymentStatus} names, dates are {@code yyyy-MM-dd}, amounts are plain decimals with at most
+ * {@code scale} fraction digits, and an empty field is null. Loan ids must ascend either byte by byte
+ * or shorter first, the way numeric ids sort; an id that comes back after another loan's rows is
+ * rejected rather than split into two results.
+ *
+ * <p>Input is read through fixed-size NIO buffers and parsed in place; only the rows of the current
+ * loan are kept, in a reused primitive buffer, so memory stays bounded by the buffer size and the
+ * longest schedule. Each loan is calculated with {@link DpdKernel} as soon as its last row is read.
+ * Malformed lines raise an {@link IllegalArgumentException} naming the line number.
+ */
+@Getter
+@Builder
+public class LedgerDpdPipeline {
+    private static final int FIELDS = 9;
+    /**
+     * Longest result line after the loan id: two commas, two ints of up to 11 characters and a newline.
+     */
+    private static final int RESULT_SUFFIX_BYTES = 25;
+    private static final byte[][] STATUS_NAMES = names(Status.values());
+    private static final byte[][] REPAYMENT_STATUS_NAMES = names(RepaymentStatus.values());
+
+    private final LocalDate calculationDate;
+    @Builder.Default
+    private final char delimiter = ',';
+    @Builder.Default
+    private final boolean header = true;
+    @Builder.Default
+    private final int scale = ColumnarSchedule.DEFAULT_SCALE;
+    @Builder.Default
+    private final int bufferSize = 1 << 20;
+    /**
+     * When set, NOT_PAID and PARTIAL_REPAYMENT rows whose paid amount is at least their amount minus
+     * this tolerance count as PAID, on their maturity date when they have no repayment date.
+     */
+    private final BigDecimal paidTolerance;
+
+    public Summary run(Path ledger, Path output) throws IOException {
+        try (FileChannel in = FileChannel.open(ledger, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            return run(in, out);
+        }
+    }
+
+    /**
+     * Reads the whole ledger from {@code in} and writes one result line per loan to {@code out}.
+     * Neither channel is closed.
+     */
+    public Summary run(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        return new Run(out).run(in);
+    }
+
+    /**
+     * Counts of one pipeline run.
+     */
+    @Value
+    public static class Summary {
+        long rows;
+        long loans;
+    }
+
+    /**
+     * State of one run: the read and write buffers and the rows of the current loan.
+     */
+    private class Run {
+        private final WritableByteChannel out;
+        private final byte[] input = new byte[bufferSize];
+        private ByteBuffer output = ByteBuffer.allocate(Math.max(bufferSize / 4, 256));
+        private final int[] fieldStarts = new int[FIELDS];
+        private final int[] fieldEnds = new int[FIELDS];
+        private final int calculationDay = (int) calculationDate.toEpochDay();
+        private final InstallmentRowBuffer rows = new InstallmentRowBuffer();
+        private final DpdTrend scratch = new DpdTrend();
+        private final long paidToleranceUnits = paidTolerance == null ? -1 : MinorUnits.of(paidTolerance, scale);
+
+        private byte[] loanId = new byte[64];
+        private int loanIdLength = -1;
+        private int previousIdLength = -1;
+        private boolean byteOrder = true;
+        private boolean shorterFirstOrder = true;
+        private boolean writtenOffLoan;
+        private long lineNumber;
+        private long rowCount;
+        private long loanCount;
+
+        Run(WritableByteChannel out) {
+            this.out = out;
+        }
+
+        Summary run(ReadableByteChannel in) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(input);
+            int pending = 0;
+            boolean eof = false;
+            while (!eof) {
+                buffer.limit(input.length).position(pending);
+                while (buffer.hasRemaining()) {
+                    if (in.read(buffer) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                int length = buffer.position();
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (input[i] == '\n') {
+                        line(lineStart, i);
+                        lineStart = i + 1;
+                    }
+                }
+                if (eof && lineStart < length) {
+                    line(lineStart, length);
+                    lineStart = length;
+                }
+                pending = length - lineStart;
+                if (pending == input.length) {
+                    throw new IllegalArgumentException("line " + (lineNumber + 1) + " is longer than the buffer of " + input.length + " bytes");
+                }
+                System.arraycopy(input, lineStart, input, 0, pending);
+            }
+            flushLoan();
+            output.flip();
+            while (output.hasRemaining()) {
+                out.write(output);
+            }
+            return new Summary(rowCount, loanCount);
+        }
+
+        private void line(int start, int end) throws IOException {
+            lineNumber++;
+            if (end > start && input[end - 1] == '\r') {
+                end--;
+            }
+            if ((lineNumber == 1 && header) || end == start) {
+                return;
+            }
+            split(start, end);
+
+            int idStart = fieldStarts[0];
+            int idLength = fieldEnds[0] - idStart;
+            if (!isCurrentLoan(idStart, idLength)) {
+                flushLoan();
+                startLoan(idStart, idLength);
+            }
+
+            int period = parseInt(2);
+            if (rows.size() > 0 && rows.period(rows.size() - 1) > period) {
+                throw malformed("rows of a loan must be ordered by period");
+            }
+            int maturityDay = parseDate(3);
+            int repaymentDay = parseDate(7);
+            long amount = parseAmount(4);
+            long paidAmount = parseAmount(5);
+            byte recordedStatus = parseStatus(6, REPAYMENT_STATUS_NAMES);
+            byte repaymentStatus = MinorUnits.repaymentStatus(recordedStatus, amount, paidAmount, paidToleranceUnits);
+            if (repaymentStatus != recordedStatus) {
+                repaymentDay = MinorUnits.promotedRepaymentDay(repaymentDay, maturityDay);
+            }
+            rows.add(period, maturityDay, repaymentDay, parseDate(8), amount, paidAmount, repaymentStatus);
+            rowCount++;
+        }
+
+        private void split(int start, int end) {
+            int field = 0;
+            fieldStarts[0] = start;
+            for (int i = start; i < end; i++) {
+                if (input[i] == delimiter) {
+                    if (field == FIELDS - 1) {
+                        throw malformed("expected " + FIELDS + " fields");
+                    }
+                    fieldEnds[field++] = i;
+                    fieldStarts[field] = i + 1;
+                }
+            }
+            if (field != FIELDS - 1) {
+                throw malformed("expected " + FIELDS + " fields");
+            }
+            fieldEnds[field] = end;
+        }
+
+        private boolean isCurrentLoan(int idStart, int idLength) {
+            if (idLength != loanIdLength) {
+                return false;
+            }
+            for (int i = 0; i < idLength; i++) {
+                if (input[idStart + i] != loanId[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void startLoan(int idStart, int idLength) {
+            if (idLength == 0) {
+                throw malformed("loan id is empty");
+            }
+            checkIdOrder(idStart, idLength);
+            if (idLength > loanId.length) {
+                loanId = new byte[Math.max(idLength, loanId.length * 2)];
+            }
+            System.arraycopy(input, idStart, loanId, 0, idLength);
+            loanIdLength = idLength;
+            writtenOffLoan = parseStatus(1, STATUS_NAMES) == Status.WRITE_OFF.ordinal();
+            rows.clear();
+        }
+
+        /**
+         * Compares the new id with the previous loan's, still in {@link #loanId}, and fails once the ids
+         * ascend in neither byte order nor shorter-first order, so a loan whose rows are not contiguous is
+         * caught without remembering every id.
+         */
+        private void checkIdOrder(int idStart, int idLength) {
+            if (previousIdLength >= 0) {
+                int common = Math.min(idLength, previousIdLength);
+                int byteComparison = Integer.compare(idLength, previousIdLength);
+                for (int i = 0; i < common; i++) {
+                    if (input[idStart + i] != loanId[i]) {
+                        byteComparison = Integer.compare(input[idStart + i] & 0xFF, loanId[i] & 0xFF);
+                        break;
+                    }
+                }
+                int shorterFirstComparison = idLength != previousIdLength
+                        ? Integer.compare(idLength, previousIdLength)
+                        : byteComparison;
+                byteOrder &= byteComparison > 0;
+                shorterFirstOrder &= shorterFirstComparison > 0;
+                if (!byteOrder && !shorterFirstOrder) {
+                    throw malformed("loan id " + new String(input, idStart, idLength, StandardCharsets.US_ASCII)
+                            + " is out of order, rows must be grouped and sorted by loan id");
+                }
+            }
+            previousIdLength = idLength;
+        }
+
+        private void flushLoan() throws IOException {
+            if (loanIdLength < 0) {
+                return;
+            }
+            long dpd = DpdKernel.calculate(rows, 0, rows.size(), writtenOffLoan, calculationDay, scratch);
+            int resultBytes = loanIdLength + RESULT_SUFFIX_BYTES;
+            if (output.remaining() < resultBytes) {
+                output.flip();
+                while (output.hasRemaining()) {
+                    out.write(output);
+                }
+                output.clear();
+                if (output.capacity() < resultBytes) {
+                    output = ByteBuffer.allocate(Math.max(resultBytes, output.capacity() * 2));
+                }
+            }
+            output.put(loanId, 0, loanIdLength);
+            output.put((byte) ',');
+            putInt(DpdKernel.latestDpd(dpd));
+            output.put((byte) ',');
+            putInt(DpdKernel.maxDpd(dpd));
+            output.put((byte) '\n');
+            loanCount++;
+            loanIdLength = -1;
+        }
+
+        private void putInt(int value) {
+            long v = value;
+            if (v < 0) {
+                output.put((byte) '-');
+                v = -v;
+            }
+            long divisor = 1;
+            while (divisor * 10 <= v) {
+                divisor *= 10;
+            }
+            for (; divisor > 0; divisor /= 10) {
+                output.put((byte) ('0' + v / divisor % 10));
+            }
+        }
+
+        private int parseInt(int field) {
+            int start = fieldStarts[field];
+            int end = fieldEnds[field];
+            if (start == end) {
+                throw malformed("field " + (field + 1) + " must not be empty");
+            }
+            boolean negative = input[start] == '-';
+            if (negative && end - start == 1) {
+                throw malformed("field " + (field + 1) + " is not a number");
+            }
+            long value = 0;
+            for (int i = negative ? start + 1 : start; i < end; i++) {
+                value = value * 10 + digit(i, field);
+                if (value > Integer.MAX_VALUE) {
+                    throw malformed("field " + (field + 1) + " is out of range");
+                }
+            }
+            return (int) (negative ? -value : value);
+        }
+
+        private int parseDate(int field) {
+            int start = fieldStarts[field];
+            int end = fieldEnds[field];
+            if (start == end) {
+                return InstallmentRows.NO_DATE;
+            }
+            if (end - start != 10 || input[start + 4] != '-' || input[start + 7] != '-') {
+                throw malformed("field " + (field + 1) + " is not a yyyy-MM-dd date");
+            }
+            int year = digit(start, field) * 1000 + digit(start + 1, field) * 100
+                    + digit(start + 2, field) * 10 + digit(start + 3, field);
+            int month = digit(start + 5, field) * 10 + digit(start + 6, field);
+            int day = digit(start + 8, field) * 10 + digit(start + 9, field);
+            if (!EpochDays.isValid(year, month, day)) {
+                throw malformed("field " + (field + 1) + " is not a valid date");
+            }
+            return EpochDays.of(year, month, day);
+        }
+
+        /**
+         * Parses a plain decimal into minor units of the configured scale, exactly.
+         */
+        private long parseAmount(int field) {
+            int start = fieldStarts[field];
+            int end = fieldEnds[field];
+            if (start == end) {
+                return InstallmentRows.NO_AMOUNT;
+            }
+            boolean negative = input[start] == '-';
+            long value = 0;
+            int digits = 0;
+            int fractionDigits = -1;
+            for (int i = negative ? start + 1 : start; i < end; i++) {
+                if (input[i] == '.' && fractionDigits < 0) {
+                    fractionDigits = 0;
+                    continue;
+                }
+                if (fractionDigits >= 0 && ++fractionDigits > scale) {
+                    throw malformed("field " + (field + 1) + " has more than " + scale + " decimals");
+                }
+                value = Math.addExact(Math.multiplyExact(value, 10), digit(i, field));
+                digits++;
+            }
+            if (digits == 0) {
+                throw malformed("field " + (field + 1) + " is not a number");
+            }
+            for (int i = Math.max(fractionDigits, 0); i < scale; i++) {
+                value = Math.multiplyExact(value, 10);
+            }
+            return negative ? -value : value;
+        }
+
+        private byte parseStatus(int field, byte[][] names) {
+            int start = fieldStarts[field];
+            int length = fieldEnds[field] - start;
+            if (length == 0) {
+                return InstallmentRows.NO_STATUS;
+            }
+            for (int ordinal = 0; ordinal < names.length; ordinal++) {
+                byte[] name = names[ordinal];
+                if (name.length == length && matches(start, name)) {
+                    return (byte) ordinal;
+                }
+            }
+            throw malformed("field " + (field + 1) + " is not a known status");
+        }
+
+        private boolean matches(int start, byte[] name) {
+            for (int i = 0; i < name.length; i++) {
+                if (input[start + i] != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int digit(int index, int field) {
+            int digit = input[index] - '0';
+            if (digit < 0 || digit > 9) {
+                throw malformed("field " + (field + 1) + " is not a number");
+            }
+            return digit;
+        }
+
+        private IllegalArgumentException malformed(String reason) {
+            return new IllegalArgumentException("line " + lineNumber + ": " + reason);
+        }
+    }
+
+    private static byte[][] names(Enum<?>[] values) {
+        byte[][] names = new byte[values.length][];
+        for (Enum<?> value : values) {
+            names[value.ordinal()] = value.name().getBytes(StandardCharsets.US_ASCII);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,378 @@
+package com.alami.dpd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fixed-layout binary snapshot of loan schedules, read in place from a memory-mapped file.
+ *
+ * <p>The file is little-endian and made of
+ * <ul>
+ *     <li>a 32-byte header: magic {@code DPDS}, version, scale, loan count, row count;</li>
+ *     <li>the loan index, one 24-byte entry per loan ordered by loan id: loan id (long), first row (int),
+ *     row count (int), {@link Product} ordinal (byte), {@link Status} ordinal (byte) and padding;</li>
+ *     <li>the rows column by column: amounts and paid amounts (long minor units), then periods, maturity,
+ *     repayment and written-off epoch days (int), then {@link RepaymentStatus} ordinals (byte).</li>
+ * </ul>
+ * Missing values use the markers of {@link InstallmentRows}. A lumpsum loan is one row and a partial
+ * lumpsum loan one row per tranche; their {@code today} is not stored since the calculation date is
+ * always passed in.
+ *
+ * <p>Nothing is deserialized: every accessor reads the mapped buffer with an absolute get, and
+ * {@link DpdKernel} calculates directly on it. Instances are immutable and can be shared between
+ * threads. One snapshot is one mapping and therefore at most 2 GiB; split larger portfolios.
+ */
+public final class LoanSnapshot implements InstallmentRows {
+    static final int MAGIC = 'D' | 'P' << 8 | 'D' << 16 | 'S' << 24;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int INDEX_ENTRY_BYTES = 24;
+
+    private final ByteBuffer buffer;
+    private final int scale;
+    private final int loanCount;
+    private final int rowCount;
+    private final int amountsOffset;
+    private final int paidAmountsOffset;
+    private final int periodsOffset;
+    private final int maturityDaysOffset;
+    private final int repaymentDaysOffset;
+    private final int writtenOffDaysOffset;
+    private final int repaymentStatusesOffset;
+
+    private LoanSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("not a loan snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("unsupported loan snapshot version " + buffer.getInt(4));
+        }
+        this.scale = buffer.getInt(8);
+        this.loanCount = buffer.getInt(12);
+        this.rowCount = buffer.getInt(16);
+        this.amountsOffset = HEADER_BYTES + loanCount * INDEX_ENTRY_BYTES;
+        this.paidAmountsOffset = amountsOffset + rowCount * Long.BYTES;
+        this.periodsOffset = paidAmountsOffset + rowCount * Long.BYTES;
+        this.maturityDaysOffset = periodsOffset + rowCount * Integer.BYTES;
+        this.repaymentDaysOffset = maturityDaysOffset + rowCount * Integer.BYTES;
+        this.writtenOffDaysOffset = repaymentDaysOffset + rowCount * Integer.BYTES;
+        this.repaymentStatusesOffset = writtenOffDaysOffset + rowCount * Integer.BYTES;
+        if (buffer.capacity() != (long) repaymentStatusesOffset + rowCount) {
+            throw new IllegalArgumentException("truncated loan snapshot");
+        }
+    }
+
+    /**
+     * Maps the snapshot file read-only. The mapping outlives the channel, which is closed right away.
+     */
+    public static LoanSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads a snapshot held in any buffer, for instance one that was received over the network.
+     */
+    public static LoanSnapshot wrap(ByteBuffer buffer) {
+        return new LoanSnapshot(buffer.duplicate().clear());
+    }
+
+    public static Writer writer() {
+        return writer(ColumnarSchedule.DEFAULT_SCALE);
+    }
+
+    public static Writer writer(int scale) {
+        return new Writer(scale);
+    }
+
+    public int loanCount() {
+        return loanCount;
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public int scale() {
+        return scale;
+    }
+
+    /**
+     * Position of the loan in the index, or -1 when the snapshot does not hold it.
+     */
+    public int indexOf(long loanId) {
+        int low = 0;
+        int high = loanCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long id = loanId(middle);
+            if (id < loanId) {
+                low = middle + 1;
+            } else if (id > loanId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public long loanId(int loan) {
+        return buffer.getLong(indexEntry(loan));
+    }
+
+    /**
+     * First row of the loan; its rows are {@code [firstRow(loan), firstRow(loan) + rowCount(loan))}.
+     */
+    public int firstRow(int loan) {
+        return buffer.getInt(indexEntry(loan) + 8);
+    }
+
+    public int rowCount(int loan) {
+        return buffer.getInt(indexEntry(loan) + 12);
+    }
+
+    public Product product(int loan) {
+        return Product.values()[buffer.get(indexEntry(loan) + 16)];
+    }
+
+    public Status status(int loan) {
+        byte status = buffer.get(indexEntry(loan) + 17);
+        return status == NO_STATUS ? null : Status.values()[status];
+    }
+
+    public Dpd calculateLatestDpd(int loan, LocalDate calculationDate) {
+        return DpdKernel.toDpd(calculate(loan, (int) calculationDate.toEpochDay(), new DpdTrend()));
+    }
+
+    /**
+     * Calculates every loan as of the given date into the caller's arrays, indexed by loan.
+     */
+    public void calculateAll(LocalDate calculationDate, int[] latestDpd, int[] maxDpd) {
+        int calculationDay = (int) calculationDate.toEpochDay();
+        DpdTrend scratch = new DpdTrend();
+        for (int loan = 0; loan < loanCount; loan++) {
+            long dpd = calculate(loan, calculationDay, scratch);
+            latestDpd[loan] = DpdKernel.latestDpd(dpd);
+            maxDpd[loan] = DpdKernel.maxDpd(dpd);
+        }
+    }
+
+    long calculate(int loan, int calculationDay, DpdTrend scratch) {
+        int entry = indexEntry(loan);
+        int from = buffer.getInt(entry + 8);
+        int to = from + buffer.getInt(entry + 12);
+        byte status = buffer.get(entry + 17);
+        return switch (Product.values()[buffer.get(entry + 16)]) {
+            case INSTALLMENT -> DpdKernel.calculate(this, from, to, status == Status.WRITE_OFF.ordinal(), calculationDay, scratch);
+            case LUMPSUM -> status != NO_STATUS && Lumpsum.PAID_STATUSES.contains(Status.values()[status])
+                    ? DpdKernel.pack(0, 0)
+                    : lumpsumDpd(from, calculationDay);
+            case PARTIAL_LUMPSUM -> lumpsumDpd(latestPeriodRow(from, to), calculationDay);
+        };
+    }
+
+    private long lumpsumDpd(int row, int calculationDay) {
+        int maturityDay = maturityDay(row);
+        int dpd = maturityDay == NO_DATE ? 0 : Lumpsum.dpd(maturityDay, calculationDay);
+        return DpdKernel.pack(dpd, dpd);
+    }
+
+    /**
+     * First row of the highest period, the tranche {@link PartialLumpsum} calculates on.
+     */
+    private int latestPeriodRow(int from, int to) {
+        int latest = from;
+        for (int row = from + 1; row < to; row++) {
+            if (period(row) > period(latest)) {
+                latest = row;
+            }
+        }
+        return latest;
+    }
+
+    @Override
+    public int period(int row) {
+        return buffer.getInt(periodsOffset + row * Integer.BYTES);
+    }
+
+    @Override
+    public int maturityDay(int row) {
+        return buffer.getInt(maturityDaysOffset + row * Integer.BYTES);
+    }
+
+    @Override
+    public int repaymentDay(int row) {
+        return buffer.getInt(repaymentDaysOffset + row * Integer.BYTES);
+    }
+
+    @Override
+    public int writtenOffDay(int row) {
+        return buffer.getInt(writtenOffDaysOffset + row * Integer.BYTES);
+    }
+
+    @Override
+    public byte repaymentStatus(int row) {
+        return buffer.get(repaymentStatusesOffset + row);
+    }
+
+    @Override
+    public long amount(int row) {
+        return buffer.getLong(amountsOffset + row * Long.BYTES);
+    }
+
+    public long paidAmount(int row) {
+        return buffer.getLong(paidAmountsOffset + row * Long.BYTES);
+    }
+
+    private int indexEntry(int loan) {
+        return HEADER_BYTES + loan * INDEX_ENTRY_BYTES;
+    }
+
+    /**
+     * Collects loans with their ids and writes them as one snapshot file. Rows are converted with a
+     * {@link ColumnarSchedule.Builder}, so the same period ordering and exact-scale rules apply.
+     * Not thread-safe.
+     */
+    public static final class Writer {
+        private final ColumnarSchedule.Builder rows;
+        private long[] loanIds = new long[16];
+        private byte[] products = new byte[16];
+        private int loanCount;
+
+        private Writer(int scale) {
+            this.rows = ColumnarSchedule.builder(scale);
+        }
+
+        public Writer add(long loanId, InstallmentLoanV3 loan) {
+            rows.add(loan);
+            return added(loanId, Product.INSTALLMENT);
+        }
+
+        public Writer add(long loanId, LumpsumLoan loan) {
+            rows.add(List.of(InstallmentV3.builder()
+                    .period(1)
+                    .maturityDate(loan.getMaturityDate())
+                    .repaymentDate(loan.getRepaymentDate())
+                    .repaymentStatus(loan.getRepaymentStatus())
+                    .build()), loan.getStatus());
+            return added(loanId, Product.LUMPSUM);
+        }
+
+        /**
+         * @throws IllegalArgumentException when there are no tranches, which {@link PartialLumpsum} cannot calculate
+         */
+        public Writer addPartialLumpsum(long loanId, List<PartialLumpsumLoan> tranches) {
+            if (tranches.isEmpty()) {
+                throw new IllegalArgumentException("partial lumpsum loan " + loanId + " has no tranches");
+            }
+            InstallmentV3[] installments = new InstallmentV3[tranches.size()];
+            for (int i = 0; i < installments.length; i++) {
+                PartialLumpsumLoan tranche = tranches.get(i);
+                installments[i] = InstallmentV3.builder()
+                        .period(tranche.getPeriod())
+                        .amount(tranche.getAmount())
+                        .paidAmount(tranche.getBenefPaymentAmount())
+                        .maturityDate(tranche.getMaturityDate())
+                        .repaymentDate(tranche.getRepaymentDate())
+                        .repaymentStatus(tranche.getStatus())
+                        .build();
+            }
+            rows.add(Arrays.asList(installments), null);
+            return added(loanId, Product.PARTIAL_LUMPSUM);
+        }
+
+        /**
+         * Writes the snapshot, replacing the file. Loans are stored in loan id order; a loan id that was
+         * added twice is rejected with an {@link IllegalArgumentException}.
+         */
+        public void write(Path file) throws IOException {
+            ColumnarSchedule schedule = rows.build();
+            int[] order = PrimitiveSort.order(loanIds, loanCount);
+            int rowCount = schedule.rowCount();
+            long size = HEADER_BYTES + (long) loanCount * INDEX_ENTRY_BYTES
+                    + (long) rowCount * (2 * Long.BYTES + 4 * Integer.BYTES + 1);
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("snapshot of " + size + " bytes does not fit one mapping");
+            }
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(schedule.scale()).putInt(loanCount).putInt(rowCount);
+                buffer.position(HEADER_BYTES);
+
+                int firstRow = 0;
+                for (int loan : order) {
+                    int loanRows = schedule.firstRow(loan + 1) - schedule.firstRow(loan);
+                    Status status = schedule.status(loan);
+                    buffer.putLong(loanIds[loan])
+                            .putInt(firstRow)
+                            .putInt(loanRows)
+                            .put(products[loan])
+                            .put(status == null ? NO_STATUS : (byte) status.ordinal())
+                            .position(buffer.position() + 6);
+                    firstRow += loanRows;
+                }
+                for (int loan : order) {
+                    for (int row = schedule.firstRow(loan); row < schedule.firstRow(loan + 1); row++) {
+                        buffer.putLong(schedule.amount(row));
+                    }
+                }
+                for (int loan : order) {
+                    for (int row = schedule.firstRow(loan); row < schedule.firstRow(loan + 1); row++) {
+                        buffer.putLong(schedule.paidAmount(row));
+                    }
+                }
+                for (int loan : order) {
+                    for (int row = schedule.firstRow(loan); row < schedule.firstRow(loan + 1); row++) {
+                        buffer.putInt(schedule.period(row));
+                    }
+                }
+                for (int loan : order) {
+                    for (int row = schedule.firstRow(loan); row < schedule.firstRow(loan + 1); row++) {
+                        buffer.putInt(schedule.maturityDay(row));
+                    }
+                }
+                for (int loan : order) {
+                    for (int row = schedule.firstRow(loan); row < schedule.firstRow(loan + 1); row++) {
+                        buffer.putInt(schedule.repaymentDay(row));
+                    }
+                }
+                for (int loan : order) {
+                    for (int row = schedule.firstRow(loan); row < schedule.firstRow(loan + 1); row++) {
+                        buffer.putInt(schedule.writtenOffDay(row));
+                    }
+                }
+                for (int loan : order) {
+                    for (int row = schedule.firstRow(loan); row < schedule.firstRow(loan + 1); row++) {
+                        buffer.put(schedule.repaymentStatus(row));
+                    }
+                }
+                buffer.force();
+            }
+        }
+
+        private Writer added(long loanId, Product product) {
+            if (loanCount == loanIds.length) {
+                loanIds = Arrays.copyOf(loanIds, loanCount * 2);
+                products = Arrays.copyOf(products, loanCount * 2);
+            }
+            loanIds[loanCount] = loanId;
+            products[loanCount] = (byte) product.ordinal();
+            loanCount++;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.alami.dpd;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Immutable, compressed column of longs with random access, for the amounts of a {@link CompactSchedule}.
+ *
+ * <p>{@link #encode} picks the smaller of a constant with exceptions, which fits equal installments,
+ * and zigzag varint deltas with a checkpoint every {@value IntColumn#CHECKPOINT_INTERVAL} values.
+ * Sequential reads of the deltas take an {@link IntColumn.Cursor}, as for {@link IntColumn}.
+ */
+abstract class LongColumn {
+
+    abstract long get(int row);
+
+    /**
+     * Same as {@link #get(int)}, resuming from the cursor when it is at or before the row in the same
+     * checkpoint block. The constant encoding ignores the cursor.
+     */
+    long get(int row, IntColumn.Cursor cursor) {
+        return get(row);
+    }
+
+    /**
+     * A cursor for sequential reads of this column, null when reads do not need one.
+     */
+    IntColumn.Cursor cursor() {
+        return null;
+    }
+
+    /**
+     * Approximate heap bytes of the encoded data, without object headers.
+     */
+    abstract int encodedBytes();
+
+    static LongColumn encode(long[] values) {
+        LongColumn constant = Constant.encode(values);
+        LongColumn deltas = Deltas.encode(values);
+        return deltas.encodedBytes() < constant.encodedBytes() ? deltas : constant;
+    }
+
+    private static final class Constant extends LongColumn {
+        private final long value;
+        private final int[] exceptionRows;
+        private final long[] exceptionValues;
+
+        private Constant(long value, int[] exceptionRows, long[] exceptionValues) {
+            this.value = value;
+            this.exceptionRows = exceptionRows;
+            this.exceptionValues = exceptionValues;
+        }
+
+        static Constant encode(long[] values) {
+            long value = IntColumn.mostFrequent(values, values.length);
+            int[] rows = new int[values.length];
+            int count = 0;
+            for (int row = 0; row < values.length; row++) {
+                if (values[row] != value) {
+                    rows[count++] = row;
+                }
+            }
+            long[] exceptionValues = new long[count];
+            for (int i = 0; i < count; i++) {
+                exceptionValues[i] = values[rows[i]];
+            }
+            return new Constant(value, Arrays.copyOf(rows, count), exceptionValues);
+        }
+
+        @Override
+        long get(int row) {
+            if (exceptionRows.length > 0) {
+                int exception = Arrays.binarySearch(exceptionRows, row);
+                if (exception >= 0) {
+                    return exceptionValues[exception];
+                }
+            }
+            return value;
+        }
+
+        @Override
+        int encodedBytes() {
+            return Long.BYTES + (Integer.BYTES + Long.BYTES) * exceptionRows.length;
+        }
+    }
+
+    private static final class Deltas extends LongColumn {
+        private final byte[] deltas;
+        private final long[] checkpointValues;
+        private final int[] checkpointOffsets;
+
+        private Deltas(byte[] deltas, long[] checkpointValues, int[] checkpointOffsets) {
+            this.deltas = deltas;
+            this.checkpointValues = checkpointValues;
+            this.checkpointOffsets = checkpointOffsets;
+        }
+
+        static Deltas encode(long[] values) {
+            int checkpoints = (values.length + IntColumn.CHECKPOINT_INTERVAL - 1) / IntColumn.CHECKPOINT_INTERVAL;
+            long[] checkpointValues = new long[checkpoints];
+            int[] checkpointOffsets = new int[checkpoints];
+            ByteArrayOutputStream deltas = new ByteArrayOutputStream(values.length);
+            for (int row = 0; row < values.length; row++) {
+                if (row % IntColumn.CHECKPOINT_INTERVAL == 0) {
+                    checkpointValues[row / IntColumn.CHECKPOINT_INTERVAL] = values[row];
+                    checkpointOffsets[row / IntColumn.CHECKPOINT_INTERVAL] = deltas.size();
+                } else {
+                    // Wraps around for deltas beyond the long range, which decoding wraps back.
+                    long delta = values[row] - values[row - 1];
+                    long zigzag = (delta << 1) ^ (delta >> 63);
+                    while ((zigzag & ~0x7FL) != 0) {
+                        deltas.write((int) (zigzag & 0x7F) | 0x80);
+                        zigzag >>>= 7;
+                    }
+                    deltas.write((int) zigzag);
+                }
+            }
+            return new Deltas(deltas.toByteArray(), checkpointValues, checkpointOffsets);
+        }
+
+        @Override
+        long get(int row) {
+            return get(row, null);
+        }
+
+        @Override
+        long get(int row, IntColumn.Cursor cursor) {
+            int resumeRow = cursor == null ? -1 : cursor.resumeRow(row);
+            int from;
+            long value;
+            int offset;
+            if (resumeRow >= 0) {
+                from = resumeRow;
+                value = cursor.value;
+                offset = cursor.offset;
+            } else {
+                int checkpoint = row / IntColumn.CHECKPOINT_INTERVAL;
+                from = checkpoint * IntColumn.CHECKPOINT_INTERVAL;
+                value = checkpointValues[checkpoint];
+                offset = checkpointOffsets[checkpoint];
+            }
+            for (int i = from; i < row; i++) {
+                long zigzag = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = deltas[offset++];
+                    zigzag |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                value += (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            if (cursor != null) {
+                cursor.set(row, offset, value);
+            }
+            return value;
+        }
+
+        @Override
+        IntColumn.Cursor cursor() {
+            return new IntColumn.Cursor();
+        }
+
+        @Override
+        int encodedBytes() {
+            return deltas.length + (Long.BYTES + Integer.BYTES) * checkpointValues.length;
+        }
+    }
+}
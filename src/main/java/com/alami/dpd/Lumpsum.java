@@ -1,26 +1,60 @@
 package com.alami.dpd;
 
+import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 import lombok.AllArgsConstructor;
 
 @AllArgsConstructor
-public class Lumpsum {
+public class Lumpsum implements DpdCalculator<LumpsumLoan> {
+    static final Set<Status> PAID_STATUSES = EnumSet.of(
+            Status.READY_FOR_REPAYMENT,
+            Status.REPAYMENT_SUCCESS,
+            Status.READY_FOR_SETTLEMENT,
+            Status.SETTLEMENT_SUCCESS);
+
     public Dpd calculate(LumpsumLoan lumpsumLoan) {
+        return calculate(lumpsumLoan, lumpsumLoan.getToday());
+    }
+
+    /**
+     * Same as {@link #calculate(LumpsumLoan)} but as of the given date instead of the loan's today,
+     * so one loan can be evaluated at any date without being modified.
+     */
+    @Override
+    public Dpd calculate(LumpsumLoan lumpsumLoan, LocalDate today) {
         // If loan is paid, DPD is 0
-        if (lumpsumLoan.getStatus() == Status.READY_FOR_REPAYMENT || 
-            lumpsumLoan.getStatus() == Status.REPAYMENT_SUCCESS || 
-            lumpsumLoan.getStatus() == Status.READY_FOR_SETTLEMENT || 
-            lumpsumLoan.getStatus() == Status.SETTLEMENT_SUCCESS) {
+        if (PAID_STATUSES.contains(lumpsumLoan.getStatus())) {
             return new Dpd(0, 0);
         }
 
         // For unpaid loans, calculate DPD based on today
-        Integer dpd = (int) ChronoUnit.DAYS.between(lumpsumLoan.getMaturityDate(), lumpsumLoan.getToday());
+        Integer dpd = (int) ChronoUnit.DAYS.between(lumpsumLoan.getMaturityDate(), today);
         if (dpd < 0) {
             dpd = 0;
         }
 
         return new Dpd(dpd, dpd);
     }
+
+    /**
+     * Converts the calculation date to an epoch day once for the whole batch.
+     */
+    @Override
+    public void calculateAll(List<? extends LumpsumLoan> lumpsumLoans, LocalDate today, DpdSink<? super LumpsumLoan> sink) {
+        long todayEpochDay = today.toEpochDay();
+        for (LumpsumLoan lumpsumLoan : lumpsumLoans) {
+            int dpd = PAID_STATUSES.contains(lumpsumLoan.getStatus())
+                    ? 0
+                    : dpd(lumpsumLoan.getMaturityDate().toEpochDay(), todayEpochDay);
+            sink.accept(lumpsumLoan, new Dpd(dpd, dpd));
+        }
+    }
+
+    static int dpd(long maturityEpochDay, long todayEpochDay) {
+        return (int) Math.max(todayEpochDay - maturityEpochDay, 0);
+    }
 }
@@ -0,0 +1,50 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+
+/**
+ * DPD of large lumpsum batches held in arrays: maturity epoch days and {@link Status} ordinals in,
+ * clamped DPD out, with the same results as {@link Lumpsum#calculate(LumpsumLoan, LocalDate)}.
+ *
+ * <p>Built with the {@code vector} Maven profile and run with {@code --add-modules jdk.incubator.vector},
+ * the batch is calculated with the JDK Vector API, several loans per instruction. Otherwise, or when
+ * the module is not available at runtime, a branch-free scalar loop is used. Every loan needs a
+ * maturity day; a missing status ({@link InstallmentRows#NO_STATUS}) counts as not paid. Thread-safe.
+ */
+public final class LumpsumBatch {
+    static final String VECTOR_KERNEL = "com.alami.dpd.VectorLumpsumKernel";
+    private static final LumpsumKernel KERNEL = loadKernel();
+
+    private LumpsumBatch() {
+    }
+
+    public static void calculate(int[] maturityDays, byte[] statuses, LocalDate calculationDate, int[] dpd) {
+        calculate(maturityDays, statuses, 0, maturityDays.length, calculationDate, dpd);
+    }
+
+    /**
+     * Calculates loans {@code [from, to)}, writing each DPD at the loan's own index.
+     */
+    public static void calculate(int[] maturityDays, byte[] statuses, int from, int to, LocalDate calculationDate,
+                                 int[] dpd) {
+        if (from < 0 || to > maturityDays.length || to > statuses.length || to > dpd.length || from > to) {
+            throw new IndexOutOfBoundsException("range [" + from + ", " + to + ") does not fit the arrays");
+        }
+        KERNEL.calculate(maturityDays, statuses, from, to, (int) calculationDate.toEpochDay(), dpd);
+    }
+
+    /**
+     * Whether batches run on the Vector API kernel.
+     */
+    public static boolean isVectorized() {
+        return !(KERNEL instanceof ScalarLumpsumKernel);
+    }
+
+    static LumpsumKernel loadKernel() {
+        try {
+            return (LumpsumKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarLumpsumKernel();
+        }
+    }
+}
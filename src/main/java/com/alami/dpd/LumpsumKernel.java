@@ -0,0 +1,12 @@
+package com.alami.dpd;
+
+/**
+ * Clamped DPD of many lumpsum loans at once, over plain arrays, see {@link LumpsumBatch}.
+ */
+interface LumpsumKernel {
+    /**
+     * Writes the DPD of loans {@code [from, to)} into {@code dpd}: 0 for a paid status, otherwise
+     * {@code calculationDay - maturityDay} clamped at 0.
+     */
+    void calculate(int[] maturityDays, byte[] statuses, int from, int to, int calculationDay, int[] dpd);
+}
@@ -0,0 +1,57 @@
+package com.alami.dpd;
+
+import java.math.BigDecimal;
+
+/**
+ * Conversions between {@link BigDecimal} amounts and the long minor units of {@link InstallmentRows},
+ * and the amount rules the DPD engine applies to them without going back to {@code BigDecimal}.
+ */
+final class MinorUnits {
+    private MinorUnits() {
+    }
+
+    /**
+     * Minor units of {@code amount} at the given scale, exactly: an amount with more decimals than the
+     * scale, or too large for a long, throws an {@link ArithmeticException}.
+     */
+    static long of(BigDecimal amount, int scale) {
+        return amount == null ? InstallmentRows.NO_AMOUNT : amount.movePointRight(scale).longValueExact();
+    }
+
+    static BigDecimal toBigDecimal(long minorUnits, int scale) {
+        return minorUnits == InstallmentRows.NO_AMOUNT ? null : BigDecimal.valueOf(minorUnits, scale);
+    }
+
+    /**
+     * Whether {@code paidAmount} covers {@code amount} up to {@code tolerance}. Missing amounts never do.
+     */
+    static boolean isPaid(long amount, long paidAmount, long tolerance) {
+        return amount != InstallmentRows.NO_AMOUNT && paidAmount != InstallmentRows.NO_AMOUNT
+                && paidAmount >= amount - tolerance;
+    }
+
+    /**
+     * The repayment status a row gets under a paid tolerance: a NOT_PAID or PARTIAL_REPAYMENT row whose
+     * paid amount covers its amount up to the tolerance counts as PAID. A negative tolerance turns the
+     * rule off. A row made PAID also needs {@link #promotedRepaymentDay}.
+     */
+    static byte repaymentStatus(byte repaymentStatus, long amount, long paidAmount, long tolerance) {
+        if (tolerance >= 0
+                && (repaymentStatus == RepaymentStatus.NOT_PAID.ordinal()
+                        || repaymentStatus == RepaymentStatus.PARTIAL_REPAYMENT.ordinal())
+                && isPaid(amount, paidAmount, tolerance)) {
+            return (byte) RepaymentStatus.PAID.ordinal();
+        }
+        return repaymentStatus;
+    }
+
+    /**
+     * Repayment day of a row that {@link #repaymentStatus} made PAID: its own repayment day, or its
+     * maturity day when it has none. A PAID row without a date would keep ageing in {@link DpdKernel},
+     * so the row is taken as paid on time, as {@link PaymentWaterfall} settles installments covered
+     * before they mature.
+     */
+    static int promotedRepaymentDay(int repaymentDay, int maturityDay) {
+        return repaymentDay != InstallmentRows.NO_DATE ? repaymentDay : maturityDay;
+    }
+}
@@ -1,5 +1,6 @@
 package com.alami.dpd;
 
+import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.Comparator;
 import java.util.List;
@@ -7,21 +8,58 @@ import java.util.List;
 import lombok.AllArgsConstructor;
 
 @AllArgsConstructor
-public class PartialLumpsum {
+public class PartialLumpsum implements DpdCalculator<List<PartialLumpsumLoan>> {
     public Dpd calculate(List<PartialLumpsumLoan> partialLumpsumLoans) {
+        PartialLumpsumLoan latestPartialLumpsumLoan = findLatestPartialLumpsumLoan(partialLumpsumLoans);
+        return calculate(latestPartialLumpsumLoan, latestPartialLumpsumLoan.getToday());
+    }
+
+    /**
+     * Same as {@link #calculate(List)} but as of the given date instead of the tranches' today,
+     * so the tranches can be evaluated at any date without being modified.
+     */
+    @Override
+    public Dpd calculate(List<PartialLumpsumLoan> partialLumpsumLoans, LocalDate today) {
+        return calculate(findLatestPartialLumpsumLoan(partialLumpsumLoans), today);
+    }
+
+    /**
+     * Converts the calculation date to an epoch day once for the whole batch and finds the latest
+     * tranche with a plain loop.
+     */
+    @Override
+    public void calculateAll(List<? extends List<PartialLumpsumLoan>> loans, LocalDate today,
+                             DpdSink<? super List<PartialLumpsumLoan>> sink) {
+        long todayEpochDay = today.toEpochDay();
+        for (List<PartialLumpsumLoan> partialLumpsumLoans : loans) {
+            PartialLumpsumLoan latestPartialLumpsumLoan = null;
+            for (PartialLumpsumLoan partialLumpsumLoan : partialLumpsumLoans) {
+                if (latestPartialLumpsumLoan == null
+                        || partialLumpsumLoan.getPeriod() > latestPartialLumpsumLoan.getPeriod()) {
+                    latestPartialLumpsumLoan = partialLumpsumLoan;
+                }
+            }
+            int dpd = Lumpsum.dpd(latestPartialLumpsumLoan.getMaturityDate().toEpochDay(), todayEpochDay);
+            sink.accept(partialLumpsumLoans, new Dpd(dpd, dpd));
+        }
+    }
+
+    private PartialLumpsumLoan findLatestPartialLumpsumLoan(List<PartialLumpsumLoan> partialLumpsumLoans) {
         /**
          * can change the order key with period / repayment date / maturity date.
          * the goal is to get the last partial lumpsum data.
          * because we want to get the latest partial lumpsum dpd.
          */
-        PartialLumpsumLoan latestPartialLumpsumLoan = partialLumpsumLoans
-                                                        .stream()
-                                                        .max(Comparator.comparing(PartialLumpsumLoan::getPeriod))
-                                                        .orElse(null);
+        return partialLumpsumLoans
+                .stream()
+                .max(Comparator.comparing(PartialLumpsumLoan::getPeriod))
+                .orElse(null);
+    }
 
+    private Dpd calculate(PartialLumpsumLoan latestPartialLumpsumLoan, LocalDate today) {
         Integer dpd = (int) ChronoUnit.DAYS.between(
                 latestPartialLumpsumLoan.getMaturityDate(), 
-                latestPartialLumpsumLoan.getToday());
+                today);
         if (dpd < 0) {
             dpd = 0;
         }
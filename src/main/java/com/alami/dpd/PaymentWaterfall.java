@@ -0,0 +1,308 @@
+package com.alami.dpd;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Value;
+
+/**
+ * Allocates dated lump payments across the installments of an {@link InstallmentLoanV3} and
+ * calculates the DPD that results.
+ *
+ * <p>Open installments (NOT_PAID or PARTIAL_REPAYMENT, not a grace period) are filled oldest maturity
+ * first, ties by period. A payment first covers installments already due on its date; what is left is
+ * either applied to later installments right away ({@code prepayment}) or kept as a credit that pays
+ * each later installment on its maturity date. An installment becomes PAID, dated by the payment (or
+ * maturity) that completes it, once its paid amount reaches the amount minus {@code paidTolerance};
+ * until then it is a PARTIAL_REPAYMENT dated by the last payment that touched it.
+ *
+ * <p>Amounts are worked in long minor units of {@code scale} and payments and installments are each
+ * visited once, in a single forward pass. Payments dated after the calculation date are ignored.
+ * Instances are immutable and thread-safe.
+ */
+@Getter
+public class PaymentWaterfall {
+    private static final RepaymentStatus[] REPAYMENT_STATUSES = RepaymentStatus.values();
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final boolean prepayment;
+    private final BigDecimal paidTolerance;
+    private final int scale;
+    private final long paidToleranceUnits;
+
+    /**
+     * @param prepayment    whether money left after the due installments prepays later ones
+     * @param paidTolerance shortfall up to which an installment still counts as paid, none when null
+     * @param scale         decimals of the amounts, {@link ColumnarSchedule#DEFAULT_SCALE} when null
+     */
+    @Builder
+    private PaymentWaterfall(boolean prepayment, BigDecimal paidTolerance, Integer scale) {
+        if (paidTolerance != null && paidTolerance.signum() < 0) {
+            throw new IllegalArgumentException("paidTolerance must not be negative: " + paidTolerance);
+        }
+        this.prepayment = prepayment;
+        this.paidTolerance = paidTolerance;
+        this.scale = scale != null ? scale : ColumnarSchedule.DEFAULT_SCALE;
+        this.paidToleranceUnits = paidTolerance == null ? 0 : MinorUnits.of(paidTolerance, this.scale);
+    }
+
+    /**
+     * Allocates the payments, in date order, on top of what the installments already record as paid.
+     * Amounts must fit the scale exactly, otherwise an {@link ArithmeticException} is thrown.
+     * Installments the payments leave untouched are returned as they are.
+     *
+     * @throws IllegalArgumentException for a payment without date or amount, or with a negative amount
+     */
+    public Allocation allocate(InstallmentLoanV3 loan, List<Payment> payments, LocalDate calculationDate) {
+        List<InstallmentV3> installments = byPeriod(loan.getInstallments());
+        Scratch scratch = SCRATCH.get();
+        InstallmentRowBuffer rows = scratch.rows;
+        rows.clear();
+        for (InstallmentV3 installment : installments) {
+            byte repaymentStatus = installment.getRepaymentStatus() == null
+                    ? InstallmentRows.NO_STATUS
+                    : (byte) installment.getRepaymentStatus().ordinal();
+            rows.add(installment.getPeriod(),
+                    EpochDays.of(installment.getMaturityDate()),
+                    EpochDays.of(installment.getRepaymentDate()),
+                    EpochDays.of(installment.getWrittenOfDate()),
+                    MinorUnits.of(installment.getAmount(), scale),
+                    MinorUnits.of(installment.getPaidAmount(), scale),
+                    repaymentStatus);
+        }
+        int paymentCount = scratch.loadPayments(payments, scale);
+
+        int calculationDay = (int) calculationDate.toEpochDay();
+        boolean[] touched = new boolean[rows.size()];
+        long unallocated = new Pass(rows, touched).run(scratch.paymentDays, scratch.paymentAmounts, paymentCount, calculationDay);
+        long dpd = DpdKernel.calculate(rows, 0, rows.size(), loan.getStatus() == Status.WRITE_OFF, calculationDay);
+        return new Allocation(toLoan(rows, installments, touched, loan.getStatus()), DpdKernel.toDpd(dpd),
+                MinorUnits.toBigDecimal(unallocated, scale));
+    }
+
+    /**
+     * Primitive form of {@link #allocate(InstallmentLoanV3, List, LocalDate)} for callers that already
+     * hold the rows in minor units of {@link #getScale()}: allocates in place on {@code rows}, which must
+     * be sorted by period, and returns the unallocated money. Payments are the first {@code paymentCount}
+     * entries of {@code paymentDays} and {@code paymentAmounts}, in ascending day order, with
+     * non-negative amounts.
+     */
+    long allocate(InstallmentRowBuffer rows, int[] paymentDays, long[] paymentAmounts, int paymentCount, int calculationDay) {
+        return new Pass(rows, null).run(paymentDays, paymentAmounts, paymentCount, calculationDay);
+    }
+
+    private InstallmentLoanV3 toLoan(InstallmentRowBuffer rows, List<InstallmentV3> original, boolean[] touched, Status status) {
+        List<InstallmentV3> installments = new ArrayList<>(rows.size());
+        for (int row = 0; row < rows.size(); row++) {
+            if (!touched[row]) {
+                installments.add(original.get(row));
+                continue;
+            }
+            InstallmentV3 installment = original.get(row);
+            installments.add(InstallmentV3.builder()
+                    .period(installment.getPeriod())
+                    .maturityDate(installment.getMaturityDate())
+                    .amount(installment.getAmount())
+                    .paidAmount(MinorUnits.toBigDecimal(rows.paidAmount(row), scale))
+                    .repaymentStatus(REPAYMENT_STATUSES[rows.repaymentStatus(row)])
+                    .repaymentDate(EpochDays.toDate(rows.repaymentDay(row)))
+                    .writtenOfDate(installment.getWrittenOfDate())
+                    .build());
+        }
+        return InstallmentLoanV3.builder()
+                .installments(installments)
+                .status(status)
+                .build();
+    }
+
+    /**
+     * The installments in period order, stable for equal periods; the list itself when already sorted.
+     */
+    private static List<InstallmentV3> byPeriod(List<InstallmentV3> installments) {
+        for (int i = 1; i < installments.size(); i++) {
+            if (installments.get(i - 1).getPeriod() > installments.get(i).getPeriod()) {
+                List<InstallmentV3> sorted = new ArrayList<>(installments);
+                sorted.sort(Comparator.comparing(InstallmentV3::getPeriod));
+                return sorted;
+            }
+        }
+        return installments;
+    }
+
+    private static boolean isSortedByDate(List<Payment> payments) {
+        for (int i = 1; i < payments.size(); i++) {
+            if (payments.get(i - 1).getDate().isAfter(payments.get(i).getDate())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * One payment received on a date.
+     */
+    @Value
+    public static class Payment {
+        LocalDate date;
+        BigDecimal amount;
+    }
+
+    /**
+     * The loan with the payments allocated, its DPD as of the calculation date, and the money no
+     * installment was left to take.
+     */
+    @Value
+    public static class Allocation {
+        InstallmentLoanV3 loan;
+        Dpd dpd;
+        BigDecimal unallocated;
+    }
+
+    /**
+     * Walks the payments and the open installments in order, with a cursor on the oldest open one.
+     */
+    private class Pass {
+        private final InstallmentRowBuffer rows;
+        private final boolean[] touched;
+        private final int[] open;
+        private int openCount;
+        private int cursor;
+        private long credit;
+
+        Pass(InstallmentRowBuffer rows, boolean[] touched) {
+            this.rows = rows;
+            this.touched = touched;
+            this.open = new int[rows.size()];
+            for (int row = 0; row < rows.size(); row++) {
+                if (isOpen(row)) {
+                    insertByMaturity(row);
+                }
+            }
+        }
+
+        long run(int[] paymentDays, long[] paymentAmounts, int paymentCount, int calculationDay) {
+            for (int payment = 0; payment < paymentCount; payment++) {
+                int paymentDay = paymentDays[payment];
+                if (paymentDay > calculationDay) {
+                    break;
+                }
+                payCredit(paymentDay - 1);
+                credit = Math.addExact(credit, paymentAmounts[payment]);
+                pay(paymentDay, paymentDay);
+                if (prepayment) {
+                    pay(Integer.MAX_VALUE, paymentDay);
+                }
+            }
+            payCredit(calculationDay);
+            return credit;
+        }
+
+        /**
+         * Lets the credit left from earlier payments pay installments maturing up to {@code untilDay},
+         * each on its maturity date.
+         */
+        private void payCredit(int untilDay) {
+            pay(untilDay, InstallmentRows.NO_DATE);
+        }
+
+        /**
+         * Pays open installments maturing up to {@code untilDay} from the credit, dated {@code paymentDay}
+         * or, for {@link InstallmentRows#NO_DATE}, their maturity date.
+         */
+        private void pay(int untilDay, int paymentDay) {
+            while (credit > 0 && cursor < openCount && rows.maturityDay(open[cursor]) <= untilDay) {
+                int row = open[cursor];
+                int day = paymentDay != InstallmentRows.NO_DATE ? paymentDay : rows.maturityDay(row);
+                long amount = rows.amount(row);
+                long paidAmount = Math.max(rows.paidAmount(row), 0);
+                long allocated = Math.min(credit, amount - paidAmount);
+                credit -= allocated;
+                paidAmount += allocated;
+                if (MinorUnits.isPaid(amount, paidAmount, paidToleranceUnits)) {
+                    setRepayment(row, DpdKernel.PAID, day, paidAmount);
+                    cursor++;
+                } else {
+                    setRepayment(row, DpdKernel.PARTIAL_REPAYMENT, day, paidAmount);
+                }
+            }
+        }
+
+        /**
+         * Not paid or partly paid, with a maturity and an amount to pay. Installments already within the
+         * tolerance are marked PAID here without a payment.
+         */
+        private boolean isOpen(int row) {
+            byte repaymentStatus = rows.repaymentStatus(row);
+            if ((repaymentStatus != DpdKernel.NOT_PAID && repaymentStatus != DpdKernel.PARTIAL_REPAYMENT)
+                    || rows.maturityDay(row) == InstallmentRows.NO_DATE || rows.amount(row) == InstallmentRows.NO_AMOUNT) {
+                return false;
+            }
+            if (MinorUnits.isPaid(rows.amount(row), Math.max(rows.paidAmount(row), 0), paidToleranceUnits)) {
+                int repaymentDay = rows.repaymentDay(row) != InstallmentRows.NO_DATE ? rows.repaymentDay(row) : rows.maturityDay(row);
+                setRepayment(row, DpdKernel.PAID, repaymentDay, rows.paidAmount(row));
+                return false;
+            }
+            return true;
+        }
+
+        private void setRepayment(int row, byte repaymentStatus, int repaymentDay, long paidAmount) {
+            rows.setRepayment(row, repaymentStatus, repaymentDay, rows.writtenOffDay(row), paidAmount);
+            if (touched != null) {
+                touched[row] = true;
+            }
+        }
+
+        /**
+         * Insertion by maturity then period; rows arrive by period, so this is linear for regular schedules.
+         */
+        private void insertByMaturity(int row) {
+            int target = openCount;
+            while (target > 0 && rows.maturityDay(open[target - 1]) > rows.maturityDay(row)) {
+                open[target] = open[target - 1];
+                target--;
+            }
+            open[target] = row;
+            openCount++;
+        }
+    }
+
+    /**
+     * Per-thread rows and payment columns, reused across calls so they stop allocating once grown.
+     */
+    private static final class Scratch {
+        private final InstallmentRowBuffer rows = new InstallmentRowBuffer();
+        private int[] paymentDays = new int[16];
+        private long[] paymentAmounts = new long[16];
+
+        /**
+         * Copies the payments into the columns in ascending day order and returns how many there are.
+         */
+        int loadPayments(List<Payment> payments, int scale) {
+            for (Payment payment : payments) {
+                BigDecimal amount = payment.getAmount();
+                if (payment.getDate() == null || amount == null || amount.signum() < 0) {
+                    throw new IllegalArgumentException("payment needs a date and a non-negative amount: " + payment);
+                }
+            }
+            List<Payment> byDate = payments;
+            if (!isSortedByDate(payments)) {
+                byDate = new ArrayList<>(payments);
+                byDate.sort(Comparator.comparing(Payment::getDate));
+            }
+            if (paymentDays.length < byDate.size()) {
+                paymentDays = new int[byDate.size()];
+                paymentAmounts = new long[byDate.size()];
+            }
+            for (int i = 0; i < byDate.size(); i++) {
+                paymentDays[i] = (int) byDate.get(i).getDate().toEpochDay();
+                paymentAmounts[i] = MinorUnits.of(byDate.get(i).getAmount(), scale);
+            }
+            return byDate.size();
+        }
+    }
+}
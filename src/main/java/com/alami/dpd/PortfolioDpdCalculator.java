@@ -0,0 +1,73 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * {@link DpdCalculator} for a portfolio mixing products: {@link InstallmentLoanV3},
+ * {@link LumpsumLoan} and partial lumpsum loans given as a {@code List<PartialLumpsumLoan>}.
+ * Each loan is dispatched to the calculator of its product; a batch is split per product so every
+ * product calculator gets to do its batch setup once.
+ */
+@Getter
+@Builder
+public class PortfolioDpdCalculator implements DpdCalculator<Object> {
+    @Builder.Default
+    private final DpdCalculator<InstallmentLoanV3> installmentCalculator = new InstallmentLoanV3Calculator();
+    @Builder.Default
+    private final DpdCalculator<LumpsumLoan> lumpsumCalculator = new Lumpsum();
+    @Builder.Default
+    private final DpdCalculator<List<PartialLumpsumLoan>> partialLumpsumCalculator = new PartialLumpsum();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Dpd calculate(Object loan, LocalDate calculationDate) {
+        if (loan instanceof InstallmentLoanV3 installmentLoan) {
+            return installmentCalculator.calculate(installmentLoan, calculationDate);
+        }
+        if (loan instanceof LumpsumLoan lumpsumLoan) {
+            return lumpsumCalculator.calculate(lumpsumLoan, calculationDate);
+        }
+        if (loan instanceof List<?> partialLumpsumLoans) {
+            return partialLumpsumCalculator.calculate((List<PartialLumpsumLoan>) partialLumpsumLoans, calculationDate);
+        }
+        throw unsupported(loan);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void calculateAll(List<?> loans, LocalDate calculationDate, DpdSink<? super Object> sink) {
+        List<InstallmentLoanV3> installmentLoans = new ArrayList<>();
+        List<LumpsumLoan> lumpsumLoans = new ArrayList<>();
+        List<List<PartialLumpsumLoan>> partialLumpsumLoans = new ArrayList<>();
+        for (Object loan : loans) {
+            if (loan instanceof InstallmentLoanV3 installmentLoan) {
+                installmentLoans.add(installmentLoan);
+            } else if (loan instanceof LumpsumLoan lumpsumLoan) {
+                lumpsumLoans.add(lumpsumLoan);
+            } else if (loan instanceof List<?> tranches) {
+                partialLumpsumLoans.add((List<PartialLumpsumLoan>) tranches);
+            } else {
+                throw unsupported(loan);
+            }
+        }
+
+        if (!installmentLoans.isEmpty()) {
+            installmentCalculator.calculateAll(installmentLoans, calculationDate, sink::accept);
+        }
+        if (!lumpsumLoans.isEmpty()) {
+            lumpsumCalculator.calculateAll(lumpsumLoans, calculationDate, sink::accept);
+        }
+        if (!partialLumpsumLoans.isEmpty()) {
+            partialLumpsumCalculator.calculateAll(partialLumpsumLoans, calculationDate, sink::accept);
+        }
+    }
+
+    private static IllegalArgumentException unsupported(Object loan) {
+        return new IllegalArgumentException("Unsupported loan type: " + (loan == null ? null : loan.getClass().getName()));
+    }
+}
@@ -0,0 +1,133 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Calculates DPD for a whole portfolio as of one calculation date, in parallel on a
+ * {@link ForkJoinPool}.
+ *
+ * <p>By default a portfolio may mix {@link InstallmentLoanV3}, {@link LumpsumLoan} and partial
+ * lumpsum loans given as a {@code List<PartialLumpsumLoan>} of tranches, see
+ * {@link PortfolioDpdCalculator}; any other {@link DpdCalculator} can be passed per call. The input
+ * is split into chunks of about {@code chunkSize} loans that idle workers steal from each other.
+ * Each chunk goes through {@link DpdCalculator#calculateAll} and every result is handed to a
+ * {@link DpdSink} as soon as it is calculated instead of being collected.
+ */
+@Getter
+public class PortfolioDpdEngine {
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final DpdCalculator<Object> calculator;
+
+    /**
+     * @param pool       pool to run on, the common pool when null
+     * @param chunkSize  number of loans below which a chunk is no longer split, {@link #DEFAULT_CHUNK_SIZE} when 0
+     * @param calculator calculator for mixed portfolios, a default {@link PortfolioDpdCalculator} when null
+     */
+    @Builder
+    private PortfolioDpdEngine(ForkJoinPool pool, int chunkSize, DpdCalculator<Object> calculator) {
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("chunkSize must not be negative: " + chunkSize);
+        }
+        this.pool = pool != null ? pool : ForkJoinPool.commonPool();
+        this.chunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+        this.calculator = calculator != null ? calculator : PortfolioDpdCalculator.builder().build();
+    }
+
+    public <L> void calculate(Collection<? extends L> loans, LocalDate calculationDate, DpdSink<? super L> sink) {
+        calculate(loans.spliterator(), calculator, calculationDate, sink);
+    }
+
+    public <L> void calculate(Stream<? extends L> loans, LocalDate calculationDate, DpdSink<? super L> sink) {
+        calculate(loans.spliterator(), calculator, calculationDate, sink);
+    }
+
+    public <L> void calculate(Collection<? extends L> loans, DpdCalculator<? super L> calculator,
+                              LocalDate calculationDate, DpdSink<? super L> sink) {
+        calculate(loans.spliterator(), calculator, calculationDate, sink);
+    }
+
+    public <L> void calculate(Stream<? extends L> loans, DpdCalculator<? super L> calculator,
+                              LocalDate calculationDate, DpdSink<? super L> sink) {
+        calculate(loans.spliterator(), calculator, calculationDate, sink);
+    }
+
+    /**
+     * Calculates every loan of the spliterator and returns once all results have reached the sink.
+     */
+    public <L> void calculate(Spliterator<? extends L> loans, DpdCalculator<? super L> calculator,
+                              LocalDate calculationDate, DpdSink<? super L> sink) {
+        pool.invoke(new ChunkTask<L>(null, loans, new Batch<>(calculator, calculationDate, sink)));
+    }
+
+    /**
+     * What every chunk of one {@code calculate} call shares.
+     */
+    private static class Batch<L> {
+        private final DpdCalculator<? super L> calculator;
+        private final LocalDate calculationDate;
+        private final DpdSink<? super L> sink;
+
+        Batch(DpdCalculator<? super L> calculator, LocalDate calculationDate, DpdSink<? super L> sink) {
+            this.calculator = calculator;
+            this.calculationDate = calculationDate;
+            this.sink = sink;
+        }
+
+        @SuppressWarnings("unchecked")
+        void calculateAll(List<L> chunk) {
+            // the sink only ever receives the loans it was given, all of them Ls
+            ((DpdCalculator<L>) calculator).calculateAll(chunk, calculationDate, (DpdSink<L>) sink);
+        }
+    }
+
+    /**
+     * Splits its spliterator while it is larger than the chunk size, forking the split-off halves,
+     * then calculates what is left in batches of at most the chunk size. Completes once all forked chunks have completed.
+     */
+    private class ChunkTask<L> extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final Spliterator<? extends L> loans;
+        private final Batch<L> batch;
+
+        ChunkTask(ChunkTask<L> parent, Spliterator<? extends L> loans, Batch<L> batch) {
+            super(parent);
+            this.loans = loans;
+            this.batch = batch;
+        }
+
+        @Override
+        public void compute() {
+            Spliterator<? extends L> split;
+            while (loans.estimateSize() > chunkSize && (split = loans.trySplit()) != null) {
+                addToPendingCount(1);
+                new ChunkTask<>(this, split, batch).fork();
+            }
+            // an unsplittable remainder is still calculated chunkSize loans at a time
+            List<L> chunk = new ArrayList<>((int) Math.min(loans.estimateSize(), chunkSize));
+            while (loans.tryAdvance(chunk::add)) {
+                if (chunk.size() == chunkSize) {
+                    batch.calculateAll(chunk);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                batch.calculateAll(chunk);
+            }
+            propagateCompletion();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.alami.dpd;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Allocation-free DPD for {@link InstallmentLoanV3} objects, with the same results as
+ * {@link InstallmentLoanV3#calculateLatestDpd(LocalDate)}.
+ *
+ * <p>Each loan's installments are copied into a thread-confined {@link InstallmentRowBuffer} and
+ * calculated by {@link DpdKernel} with a thread-confined {@link DpdTrend}; results go to a
+ * {@link PrimitiveDpdSink} instead of new {@link Dpd} objects. Once the buffer has grown to the
+ * longest schedule a thread has seen, calculating a loan allocates nothing. Amounts are copied as
+ * their sign only, since DPD only tells zero amounts apart. Thread-safe.
+ */
+public final class PrimitiveDpdCalculator {
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private PrimitiveDpdCalculator() {
+    }
+
+    /**
+     * Calculates every loan and reports it under its index in the list.
+     */
+    public static void calculateAll(List<? extends InstallmentLoanV3> loans, LocalDate calculationDate,
+                                    PrimitiveDpdSink sink) {
+        calculateAll(loans, 0, loans.size(), calculationDate, sink);
+    }
+
+    /**
+     * Calculates the loans {@code [from, to)} of the list, for instance one chunk of a parallel run,
+     * and reports each under its index in the list. Meant for random access lists.
+     */
+    public static void calculateAll(List<? extends InstallmentLoanV3> loans, int from, int to,
+                                    LocalDate calculationDate, PrimitiveDpdSink sink) {
+        int calculationDay = (int) calculationDate.toEpochDay();
+        Scratch scratch = SCRATCH.get();
+        for (int index = from; index < to; index++) {
+            long dpd = scratch.calculate(loans.get(index), calculationDay);
+            sink.accept(index, DpdKernel.latestDpd(dpd), DpdKernel.maxDpd(dpd));
+        }
+    }
+
+    /**
+     * Thread-confined rows and trend reused for every loan.
+     */
+    private static final class Scratch {
+        private final InstallmentRowBuffer rows = new InstallmentRowBuffer();
+        private final DpdTrend trend = new DpdTrend();
+
+        long calculate(InstallmentLoanV3 loan, int calculationDay) {
+            load(loan, rows);
+            boolean writtenOff = loan.getStatus() == Status.WRITE_OFF;
+            return DpdKernel.calculate(rows, 0, rows.size(), writtenOff, calculationDay, trend);
+        }
+    }
+
+    /**
+     * Replaces the rows with the loan's installments, ordered by period, without allocating once the
+     * buffer is large enough. Amounts are copied as their sign only.
+     */
+    static void load(InstallmentLoanV3 loan, InstallmentRowBuffer rows) {
+        List<InstallmentV3> installments = loan.getInstallments();
+        rows.clear();
+        for (int i = 0, size = installments.size(); i < size; i++) {
+            InstallmentV3 installment = installments.get(i);
+            BigDecimal amount = installment.getAmount();
+            RepaymentStatus repaymentStatus = installment.getRepaymentStatus();
+            rows.add(installment.getPeriod(),
+                    EpochDays.of(installment.getMaturityDate()),
+                    EpochDays.of(installment.getRepaymentDate()),
+                    EpochDays.of(installment.getWrittenOfDate()),
+                    amount == null ? InstallmentRows.NO_AMOUNT : amount.signum(),
+                    InstallmentRows.NO_AMOUNT,
+                    repaymentStatus == null ? InstallmentRows.NO_STATUS : (byte) repaymentStatus.ordinal());
+        }
+        if (!rows.isSortedByPeriod()) {
+            rows.sortByPeriod();
+        }
+    }
+}
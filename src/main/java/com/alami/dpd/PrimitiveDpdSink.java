@@ -0,0 +1,10 @@
+package com.alami.dpd;
+
+/**
+ * Receives DPD results as primitives, so that reporting a result allocates nothing. The loan index
+ * is the position of the loan in the batch it was calculated from.
+ */
+@FunctionalInterface
+public interface PrimitiveDpdSink {
+    void accept(int loanIndex, int latestDpd, int maxDpd);
+}
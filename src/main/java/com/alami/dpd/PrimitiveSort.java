@@ -0,0 +1,131 @@
+package com.alami.dpd;
+
+import java.util.Arrays;
+
+/**
+ * In-place sort of parallel {@code long} and {@code int} arrays by the pair (key, value), without
+ * boxing. Quicksort with median-of-three pivots and insertion sort for short ranges; not stable,
+ * which does not matter for pairs.
+ */
+final class PrimitiveSort {
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private PrimitiveSort() {
+    }
+
+    /**
+     * Sorts {@code [from, to)} of both arrays by key, then by value.
+     */
+    static void sort(long[] keys, int[] values, int from, int to) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            int middle = (from + to) >>> 1;
+            // median of three to the middle, then partition around it
+            if (compare(keys, values, middle, from) < 0) {
+                swap(keys, values, middle, from);
+            }
+            if (compare(keys, values, to - 1, middle) < 0) {
+                swap(keys, values, to - 1, middle);
+                if (compare(keys, values, middle, from) < 0) {
+                    swap(keys, values, middle, from);
+                }
+            }
+            long pivotKey = keys[middle];
+            int pivotValue = values[middle];
+            int low = from;
+            int high = to - 1;
+            while (low <= high) {
+                while (compare(keys[low], values[low], pivotKey, pivotValue) < 0) {
+                    low++;
+                }
+                while (compare(keys[high], values[high], pivotKey, pivotValue) > 0) {
+                    high--;
+                }
+                if (low <= high) {
+                    swap(keys, values, low++, high--);
+                }
+            }
+            // recurse into the smaller side so the stack stays logarithmic
+            if (high - from < to - low) {
+                sort(keys, values, from, high + 1);
+                from = low;
+            } else {
+                sort(keys, values, low, to);
+                to = high + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            long key = keys[i];
+            int value = values[i];
+            int j = i - 1;
+            while (j >= from && compare(keys[j], values[j], key, value) > 0) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+
+    /**
+     * Positions of the first {@code size} ids in ascending id order, without sorting when they are in
+     * that order already. An id that occurs twice is rejected with an {@link IllegalArgumentException}.
+     */
+    static int[] order(long[] ids, int size) {
+        int[] order = new int[size];
+        Arrays.setAll(order, i -> i);
+        boolean sorted = true;
+        for (int i = 1; i < size && sorted; i++) {
+            sorted = ids[i - 1] < ids[i];
+        }
+        if (sorted) {
+            return order;
+        }
+        long[] keys = Arrays.copyOf(ids, size);
+        sort(keys, order, 0, size);
+        for (int i = 1; i < size; i++) {
+            if (keys[i - 1] == keys[i]) {
+                throw new IllegalArgumentException("duplicate loan id " + keys[i]);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Index of the pair in the sorted range {@code [from, to)}, or {@code -(insertion point) - 1}.
+     */
+    static int binarySearch(long[] keys, int[] values, int from, int to, long key, int value) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(keys[middle], values[middle], key, value);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int compare(long[] keys, int[] values, int i, int j) {
+        return compare(keys[i], values[i], keys[j], values[j]);
+    }
+
+    private static int compare(long key, int value, long otherKey, int otherValue) {
+        int byKey = Long.compare(key, otherKey);
+        return byKey != 0 ? byKey : Integer.compare(value, otherValue);
+    }
+
+    private static void swap(long[] keys, int[] values, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
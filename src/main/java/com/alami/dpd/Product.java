@@ -0,0 +1,28 @@
+package com.alami.dpd;
+
+import java.util.List;
+
+/**
+ * Loan products, each with its own DPD rules.
+ */
+public enum Product {
+    INSTALLMENT,
+    LUMPSUM,
+    PARTIAL_LUMPSUM;
+
+    /**
+     * Product of a portfolio loan as accepted by {@link PortfolioDpdCalculator}.
+     */
+    public static Product of(Object loan) {
+        if (loan instanceof InstallmentLoanV3) {
+            return INSTALLMENT;
+        }
+        if (loan instanceof LumpsumLoan) {
+            return LUMPSUM;
+        }
+        if (loan instanceof List<?>) {
+            return PARTIAL_LUMPSUM;
+        }
+        throw new IllegalArgumentException("Unsupported loan type: " + (loan == null ? null : loan.getClass().getName()));
+    }
+}
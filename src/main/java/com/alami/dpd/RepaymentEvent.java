@@ -0,0 +1,27 @@
+package com.alami.dpd;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * A repayment, partial repayment or write-off of one loan, as applied by {@link RepaymentEventProcessor}.
+ *
+ * <p>{@code status} is {@link RepaymentStatus#PAID}, {@link RepaymentStatus#PARTIAL_REPAYMENT} or
+ * {@link RepaymentStatus#WRITE_OFF} and {@code date} the repayment or write-off date. A repayment
+ * applies to the first installment of {@code period} that is neither paid nor written off;
+ * {@code paidAmount} is optional for {@code PAID}, where it defaults to the installment amount.
+ * A write-off with a period writes off that installment only; without period it writes off the whole loan, recording the date
+ * on the loan's first write-off installment, which is added when the loan has none.
+ */
+@Value
+@Builder
+public class RepaymentEvent {
+    long loanId;
+    Integer period;
+    RepaymentStatus status;
+    LocalDate date;
+    BigDecimal paidAmount;
+}
@@ -0,0 +1,458 @@
+package com.alami.dpd;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the DPD of many installment loans live while repayment and write-off events arrive.
+ *
+ * <p>Every loan is held as primitive rows plus a segment tree over its periods. A leaf holds what
+ * {@link DpdKernel} derives from one period: its maxDpd term, its latestDpd candidate and its number
+ * of overdue unpaid installments, and the inner nodes combine those the way the kernel does while
+ * scanning. An event rewrites one installment and recomputes the leaf of its period and the path to
+ * the root, in O(rows of the period + log periods), after which latestDpd and maxDpd are read off the
+ * root. Leaves only depend on the day through which installments have matured, so advancing the day
+ * refreshes just the periods that matured in between.
+ *
+ * <p>Results are the same as {@link InstallmentLoanV3#calculateLatestDpd(LocalDate)} on the loan with
+ * the events applied, see {@link #loan(long)}. Not thread-safe; partition loans by id over one
+ * processor per thread.
+ */
+public final class RepaymentEventProcessor {
+    private static final int NONE = DpdTrend.NONE;
+
+    private final Map<Long, LoanState> loans = new HashMap<>();
+    private int today;
+
+    public RepaymentEventProcessor(LocalDate today) {
+        this.today = (int) today.toEpochDay();
+    }
+
+    /**
+     * Starts tracking a loan. Amounts must fit {@link ColumnarSchedule#DEFAULT_SCALE} decimals.
+     */
+    public void add(long loanId, InstallmentLoanV3 loan) {
+        loans.put(loanId, new LoanState(ColumnarSchedule.of(loan.getInstallments(), loan.getStatus()), today));
+    }
+
+    public boolean contains(long loanId) {
+        return loans.containsKey(loanId);
+    }
+
+    public int loanCount() {
+        return loans.size();
+    }
+
+    /**
+     * Moves the calculation date; loans catch up the next time they are read or receive an event.
+     */
+    public void advanceTo(LocalDate date) {
+        today = (int) date.toEpochDay();
+    }
+
+    /**
+     * Applies the event and returns the loan's DPD as of the current date.
+     */
+    public Dpd apply(RepaymentEvent event) {
+        LoanState state = state(event.getLoanId());
+        state.rollTo(today);
+        if (event.getStatus() == null || event.getDate() == null) {
+            throw new IllegalArgumentException("event needs a status and a date: " + event);
+        }
+        int day = (int) event.getDate().toEpochDay();
+        switch (event.getStatus()) {
+            case PAID, PARTIAL_REPAYMENT -> state.repay(event, day);
+            case WRITE_OFF -> {
+                if (event.getPeriod() == null) {
+                    state.writeOffLoan(day);
+                } else {
+                    state.writeOffInstallment(event.getPeriod(), day);
+                }
+            }
+            default -> throw new IllegalArgumentException("unsupported event status " + event.getStatus());
+        }
+        return DpdKernel.toDpd(state.dpd());
+    }
+
+    public Dpd dpd(long loanId) {
+        LoanState state = state(loanId);
+        state.rollTo(today);
+        return DpdKernel.toDpd(state.dpd());
+    }
+
+    /**
+     * The loan with every event applied so far.
+     */
+    public InstallmentLoanV3 loan(long loanId) {
+        return state(loanId).toLoan();
+    }
+
+    private LoanState state(long loanId) {
+        LoanState state = loans.get(loanId);
+        if (state == null) {
+            throw new IllegalArgumentException("unknown loan id " + loanId);
+        }
+        return state;
+    }
+
+    /**
+     * Rows, period slots and segment tree of one loan. Slots are runs of rows with the same period,
+     * including grace rows, which every leaf skips just like the kernel does.
+     */
+    private static final class LoanState {
+        private static final byte HAS_PERIOD = 1;
+        private static final byte NOT_PAID_FOUND = 2;
+        private static final byte PAID_FOUND = 4;
+
+        private final InstallmentRowBuffer rows = new InstallmentRowBuffer();
+        private Status status;
+        private int[] slotStarts;
+        private int slotCount;
+        private int[] slotOfRow;
+        private final int[] activationRows;
+        private int activated;
+        private int day;
+        private int earliestMaturityDay = Integer.MAX_VALUE;
+        private int latestMaturityDay = Integer.MIN_VALUE;
+
+        private final int leaves;
+        private final byte[] flags;
+        private final int[] maxFixed;
+        private final int[] maxAgeingBase;
+        private final int[] overdueNotPaidCount;
+        private final int[] firstNotPaidFixed;
+        private final int[] firstNotPaidAgeingBase;
+        private final int[] highestNotPaidFixed;
+        private final int[] highestNotPaidAgeingBase;
+        private final int[] latestPaidMaturityDay;
+        private final int[] latestPaidDpd;
+        private final int[] writeOffRow;
+
+        LoanState(ColumnarSchedule schedule, int day) {
+            this.status = schedule.status(0);
+            int rowCount = schedule.rowCount();
+            slotStarts = new int[rowCount + 2];
+            slotOfRow = new int[rowCount + 1];
+            for (int row = 0; row < rowCount; row++) {
+                rows.add(schedule.period(row), schedule.maturityDay(row), schedule.repaymentDay(row),
+                        schedule.writtenOffDay(row), schedule.amount(row), schedule.paidAmount(row),
+                        schedule.repaymentStatus(row));
+                if (slotCount == 0 || schedule.period(row) != schedule.period(row - 1)) {
+                    slotStarts[slotCount++] = row;
+                }
+                slotOfRow[row] = slotCount - 1;
+            }
+            slotStarts[slotCount] = rowCount;
+
+            long[] maturities = new long[rowCount];
+            int maturityCount = 0;
+            for (int row = 0; row < rowCount; row++) {
+                int maturityDay = rows.maturityDay(row);
+                if (!DpdKernel.isGracePeriod(rows, row) && maturityDay != InstallmentRows.NO_DATE) {
+                    earliestMaturityDay = Math.min(earliestMaturityDay, maturityDay);
+                    latestMaturityDay = Math.max(latestMaturityDay, maturityDay);
+                    maturities[maturityCount++] = (long) maturityDay << 32 | row;
+                }
+            }
+            Arrays.sort(maturities, 0, maturityCount);
+            activationRows = new int[maturityCount];
+            for (int i = 0; i < maturityCount; i++) {
+                activationRows[i] = (int) maturities[i];
+            }
+
+            // one spare slot for a write-off installment added later
+            leaves = Math.max(1, Integer.highestOneBit(slotCount) << 1);
+            flags = new byte[2 * leaves];
+            maxFixed = new int[2 * leaves];
+            maxAgeingBase = new int[2 * leaves];
+            overdueNotPaidCount = new int[2 * leaves];
+            firstNotPaidFixed = new int[2 * leaves];
+            firstNotPaidAgeingBase = new int[2 * leaves];
+            highestNotPaidFixed = new int[2 * leaves];
+            highestNotPaidAgeingBase = new int[2 * leaves];
+            latestPaidMaturityDay = new int[2 * leaves];
+            latestPaidDpd = new int[2 * leaves];
+            writeOffRow = new int[2 * leaves];
+            rebuild(day);
+        }
+
+        /**
+         * Brings the leaves to the given day: forward by refreshing the periods that matured since,
+         * backward by rebuilding the tree.
+         */
+        void rollTo(int newDay) {
+            if (newDay < day) {
+                rebuild(newDay);
+                return;
+            }
+            day = newDay;
+            while (activated < activationRows.length && rows.maturityDay(activationRows[activated]) < day) {
+                update(slotOfRow[activationRows[activated]]);
+                activated++;
+            }
+        }
+
+        void repay(RepaymentEvent event, int repaymentDay) {
+            int row = openRow(event.getPeriod());
+            if (row < 0) {
+                return;
+            }
+            long paid = event.getPaidAmount() == null ? InstallmentRows.NO_AMOUNT : toMinorUnits(event.getPaidAmount());
+            byte repaymentStatus;
+            if (event.getStatus() == RepaymentStatus.PAID) {
+                repaymentStatus = DpdKernel.PAID;
+                if (paid == InstallmentRows.NO_AMOUNT) {
+                    paid = rows.amount(row);
+                }
+            } else {
+                if (paid == InstallmentRows.NO_AMOUNT) {
+                    throw new IllegalArgumentException("partial repayment needs a paid amount: " + event);
+                }
+                repaymentStatus = DpdKernel.PARTIAL_REPAYMENT;
+                long alreadyPaid = rows.paidAmount(row);
+                paid += alreadyPaid == InstallmentRows.NO_AMOUNT ? 0 : alreadyPaid;
+            }
+            rows.setRepayment(row, repaymentStatus, repaymentDay, rows.writtenOffDay(row), paid);
+            update(slotOfRow[row]);
+        }
+
+        void writeOffInstallment(int period, int writtenOffDay) {
+            int row = openRow(period);
+            if (row < 0) {
+                return;
+            }
+            rows.setRepayment(row, DpdKernel.WRITE_OFF, rows.repaymentDay(row), writtenOffDay, rows.paidAmount(row));
+            update(slotOfRow[row]);
+        }
+
+        void writeOffLoan(int writtenOffDay) {
+            status = Status.WRITE_OFF;
+            int row = writeOffRow[1];
+            if (row != Integer.MAX_VALUE) {
+                rows.setRepayment(row, DpdKernel.WRITE_OFF, rows.repaymentDay(row), writtenOffDay, rows.paidAmount(row));
+                update(slotOfRow[row]);
+                return;
+            }
+            int last = rows.size() - 1;
+            int period = last >= 0 ? rows.period(last) + 1 : 1;
+            rows.add(period, InstallmentRows.NO_DATE, InstallmentRows.NO_DATE, writtenOffDay,
+                    InstallmentRows.NO_AMOUNT, InstallmentRows.NO_AMOUNT, DpdKernel.WRITE_OFF);
+            slotOfRow[rows.size() - 1] = slotCount;
+            slotCount++;
+            slotStarts[slotCount] = rows.size();
+            update(slotCount - 1);
+        }
+
+        long dpd() {
+            int fixed = (flags[1] & HAS_PERIOD) != 0 ? maxFixed[1] : 0;
+            int maxDpd = DpdTrend.evaluate(fixed, maxAgeingBase[1], day);
+            boolean anyMaturity = earliestMaturityDay != Integer.MAX_VALUE;
+            if (status == Status.WRITE_OFF) {
+                int row = writeOffRow[1];
+                if (row == Integer.MAX_VALUE || rows.writtenOffDay(row) == InstallmentRows.NO_DATE) {
+                    return DpdKernel.pack(0, maxDpd);
+                }
+                int dpd = rows.writtenOffDay(row) - (anyMaturity ? latestMaturityDay : day);
+                return DpdKernel.pack(dpd, dpd);
+            }
+            if (!anyMaturity || day <= earliestMaturityDay) {
+                return DpdKernel.pack(0, 0);
+            }
+            int latestDpd;
+            if ((flags[1] & NOT_PAID_FOUND) != 0) {
+                latestDpd = overdueNotPaidCount[1] > 1
+                        ? DpdTrend.evaluate(highestNotPaidFixed[1], highestNotPaidAgeingBase[1], day)
+                        : DpdTrend.evaluate(firstNotPaidFixed[1], firstNotPaidAgeingBase[1], day);
+            } else {
+                latestDpd = (flags[1] & PAID_FOUND) != 0 ? latestPaidDpd[1] : 0;
+            }
+            return DpdKernel.pack(latestDpd, maxDpd);
+        }
+
+        InstallmentLoanV3 toLoan() {
+            List<InstallmentV3> installments = new ArrayList<>(rows.size());
+            for (int row = 0; row < rows.size(); row++) {
+                byte repaymentStatus = rows.repaymentStatus(row);
+                installments.add(InstallmentV3.builder()
+                        .period(rows.period(row))
+                        .maturityDate(EpochDays.toDate(rows.maturityDay(row)))
+                        .amount(toBigDecimal(rows.amount(row)))
+                        .paidAmount(toBigDecimal(rows.paidAmount(row)))
+                        .repaymentStatus(repaymentStatus == InstallmentRows.NO_STATUS
+                                ? null
+                                : RepaymentStatus.values()[repaymentStatus])
+                        .repaymentDate(EpochDays.toDate(rows.repaymentDay(row)))
+                        .writtenOfDate(EpochDays.toDate(rows.writtenOffDay(row)))
+                        .build());
+            }
+            return InstallmentLoanV3.builder().installments(installments).status(status).build();
+        }
+
+        /**
+         * First open installment of the period, that is neither a grace period, paid nor written off;
+         * -1 when there is none.
+         */
+        private int openRow(Integer period) {
+            if (period == null) {
+                throw new IllegalArgumentException("repayment needs a period");
+            }
+            int low = 0;
+            int high = slotCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int slotPeriod = rows.period(slotStarts[middle]);
+                if (slotPeriod < period) {
+                    low = middle + 1;
+                } else if (slotPeriod > period) {
+                    high = middle - 1;
+                } else {
+                    for (int row = slotStarts[middle]; row < slotStarts[middle + 1]; row++) {
+                        byte repaymentStatus = rows.repaymentStatus(row);
+                        if (!DpdKernel.isGracePeriod(rows, row)
+                                && repaymentStatus != DpdKernel.PAID && repaymentStatus != DpdKernel.WRITE_OFF) {
+                            return row;
+                        }
+                    }
+                    return -1;
+                }
+            }
+            throw new IllegalArgumentException("unknown period " + period);
+        }
+
+        private void rebuild(int newDay) {
+            day = newDay;
+            activated = 0;
+            while (activated < activationRows.length && rows.maturityDay(activationRows[activated]) < day) {
+                activated++;
+            }
+            for (int slot = 0; slot < leaves; slot++) {
+                computeLeaf(slot);
+            }
+            for (int node = leaves - 1; node > 0; node--) {
+                combine(node);
+            }
+        }
+
+        private void update(int slot) {
+            computeLeaf(slot);
+            for (int node = (leaves + slot) >>> 1; node > 0; node >>>= 1) {
+                combine(node);
+            }
+        }
+
+        /**
+         * What the kernel derives from closing the period of the slot, as of the current day.
+         */
+        private void computeLeaf(int slot) {
+            int node = leaves + slot;
+            flags[node] = 0;
+            maxFixed[node] = NONE;
+            maxAgeingBase[node] = NONE;
+            overdueNotPaidCount[node] = 0;
+            firstNotPaidFixed[node] = NONE;
+            firstNotPaidAgeingBase[node] = NONE;
+            highestNotPaidFixed[node] = NONE;
+            highestNotPaidAgeingBase[node] = NONE;
+            latestPaidMaturityDay[node] = Integer.MIN_VALUE;
+            latestPaidDpd[node] = 0;
+            writeOffRow[node] = Integer.MAX_VALUE;
+            if (slot >= slotCount) {
+                return;
+            }
+
+            int firstRow = -1;
+            int firstPaidRow = -1;
+            for (int row = slotStarts[slot]; row < slotStarts[slot + 1]; row++) {
+                if (DpdKernel.isGracePeriod(rows, row)) {
+                    continue;
+                }
+                if (firstRow < 0) {
+                    firstRow = row;
+                }
+                byte repaymentStatus = rows.repaymentStatus(row);
+                if (repaymentStatus == DpdKernel.WRITE_OFF && writeOffRow[node] == Integer.MAX_VALUE) {
+                    writeOffRow[node] = row;
+                }
+                if (repaymentStatus == DpdKernel.PAID) {
+                    if (firstPaidRow < 0) {
+                        firstPaidRow = row;
+                    }
+                } else if (DpdKernel.rowDpd(rows, row, day) > 0) {
+                    overdueNotPaidCount[node]++;
+                }
+            }
+            if (firstRow < 0) {
+                return;
+            }
+            flags[node] = HAS_PERIOD;
+
+            boolean paidOnRecord = firstPaidRow >= 0 && rows.repaymentDay(firstPaidRow) != InstallmentRows.NO_DATE;
+            boolean ageing = DpdKernel.isAgeing(rows, firstRow, day);
+            if (!paidOnRecord && ageing) {
+                maxAgeingBase[node] = -rows.maturityDay(firstRow);
+            } else {
+                maxFixed[node] = paidOnRecord
+                        ? DpdKernel.paidPeriodDpd(rows, firstRow, firstPaidRow)
+                        : DpdKernel.rowDpd(rows, firstRow, day);
+            }
+
+            int candidateRow = firstPaidRow >= 0 ? firstPaidRow : firstRow;
+            boolean candidateAgeing = firstPaidRow < 0 && ageing;
+            int candidateDpd = firstPaidRow >= 0
+                    ? DpdKernel.latePaymentDpd(rows, firstPaidRow)
+                    : DpdKernel.rowDpd(rows, firstRow, day);
+            if (candidateDpd <= 0) {
+                return;
+            }
+            if (rows.repaymentStatus(firstRow) == DpdKernel.PAID) {
+                flags[node] |= PAID_FOUND;
+                latestPaidMaturityDay[node] = rows.maturityDay(candidateRow);
+                latestPaidDpd[node] = candidateDpd;
+            } else {
+                flags[node] |= NOT_PAID_FOUND;
+                int fixed = candidateAgeing ? NONE : candidateDpd;
+                int ageingBase = candidateAgeing ? -rows.maturityDay(firstRow) : NONE;
+                firstNotPaidFixed[node] = fixed;
+                firstNotPaidAgeingBase[node] = ageingBase;
+                highestNotPaidFixed[node] = fixed;
+                highestNotPaidAgeingBase[node] = ageingBase;
+            }
+        }
+
+        /**
+         * Combines two adjacent ranges of periods, the left one holding the earlier periods.
+         */
+        private void combine(int node) {
+            int left = 2 * node;
+            int right = left + 1;
+            flags[node] = (byte) (flags[left] | flags[right]);
+            maxFixed[node] = Math.max(maxFixed[left], maxFixed[right]);
+            maxAgeingBase[node] = Math.max(maxAgeingBase[left], maxAgeingBase[right]);
+            overdueNotPaidCount[node] = overdueNotPaidCount[left] + overdueNotPaidCount[right];
+            int first = (flags[left] & NOT_PAID_FOUND) != 0 ? left : right;
+            firstNotPaidFixed[node] = firstNotPaidFixed[first];
+            firstNotPaidAgeingBase[node] = firstNotPaidAgeingBase[first];
+            highestNotPaidFixed[node] = Math.max(highestNotPaidFixed[left], highestNotPaidFixed[right]);
+            highestNotPaidAgeingBase[node] = Math.max(highestNotPaidAgeingBase[left], highestNotPaidAgeingBase[right]);
+            boolean rightPaid = (flags[right] & PAID_FOUND) != 0;
+            int paid = rightPaid && ((flags[left] & PAID_FOUND) == 0
+                    || latestPaidMaturityDay[right] > latestPaidMaturityDay[left]) ? right : left;
+            latestPaidMaturityDay[node] = latestPaidMaturityDay[paid];
+            latestPaidDpd[node] = latestPaidDpd[paid];
+            writeOffRow[node] = Math.min(writeOffRow[left], writeOffRow[right]);
+        }
+
+        private static long toMinorUnits(BigDecimal amount) {
+            return MinorUnits.of(amount, ColumnarSchedule.DEFAULT_SCALE);
+        }
+
+        private static BigDecimal toBigDecimal(long minorUnits) {
+            return MinorUnits.toBigDecimal(minorUnits, ColumnarSchedule.DEFAULT_SCALE);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bucket-to-bucket roll counts of latestDpd between consecutive calculation dates, per {@link Product},
+ * for roll-rate reports such as how many loans moved from 1-30 to 31-60 between two month-ends.
+ *
+ * <p>Each loan is evaluated at every date in one go: an {@link InstallmentLoanV3} is copied into a
+ * thread-confined primitive buffer once and its {@link DpdTrend} is reused for every later date until
+ * one of its installments matures, instead of calling
+ * {@link InstallmentLoanV3#calculateLatestDpd(LocalDate)} per date. Buckets are those of the given
+ * {@link DpdBuckets}; the counters are {@link LongAdder}s, so loans can be added from many threads at
+ * once, see {@link #addAll(Collection, PortfolioDpdEngine, DpdSink)}.
+ */
+public final class RollRateMatrix {
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    private static final Product[] PRODUCTS = Product.values();
+
+    private final int[] days;
+    private final List<LocalDate> dates;
+    private final DpdBuckets buckets;
+    private final int bucketCount;
+    private final LongAdder[] counts;
+    private final Lumpsum lumpsum = new Lumpsum();
+    private final PartialLumpsum partialLumpsum = new PartialLumpsum();
+    /**
+     * What {@link #addAll} runs on the engine, always with the last date as the calculation date.
+     */
+    private final DpdCalculator<Object> rolls = (loan, calculationDate) -> DpdKernel.toDpd(addAndGetLast(loan));
+
+    private RollRateMatrix(List<LocalDate> dates, DpdBuckets buckets) {
+        if (dates.size() < 2) {
+            throw new IllegalArgumentException("at least two dates are required: " + dates);
+        }
+        this.dates = List.copyOf(dates);
+        this.days = new int[dates.size()];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = (int) dates.get(i).toEpochDay();
+            if (i > 0 && days[i - 1] >= days[i]) {
+                throw new IllegalArgumentException("dates must be strictly increasing: " + dates);
+            }
+        }
+        this.buckets = buckets;
+        this.bucketCount = buckets.bucketCount();
+        this.counts = new LongAdder[PRODUCTS.length * transitionCount() * bucketCount * bucketCount];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Matrix of the transitions between consecutive dates, which must be strictly increasing.
+     */
+    public static RollRateMatrix between(DpdBuckets buckets, LocalDate... dates) {
+        return new RollRateMatrix(List.of(dates), buckets);
+    }
+
+    public static RollRateMatrix between(DpdBuckets buckets, List<LocalDate> dates) {
+        return new RollRateMatrix(dates, buckets);
+    }
+
+    public List<LocalDate> getDates() {
+        return dates;
+    }
+
+    public DpdBuckets getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * Number of transitions, one less than the number of dates.
+     */
+    public int transitionCount() {
+        return days.length - 1;
+    }
+
+    /**
+     * Evaluates a portfolio loan, as accepted by {@link PortfolioDpdCalculator}, at every date and
+     * counts its transitions. Thread-safe.
+     */
+    public void add(Object loan) {
+        addAndGetLast(loan);
+    }
+
+    /**
+     * Adds every loan of the collection on the engine, in chunks of its chunk size, and returns once
+     * all are counted.
+     */
+    public void addAll(Collection<?> loans, PortfolioDpdEngine engine) {
+        addAll(loans, engine, (loan, dpd) -> {
+        });
+    }
+
+    /**
+     * Same as {@link #addAll(Collection, PortfolioDpdEngine)}, also handing every loan's DPD as of the
+     * last date to the sink, for instance to fill {@link DpdBuckets} for that date in the same pass.
+     */
+    public void addAll(Collection<?> loans, PortfolioDpdEngine engine, DpdSink<Object> sink) {
+        engine.calculate(loans, rolls, dates.get(days.length - 1), sink);
+    }
+
+    /**
+     * Counts the loan's transitions and returns its packed DPD as of the last date.
+     */
+    private long addAndGetLast(Object loan) {
+        Product product = Product.of(loan);
+        int offset = product.ordinal() * transitionCount();
+        int previousBucket = -1;
+        long dpd = 0;
+        Scratch scratch = product == Product.INSTALLMENT ? SCRATCH.get().load((InstallmentLoanV3) loan) : null;
+        for (int i = 0; i < days.length; i++) {
+            dpd = calculate(product, loan, i, scratch);
+            int bucket = buckets.bucketOf(DpdKernel.latestDpd(dpd));
+            if (i > 0) {
+                counts[((offset + i - 1) * bucketCount + previousBucket) * bucketCount + bucket].increment();
+            }
+            previousBucket = bucket;
+        }
+        return dpd;
+    }
+
+    /**
+     * Loans of the product in bucket {@code fromBucket} at the transition's first date and in
+     * {@code toBucket} at its second date.
+     */
+    public long count(Product product, int transition, int fromBucket, int toBucket) {
+        return counts[index(product, transition, fromBucket, toBucket)].sum();
+    }
+
+    /**
+     * Same as {@link #count(Product, int, int, int)} over every product.
+     */
+    public long count(int transition, int fromBucket, int toBucket) {
+        long sum = 0;
+        for (Product product : PRODUCTS) {
+            sum += count(product, transition, fromBucket, toBucket);
+        }
+        return sum;
+    }
+
+    /**
+     * Share of the product's loans in {@code fromBucket} at the transition's first date that are in
+     * {@code toBucket} at its second date, 0 when the bucket was empty.
+     */
+    public double rollRate(Product product, int transition, int fromBucket, int toBucket) {
+        long from = 0;
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            from += count(product, transition, fromBucket, bucket);
+        }
+        return from == 0 ? 0 : (double) count(product, transition, fromBucket, toBucket) / from;
+    }
+
+    /**
+     * Resets every count, for reuse across runs. Not atomic with respect to concurrent {@link #add}.
+     */
+    public void reset() {
+        for (LongAdder count : counts) {
+            count.reset();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private long calculate(Product product, Object loan, int date, Scratch scratch) {
+        return switch (product) {
+            case INSTALLMENT -> scratch.calculate(days[date]);
+            case LUMPSUM -> pack(lumpsum.calculate((LumpsumLoan) loan, dates.get(date)));
+            case PARTIAL_LUMPSUM -> pack(partialLumpsum.calculate((List<PartialLumpsumLoan>) loan, dates.get(date)));
+        };
+    }
+
+    private static long pack(Dpd dpd) {
+        return DpdKernel.pack(dpd.getLatestDpd(), dpd.getMaxDpd());
+    }
+
+    private int index(Product product, int transition, int fromBucket, int toBucket) {
+        if (transition < 0 || transition >= transitionCount()) {
+            throw new IndexOutOfBoundsException("transition " + transition + " of " + transitionCount());
+        }
+        return ((product.ordinal() * transitionCount() + transition) * bucketCount + fromBucket) * bucketCount + toBucket;
+    }
+
+    /**
+     * Thread-confined rows of the loan being added and its trend as of the last date evaluated.
+     */
+    private static final class Scratch {
+        private final InstallmentRowBuffer rows = new InstallmentRowBuffer();
+        private final DpdTrend trend = new DpdTrend();
+        private boolean writtenOff;
+        private boolean trendValid;
+
+        Scratch load(InstallmentLoanV3 loan) {
+            PrimitiveDpdCalculator.load(loan, rows);
+            writtenOff = loan.getStatus() == Status.WRITE_OFF;
+            trendValid = false;
+            return this;
+        }
+
+        /**
+         * Packed DPD on the day, which must not be before the previous day asked for this loan.
+         */
+        long calculate(int day) {
+            if (!trendValid || day > trend.validUntilDay) {
+                DpdKernel.trend(rows, 0, rows.size(), writtenOff, day, trend);
+                trendValid = true;
+            }
+            return trend.pack(day);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.alami.dpd;
+
+/**
+ * Branch-free scalar {@link LumpsumKernel}, simple enough for the JIT to auto-vectorize the loop.
+ */
+final class ScalarLumpsumKernel implements LumpsumKernel {
+    /**
+     * -1 for statuses that are not paid, 0 for paid ones, indexed by status ordinal + 1 so that
+     * {@link InstallmentRows#NO_STATUS} maps to index 0.
+     */
+    static final int[] NOT_PAID_MASKS = notPaidMasks();
+
+    @Override
+    public void calculate(int[] maturityDays, byte[] statuses, int from, int to, int calculationDay, int[] dpd) {
+        for (int i = from; i < to; i++) {
+            dpd[i] = Math.max(calculationDay - maturityDays[i], 0) & NOT_PAID_MASKS[statuses[i] + 1];
+        }
+    }
+
+    private static int[] notPaidMasks() {
+        Status[] statuses = Status.values();
+        int[] masks = new int[statuses.length + 1];
+        masks[0] = -1;
+        for (Status status : statuses) {
+            masks[status.ordinal() + 1] = Lumpsum.PAID_STATUSES.contains(status) ? 0 : -1;
+        }
+        return masks;
+    }
+}
@@ -0,0 +1,229 @@
+package com.alami.dpd;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Size-bounded LRU map split into independently locked segments.
+ *
+ * <p>Each segment is an access-ordered {@link LinkedHashMap} that evicts its least recently used
+ * entry once it holds {@code maximumSize / segments} entries, so eviction is LRU per segment and
+ * approximately LRU overall. A {@link #weighed weighed} cache bounds the total weight of its keys
+ * instead, evicting as many entries as it takes. Threads only contend when their keys land in the
+ * same segment. Keys are spread over segments by a stripe function. A {@link #grouped grouped} cache
+ * also indexes its keys by group within their segment, so that {@link #removeGroup} drops the keys of
+ * one group without scanning the segment. Hits, misses and evictions are counted in {@link LongAdder}s.
+ */
+final class StripedLruCache<K, V> {
+    private final Segment<K, V>[] segments;
+    private final int mask;
+    private final ToIntFunction<? super K> stripe;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param segmentCount rounded up to a power of two
+     * @param stripe       hash that picks the segment of a key
+     */
+    StripedLruCache(long maximumSize, int segmentCount, ToIntFunction<? super K> stripe) {
+        this(maximumSize, segmentCount, stripe, null, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private StripedLruCache(long maximumSize, int segmentCount, ToIntFunction<? super K> stripe,
+                            Function<? super K, ?> group, ToIntFunction<? super K> weigher) {
+        if (maximumSize <= 0 || segmentCount <= 0) {
+            throw new IllegalArgumentException("maximumSize and segments must be positive: " + maximumSize + ", " + segmentCount);
+        }
+        int count = segmentCount == 1 ? 1 : Integer.highestOneBit(segmentCount - 1) << 1;
+        int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (maximumSize + count - 1) / count));
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(capacity, evictions, group, weigher);
+        }
+        this.mask = count - 1;
+        this.stripe = stripe;
+    }
+
+    /**
+     * Cache whose keys are striped and indexed by {@code group}; the groups' {@link Object#hashCode()}
+     * picks the segment.
+     */
+    static <K, V> StripedLruCache<K, V> grouped(long maximumSize, int segmentCount, Function<? super K, ?> group) {
+        return new StripedLruCache<>(maximumSize, segmentCount, key -> group.apply(key).hashCode(), group, null);
+    }
+
+    /**
+     * Cache bounded by the total {@code weigher} weight of its keys, such as their size in bytes,
+     * instead of their number. A key heavier than a segment's share is still kept, alone.
+     */
+    static <K, V> StripedLruCache<K, V> weighed(long maximumWeight, int segmentCount, ToIntFunction<? super K> stripe,
+                                               ToIntFunction<? super K> weigher) {
+        return new StripedLruCache<>(maximumWeight, segmentCount, stripe, null, weigher);
+    }
+
+    V get(K key) {
+        Segment<K, V> segment = segmentFor(stripe.applyAsInt(key));
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        (value != null ? hits : misses).increment();
+        return value;
+    }
+
+    void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(stripe.applyAsInt(key));
+        synchronized (segment) {
+            boolean added = segment.put(key, value) == null;
+            if (added && segment.group != null) {
+                segment.groups.computeIfAbsent(segment.group.apply(key), group -> new HashSet<>()).add(key);
+            }
+            if (added && segment.weigher != null) {
+                segment.weight += segment.weigher.applyAsInt(key);
+                segment.evictOverweight();
+            }
+        }
+    }
+
+    /**
+     * Returns the cached value or loads and caches it. The loader runs outside of the segment lock,
+     * so a slow load never blocks other keys; two threads missing the same key may both load it.
+     */
+    V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Removes every key of the group from a {@link #grouped grouped} cache, visiting only those keys.
+     *
+     * @return the number of removed entries
+     */
+    int removeGroup(Object group) {
+        Segment<K, V> segment = segmentFor(group.hashCode());
+        synchronized (segment) {
+            Set<K> keys = segment.groups.remove(group);
+            if (keys == null) {
+                return 0;
+            }
+            segment.keySet().removeAll(keys);
+            return keys.size();
+        }
+    }
+
+    void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+                segment.weight = 0;
+                if (segment.groups != null) {
+                    segment.groups.clear();
+                }
+            }
+        }
+    }
+
+    long size() {
+        long size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Total weight of the keys of a {@link #weighed weighed} cache, 0 for other caches.
+     */
+    long weight() {
+        long weight = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    long hitCount() {
+        return hits.sum();
+    }
+
+    long missCount() {
+        return misses.sum();
+    }
+
+    long evictionCount() {
+        return evictions.sum();
+    }
+
+    private Segment<K, V> segmentFor(int hash) {
+        return segments[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final transient LongAdder evictions;
+        private final transient Function<? super K, ?> group;
+        private final transient Map<Object, Set<K>> groups;
+        private final transient ToIntFunction<? super K> weigher;
+        private long weight;
+
+        Segment(int capacity, LongAdder evictions, Function<? super K, ?> group, ToIntFunction<? super K> weigher) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+            this.group = group;
+            this.groups = group == null ? null : new HashMap<>();
+            this.weigher = weigher;
+        }
+
+        /**
+         * Evicts least recently used entries until the weight fits, keeping at least the newest one.
+         */
+        void evictOverweight() {
+            Iterator<K> keys = keySet().iterator();
+            while (weight > capacity && size() > 1) {
+                K key = keys.next();
+                weight -= weigher.applyAsInt(key);
+                keys.remove();
+                evictions.increment();
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (weigher == null && size() > capacity) {
+                evictions.increment();
+                if (groups != null) {
+                    Object eldestGroup = group.apply(eldest.getKey());
+                    Set<K> keys = groups.get(eldestGroup);
+                    keys.remove(eldest.getKey());
+                    if (keys.isEmpty()) {
+                        groups.remove(eldestGroup);
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Vintage curves: for each disbursement month, the share of loans whose maxDpd has reached each
+ * threshold by each month on book.
+ *
+ * <p>Each loan is looked at once. Its first crossing date of every threshold is derived from its
+ * schedule instead of being searched for with per-date calculations: an {@link InstallmentLoanV3} is
+ * walked from its disbursement date up to the observation date in one {@link DpdHistory} event sweep,
+ * segment by segment, and since maxDpd never decreases the first day of a segment on which it reaches
+ * a threshold is the crossing. An unpaid lumpsum loan crosses {@code t} on its maturity date plus
+ * {@code t}, a paid one never; a partial lumpsum loan follows its latest tranche.
+ *
+ * <p>{@link #calculate} runs on a {@link PortfolioDpdEngine}, in chunks of its chunk size. Loans are
+ * counted into per-thread cohort x month-on-book matrices that are merged once all are done, and every
+ * loan's DPD as of the observation date can be handed to a {@link DpdSink} on the way. Crossings after
+ * the observation date or beyond {@code maxMonthsOnBook} are not counted. Instances are immutable and
+ * thread-safe.
+ */
+@Getter
+public class VintageAnalysis {
+    public static final int DEFAULT_MAX_MONTHS_ON_BOOK = 60;
+    private static final int[] STANDARD_THRESHOLDS = {30, 60, 90};
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final int[] thresholds;
+    private final LocalDate observationDate;
+    private final int maxMonthsOnBook;
+    private final PortfolioDpdEngine engine;
+
+    /**
+     * @param thresholds      strictly increasing maxDpd thresholds, 30, 60 and 90 when null
+     * @param observationDate last day crossings are looked for
+     * @param maxMonthsOnBook last month on book of the curves, {@link #DEFAULT_MAX_MONTHS_ON_BOOK} when 0
+     * @param engine          engine to run on, a default {@link PortfolioDpdEngine} when null
+     */
+    @Builder
+    private VintageAnalysis(int[] thresholds, LocalDate observationDate, int maxMonthsOnBook, PortfolioDpdEngine engine) {
+        if (thresholds == null) {
+            thresholds = STANDARD_THRESHOLDS;
+        }
+        if (thresholds.length == 0) {
+            throw new IllegalArgumentException("at least one threshold is required");
+        }
+        for (int i = 0; i < thresholds.length; i++) {
+            if (thresholds[i] <= 0 || (i > 0 && thresholds[i - 1] >= thresholds[i])) {
+                throw new IllegalArgumentException("thresholds must be positive and strictly increasing: "
+                        + Arrays.toString(thresholds));
+            }
+        }
+        if (maxMonthsOnBook < 0) {
+            throw new IllegalArgumentException("maxMonthsOnBook must not be negative: " + maxMonthsOnBook);
+        }
+        this.thresholds = thresholds.clone();
+        this.observationDate = observationDate;
+        this.maxMonthsOnBook = maxMonthsOnBook > 0 ? maxMonthsOnBook : DEFAULT_MAX_MONTHS_ON_BOOK;
+        this.engine = engine != null ? engine : PortfolioDpdEngine.builder().build();
+    }
+
+    /**
+     * Curves of portfolio loans, as accepted by {@link PortfolioDpdCalculator}, disbursed on the dates
+     * the given function returns.
+     */
+    public <L> VintageCurves calculate(Collection<? extends L> loans, Function<? super L, LocalDate> disbursementDateOf) {
+        return calculate(loans, disbursementDateOf, (loan, dpd) -> {
+        });
+    }
+
+    /**
+     * Same as {@link #calculate(Collection, Function)}, also handing every loan's DPD as of the
+     * observation date to the sink.
+     */
+    public <L> VintageCurves calculate(Collection<? extends L> loans, Function<? super L, LocalDate> disbursementDateOf,
+                                       DpdSink<? super L> sink) {
+        Map<Thread, Matrices> perThread = new ConcurrentHashMap<>();
+        DpdCalculator<L> calculator = (loan, calculationDate) -> perThread
+                .computeIfAbsent(Thread.currentThread(), thread -> new Matrices())
+                .add(loan, disbursementDateOf.apply(loan));
+        engine.calculate(loans, calculator, observationDate, sink);
+
+        Matrices matrices = new Matrices();
+        perThread.values().forEach(matrices::merge);
+        return new VintageCurves(thresholds, observationDate, maxMonthsOnBook, matrices.cohorts);
+    }
+
+    /**
+     * First days on which the loan's maxDpd reaches each threshold, {@link InstallmentRows#NO_DATE} for
+     * thresholds not reached by the observation date. Returns the loan's packed DPD as of the
+     * observation date.
+     */
+    @SuppressWarnings("unchecked")
+    long firstCrossingDays(Object loan, int disbursementDay, int[] crossingDays) {
+        Arrays.fill(crossingDays, InstallmentRows.NO_DATE);
+        int observationDay = (int) observationDate.toEpochDay();
+        switch (Product.of(loan)) {
+            case INSTALLMENT -> {
+                return SCRATCH.get().firstCrossingDays((InstallmentLoanV3) loan, disbursementDay, observationDay,
+                        thresholds, crossingDays);
+            }
+            case LUMPSUM -> {
+                LumpsumLoan lumpsumLoan = (LumpsumLoan) loan;
+                if (!Lumpsum.PAID_STATUSES.contains(lumpsumLoan.getStatus())) {
+                    crossFrom((int) lumpsumLoan.getMaturityDate().toEpochDay(), observationDay, crossingDays);
+                }
+            }
+            case PARTIAL_LUMPSUM -> {
+                PartialLumpsumLoan latest = null;
+                for (PartialLumpsumLoan tranche : (List<PartialLumpsumLoan>) loan) {
+                    if (latest == null || tranche.getPeriod() > latest.getPeriod()) {
+                        latest = tranche;
+                    }
+                }
+                if (latest != null) {
+                    crossFrom((int) latest.getMaturityDate().toEpochDay(), observationDay, crossingDays);
+                }
+            }
+        }
+        Dpd dpd = engine.getCalculator().calculate(loan, observationDate);
+        return DpdKernel.pack(dpd.getLatestDpd(), dpd.getMaxDpd());
+    }
+
+    /**
+     * Crossings of a DPD that is {@code day - maturityDay} once positive.
+     */
+    private void crossFrom(int maturityDay, int observationDay, int[] crossingDays) {
+        for (int i = 0; i < thresholds.length; i++) {
+            int day = maturityDay + thresholds[i];
+            if (day <= observationDay) {
+                crossingDays[i] = day;
+            }
+        }
+    }
+
+    /**
+     * Crossing counts by cohort, each {@code thresholds x (maxMonthsOnBook + 1)} counts of first
+     * crossings per month on book followed by the number of loans in the cohort.
+     */
+    private final class Matrices {
+        private final Map<YearMonth, long[]> cohorts = new HashMap<>();
+        private final int[] crossingDays = new int[thresholds.length];
+
+        Dpd add(Object loan, LocalDate disbursementDate) {
+            YearMonth cohort = YearMonth.from(disbursementDate);
+            int months = maxMonthsOnBook + 1;
+            long[] counts = cohorts.computeIfAbsent(cohort, c -> new long[thresholds.length * months + 1]);
+            counts[counts.length - 1]++;
+
+            long dpd = firstCrossingDays(loan, (int) disbursementDate.toEpochDay(), crossingDays);
+            for (int i = 0; i < thresholds.length; i++) {
+                if (crossingDays[i] == InstallmentRows.NO_DATE) {
+                    continue;
+                }
+                long monthOnBook = Math.max(ChronoUnit.MONTHS.between(cohort, YearMonth.from(LocalDate.ofEpochDay(crossingDays[i]))), 0);
+                if (monthOnBook <= maxMonthsOnBook) {
+                    counts[i * months + (int) monthOnBook]++;
+                }
+            }
+            return DpdKernel.toDpd(dpd);
+        }
+
+        Matrices merge(Matrices other) {
+            other.cohorts.forEach((cohort, counts) -> cohorts.merge(cohort, counts, (a, b) -> {
+                for (int i = 0; i < a.length; i++) {
+                    a[i] += b[i];
+                }
+                return a;
+            }));
+            return this;
+        }
+    }
+
+    /**
+     * Thread-confined rows and trend of the installment loan being walked.
+     */
+    private static final class Scratch {
+        private final InstallmentRowBuffer rows = new InstallmentRowBuffer();
+        private final DpdTrend trend = new DpdTrend();
+
+        /**
+         * Sweeps the loan from {@code fromDay} to the observation day and returns its packed DPD there.
+         */
+        long firstCrossingDays(InstallmentLoanV3 loan, int fromDay, int observationDay, int[] thresholds, int[] crossingDays) {
+            PrimitiveDpdCalculator.load(loan, rows);
+            boolean writtenOff = loan.getStatus() == Status.WRITE_OFF;
+            boolean anyMaturity = false;
+            for (int row = 0; row < rows.size() && !anyMaturity; row++) {
+                anyMaturity = rows.maturityDay(row) != InstallmentRows.NO_DATE;
+            }
+            DpdHistory.Sweep sweep = new DpdHistory.Sweep(rows, 0, rows.size());
+            if (fromDay > observationDay) {
+                return sweep.advance(writtenOff, observationDay, trend).pack(observationDay);
+            }
+            int next = 0;
+            int day = fromDay;
+            while (true) {
+                sweep.advance(writtenOff, day, trend);
+                int segmentEnd = Math.min(trend.validUntilDay, observationDay);
+                while (next < thresholds.length) {
+                    int crossingDay = firstDayReaching(thresholds[next], day, segmentEnd);
+                    if (crossingDay == InstallmentRows.NO_DATE) {
+                        break;
+                    }
+                    crossingDays[next++] = crossingDay;
+                }
+                if (trend.validUntilDay >= observationDay) {
+                    return trend.pack(observationDay);
+                }
+                // without maturities maxDpd is 0, or only falls as the day moves away from the write-off date
+                day = anyMaturity ? trend.validUntilDay + 1 : observationDay;
+            }
+        }
+
+        /**
+         * First day of {@code [from, to]} on which the trend's maxDpd reaches the threshold.
+         */
+        private int firstDayReaching(int threshold, int from, int to) {
+            if (trend.maxDpd(from) >= threshold) {
+                return from;
+            }
+            if (trend.maxAgeingBase == DpdTrend.NONE) {
+                return InstallmentRows.NO_DATE;
+            }
+            long day = (long) threshold - trend.maxAgeingBase;
+            return day <= to ? (int) day : InstallmentRows.NO_DATE;
+        }
+    }
+}
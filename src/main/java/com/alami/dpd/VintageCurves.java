@@ -0,0 +1,97 @@
+package com.alami.dpd;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Vintage curves calculated by {@link VintageAnalysis}: per disbursement month, per threshold and per
+ * month on book, how many loans have reached the threshold by then. Month on book 0 is the
+ * disbursement month itself. Immutable.
+ */
+public final class VintageCurves {
+    private final int[] thresholds;
+    private final LocalDate observationDate;
+    private final int maxMonthsOnBook;
+    private final TreeMap<YearMonth, long[]> cohorts;
+
+    VintageCurves(int[] thresholds, LocalDate observationDate, int maxMonthsOnBook, Map<YearMonth, long[]> counts) {
+        this.thresholds = thresholds;
+        this.observationDate = observationDate;
+        this.maxMonthsOnBook = maxMonthsOnBook;
+        this.cohorts = new TreeMap<>();
+        int months = maxMonthsOnBook + 1;
+        counts.forEach((cohort, cohortCounts) -> {
+            long[] cumulative = cohortCounts.clone();
+            for (int i = 0; i < thresholds.length; i++) {
+                for (int month = 1; month < months; month++) {
+                    cumulative[i * months + month] += cumulative[i * months + month - 1];
+                }
+            }
+            cohorts.put(cohort, cumulative);
+        });
+    }
+
+    /**
+     * Disbursement months with at least one loan, in order.
+     */
+    public List<YearMonth> cohorts() {
+        return Collections.unmodifiableList(new ArrayList<>(cohorts.keySet()));
+    }
+
+    public int[] thresholds() {
+        return thresholds.clone();
+    }
+
+    public long loanCount(YearMonth cohort) {
+        long[] counts = cohorts.get(cohort);
+        return counts == null ? 0 : counts[counts.length - 1];
+    }
+
+    /**
+     * Last month on book of the cohort that the observation date covers, at most {@code maxMonthsOnBook}.
+     */
+    public int observedMonthsOnBook(YearMonth cohort) {
+        return (int) Math.min(Math.max(ChronoUnit.MONTHS.between(cohort, YearMonth.from(observationDate)), -1), maxMonthsOnBook);
+    }
+
+    /**
+     * Loans of the cohort whose maxDpd reached the threshold by the given month on book.
+     */
+    public long reachedCount(YearMonth cohort, int threshold, int monthOnBook) {
+        long[] counts = cohorts.get(cohort);
+        if (counts == null) {
+            return 0;
+        }
+        if (monthOnBook < 0 || monthOnBook > maxMonthsOnBook) {
+            throw new IndexOutOfBoundsException("month on book " + monthOnBook + " of 0.." + maxMonthsOnBook);
+        }
+        return counts[thresholdIndex(threshold) * (maxMonthsOnBook + 1) + monthOnBook];
+    }
+
+    /**
+     * Share of the cohort's loans whose maxDpd reached the threshold by the given month on book,
+     * {@code NaN} when the cohort is empty or the month on book is after the observation date.
+     */
+    public double share(YearMonth cohort, int threshold, int monthOnBook) {
+        long loans = loanCount(cohort);
+        if (loans == 0 || monthOnBook > observedMonthsOnBook(cohort)) {
+            return Double.NaN;
+        }
+        return (double) reachedCount(cohort, threshold, monthOnBook) / loans;
+    }
+
+    private int thresholdIndex(int threshold) {
+        int index = Arrays.binarySearch(thresholds, threshold);
+        if (index < 0) {
+            throw new IllegalArgumentException("not a configured threshold: " + threshold);
+        }
+        return index;
+    }
+}
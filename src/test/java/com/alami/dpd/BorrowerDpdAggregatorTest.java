@@ -0,0 +1,95 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class BorrowerDpdAggregatorTest {
+    private static final LocalDate CALCULATION_DATE = LocalDate.parse("2025-04-30");
+    private static final int BORROWERS = 700;
+
+    private final Map<Object, Long> borrowerOf = new IdentityHashMap<>();
+    private final List<Object> loans = loans(new Random(17), 5_000);
+    private final Map<Long, Dpd> expected = expected();
+
+    @Test
+    @DisplayName("hash aggregation gives every borrower the worst DPD of its loans")
+    void unsorted() {
+        BorrowerDpdAggregator aggregator = BorrowerDpdAggregator.builder()
+                .engine(PortfolioDpdEngine.builder().chunkSize(64).build())
+                .build();
+
+        Map<Long, Dpd> results = aggregator.aggregate(loans, borrowerOf::get, CALCULATION_DATE);
+
+        assertSameDpd(results);
+    }
+
+    @Test
+    @DisplayName("sorted merge emits each borrower exactly once with the worst DPD of its loans")
+    void sorted() {
+        List<Object> sortedLoans = new ArrayList<>(loans);
+        sortedLoans.sort(Comparator.comparing(borrowerOf::get));
+        BorrowerDpdAggregator aggregator = BorrowerDpdAggregator.builder()
+                .engine(PortfolioDpdEngine.builder().chunkSize(16).build())
+                .build();
+
+        Map<Long, Dpd> results = new ConcurrentHashMap<>();
+        AtomicInteger calls = new AtomicInteger();
+        aggregator.aggregateSorted(sortedLoans, borrowerOf::get, CALCULATION_DATE, (borrower, dpd) -> {
+            calls.incrementAndGet();
+            results.put(borrower, dpd);
+        });
+
+        assertEquals(expected.size(), calls.get());
+        assertSameDpd(results);
+    }
+
+    private void assertSameDpd(Map<Long, Dpd> results) {
+        assertEquals(expected.size(), results.size());
+        expected.forEach((borrower, dpd) -> {
+            assertEquals(dpd.getLatestDpd(), results.get(borrower).getLatestDpd(), "borrower " + borrower);
+            assertEquals(dpd.getMaxDpd(), results.get(borrower).getMaxDpd(), "borrower " + borrower);
+        });
+    }
+
+    private Map<Long, Dpd> expected() {
+        Map<Long, Dpd> worst = new HashMap<>();
+        for (Object loan : loans) {
+            Dpd dpd = loan instanceof InstallmentLoanV3 installmentLoan
+                    ? installmentLoan.calculateLatestDpd(CALCULATION_DATE)
+                    : new Lumpsum().calculate((LumpsumLoan) loan, CALCULATION_DATE);
+            worst.merge(borrowerOf.get(loan), dpd, (a, b) -> Dpd.builder()
+                    .latestDpd(Math.max(a.getLatestDpd(), b.getLatestDpd()))
+                    .maxDpd(Math.max(a.getMaxDpd(), b.getMaxDpd()))
+                    .build());
+        }
+        return worst;
+    }
+
+    private List<Object> loans(Random random, int size) {
+        List<Object> portfolio = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Object loan = random.nextBoolean()
+                    ? RandomSchedules.loan(random)
+                    : LumpsumLoan.builder()
+                            .maturityDate(CALCULATION_DATE.minusDays(random.nextInt(200) - 30))
+                            .status(random.nextBoolean() ? Status.DISBURSEMENT : Status.REPAYMENT_SUCCESS)
+                            .build();
+            portfolio.add(loan);
+            borrowerOf.put(loan, (long) random.nextInt(BORROWERS));
+        }
+        return portfolio;
+    }
+}
@@ -0,0 +1,179 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ColumnarScheduleTest {
+
+    @Test
+    @DisplayName("primitive calculation matches InstallmentLoanV3.calculateLatestDpd")
+    void matchesInstallmentLoanV3() {
+        Random random = new Random(42);
+        List<InstallmentLoanV3> loans = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            loans.add(RandomSchedules.loan(random));
+        }
+        ColumnarSchedule schedule = ColumnarSchedule.of(loans);
+
+        for (int loan = 0; loan < loans.size(); loan++) {
+            for (int i = 0; i < 10; i++) {
+                LocalDate calculationDate = RandomSchedules.calculationDate(random);
+                Dpd expected = loans.get(loan).calculateLatestDpd(calculationDate);
+                Dpd actual = schedule.calculateLatestDpd(loan, calculationDate);
+                assertEquals(expected.getLatestDpd(), actual.getLatestDpd(), "latestDpd of loan " + loan + " at " + calculationDate);
+                assertEquals(expected.getMaxDpd(), actual.getMaxDpd(), "maxDpd of loan " + loan + " at " + calculationDate);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("calculateAll fills one latestDpd and maxDpd per loan")
+    void calculateAll() {
+        Random random = new Random(7);
+        List<InstallmentLoanV3> loans = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            loans.add(RandomSchedules.loan(random));
+        }
+        ColumnarSchedule schedule = ColumnarSchedule.of(loans);
+        LocalDate calculationDate = LocalDate.parse("2025-03-01");
+
+        int[] latestDpd = new int[loans.size()];
+        int[] maxDpd = new int[loans.size()];
+        schedule.calculateAll(calculationDate, latestDpd, maxDpd);
+
+        for (int loan = 0; loan < loans.size(); loan++) {
+            Dpd expected = loans.get(loan).calculateLatestDpd(calculationDate);
+            assertEquals(expected.getLatestDpd(), latestDpd[loan]);
+            assertEquals(expected.getMaxDpd(), maxDpd[loan]);
+        }
+    }
+
+    @Test
+    @DisplayName("round trip to InstallmentV3 keeps every field, rows ordered by period")
+    void roundTrip() {
+        InstallmentV3 period2 = InstallmentV3.builder()
+                .maturityDate(LocalDate.parse("2025-01-20"))
+                .amount(new BigDecimal("50000000.25"))
+                .paidAmount(BigDecimal.valueOf(25_000_000))
+                .repaymentStatus(RepaymentStatus.PARTIAL_REPAYMENT)
+                .repaymentDate(LocalDate.parse("2025-01-24"))
+                .period(2)
+                .build();
+        InstallmentV3 period1 = InstallmentV3.builder()
+                .maturityDate(LocalDate.parse("2024-12-20"))
+                .amount(BigDecimal.ZERO)
+                .repaymentStatus(RepaymentStatus.GRACE_PERIOD)
+                .period(1)
+                .build();
+        InstallmentV3 period3 = InstallmentV3.builder()
+                .repaymentStatus(RepaymentStatus.WRITE_OFF)
+                .writtenOfDate(LocalDate.parse("2025-08-01"))
+                .period(3)
+                .build();
+
+        ColumnarSchedule schedule = ColumnarSchedule.of(List.of(period2, period1, period3), Status.WRITE_OFF);
+        InstallmentLoanV3 loan = schedule.loan(0);
+
+        assertEquals(Status.WRITE_OFF, loan.getStatus());
+        List<InstallmentV3> installments = loan.getInstallments();
+        assertEquals(3, installments.size());
+        assertInstallmentEquals(period1, installments.get(0));
+        assertInstallmentEquals(period2, installments.get(1));
+        assertInstallmentEquals(period3, installments.get(2));
+    }
+
+    @Test
+    @DisplayName("amount with more decimals than the scale is rejected")
+    void inexactAmount() {
+        InstallmentV3 installment = InstallmentV3.builder()
+                .maturityDate(LocalDate.parse("2024-12-20"))
+                .amount(new BigDecimal("1.005"))
+                .repaymentStatus(RepaymentStatus.NOT_PAID)
+                .period(1)
+                .build();
+
+        assertThrows(ArithmeticException.class, () -> ColumnarSchedule.of(List.of(installment), Status.DISBURSEMENT));
+    }
+
+    @Test
+    @DisplayName("paid tolerance counts an almost fully repaid installment as paid")
+    void paidTolerance() {
+        InstallmentV3 installment = InstallmentV3.builder()
+                .maturityDate(LocalDate.parse("2025-01-10"))
+                .amount(new BigDecimal("1000000.00"))
+                .paidAmount(new BigDecimal("999999.50"))
+                .repaymentStatus(RepaymentStatus.PARTIAL_REPAYMENT)
+                .repaymentDate(LocalDate.parse("2025-01-20"))
+                .period(1)
+                .build();
+        LocalDate calculationDate = LocalDate.parse("2025-02-14");
+
+        ColumnarSchedule strict = ColumnarSchedule.builder(2).add(List.of(installment), Status.DISBURSEMENT).build();
+        ColumnarSchedule tolerant = ColumnarSchedule.builder(2)
+                .paidTolerance(new BigDecimal("1.00"))
+                .add(List.of(installment), Status.DISBURSEMENT)
+                .build();
+
+        assertEquals(35, strict.calculateLatestDpd(0, calculationDate).getLatestDpd());
+        assertEquals(10, tolerant.calculateLatestDpd(0, calculationDate).getLatestDpd());
+        assertEquals(10, tolerant.calculateLatestDpd(0, calculationDate).getMaxDpd());
+        assertEquals(RepaymentStatus.PARTIAL_REPAYMENT, tolerant.installments(0).get(0).getRepaymentStatus());
+        assertThrows(IllegalArgumentException.class, () -> ColumnarSchedule.builder(2).paidTolerance(new BigDecimal("-1")));
+    }
+
+    @Test
+    @DisplayName("paid tolerance takes a NOT_PAID installment without repayment date as paid on maturity")
+    void paidToleranceWithoutRepaymentDate() {
+        InstallmentV3 installment = InstallmentV3.builder()
+                .maturityDate(LocalDate.parse("2025-01-10"))
+                .amount(new BigDecimal("1000"))
+                .paidAmount(new BigDecimal("999"))
+                .repaymentStatus(RepaymentStatus.NOT_PAID)
+                .period(1)
+                .build();
+
+        ColumnarSchedule tolerant = ColumnarSchedule.builder(2)
+                .paidTolerance(new BigDecimal("5"))
+                .add(List.of(installment), Status.DISBURSEMENT)
+                .build();
+
+        for (LocalDate calculationDate : List.of(LocalDate.parse("2025-01-20"), LocalDate.parse("2025-06-01"))) {
+            Dpd dpd = tolerant.calculateLatestDpd(0, calculationDate);
+            assertEquals(0, dpd.getLatestDpd());
+            assertEquals(0, dpd.getMaxDpd());
+        }
+        assertEquals(RepaymentStatus.PAID.ordinal(), tolerant.repaymentStatus(0));
+        assertEquals(tolerant.maturityDay(0), tolerant.repaymentDay(0));
+        InstallmentV3 recorded = tolerant.installments(0).get(0);
+        assertEquals(RepaymentStatus.NOT_PAID, recorded.getRepaymentStatus());
+        assertNull(recorded.getRepaymentDate());
+    }
+
+    private static void assertInstallmentEquals(InstallmentV3 expected, InstallmentV3 actual) {
+        assertEquals(expected.getMaturityDate(), actual.getMaturityDate());
+        assertAmountEquals(expected.getAmount(), actual.getAmount());
+        assertAmountEquals(expected.getPaidAmount(), actual.getPaidAmount());
+        assertEquals(expected.getRepaymentStatus(), actual.getRepaymentStatus());
+        assertEquals(expected.getRepaymentDate(), actual.getRepaymentDate());
+        assertEquals(expected.getWrittenOfDate(), actual.getWrittenOfDate());
+        assertEquals(expected.getPeriod(), actual.getPeriod());
+    }
+
+    private static void assertAmountEquals(BigDecimal expected, BigDecimal actual) {
+        if (expected == null || actual == null) {
+            assertEquals(expected, actual);
+        } else {
+            assertEquals(0, expected.compareTo(actual), expected + " != " + actual);
+        }
+    }
+}
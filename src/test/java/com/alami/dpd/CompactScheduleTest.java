@@ -0,0 +1,130 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class CompactScheduleTest {
+
+    @Test
+    @DisplayName("compact schedule keeps every row and gives the same DPD as InstallmentLoanV3.calculateLatestDpd")
+    void matchesInstallmentLoanV3() {
+        Random random = new Random(24);
+        for (int i = 0; i < 1_000; i++) {
+            InstallmentLoanV3 loan = RandomSchedules.loan(random);
+            ColumnarSchedule columnar = ColumnarSchedule.of(List.of(loan));
+            CompactSchedule compact = CompactSchedule.of(loan);
+
+            assertEquals(columnar.rowCount(), compact.rowCount());
+            assertEquals(loan.getStatus(), compact.status());
+            for (int row = 0; row < compact.rowCount(); row++) {
+                assertEquals(columnar.period(row), compact.period(row));
+                assertEquals(columnar.maturityDay(row), compact.maturityDay(row));
+                assertEquals(columnar.repaymentDay(row), compact.repaymentDay(row));
+                assertEquals(columnar.writtenOffDay(row), compact.writtenOffDay(row));
+                assertEquals(columnar.repaymentStatus(row), compact.repaymentStatus(row));
+                assertEquals(columnar.amount(row), compact.amount(row));
+                assertEquals(columnar.paidAmount(row), compact.paidAmount(row));
+            }
+            for (int d = 0; d < 20; d++) {
+                LocalDate calculationDate = RandomSchedules.calculationDate(random);
+                Dpd expected = loan.calculateLatestDpd(calculationDate);
+                Dpd actual = compact.calculateLatestDpd(calculationDate);
+                assertEquals(expected.getLatestDpd(), actual.getLatestDpd(), "loan " + i + " at " + calculationDate);
+                assertEquals(expected.getMaxDpd(), actual.getMaxDpd(), "loan " + i + " at " + calculationDate);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("empty and single-row schedules encode and give the same DPD as InstallmentLoanV3.calculateLatestDpd")
+    void emptyAndSingleRow() {
+        LocalDate maturityDate = LocalDate.parse("2025-01-10");
+        InstallmentV3 installment = InstallmentV3.builder()
+                .maturityDate(maturityDate)
+                .amount(BigDecimal.valueOf(1_000_000))
+                .repaymentStatus(RepaymentStatus.NOT_PAID)
+                .period(1)
+                .build();
+        for (List<InstallmentV3> installments : List.of(List.<InstallmentV3>of(), List.of(installment))) {
+            InstallmentLoanV3 loan = InstallmentLoanV3.builder().installments(installments).status(Status.DISBURSEMENT).build();
+            CompactSchedule compact = CompactSchedule.of(loan);
+
+            assertEquals(installments.size(), compact.rowCount());
+            for (LocalDate date = maturityDate.minusDays(2); date.isBefore(maturityDate.plusDays(3)); date = date.plusDays(1)) {
+                Dpd expected = loan.calculateLatestDpd(date);
+                assertEquals(expected.getLatestDpd(), compact.calculateLatestDpd(date).getLatestDpd());
+                assertEquals(expected.getMaxDpd(), compact.calculateLatestDpd(date).getMaxDpd());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("irregular delta-encoded columns read the same in order, backwards and at random")
+    void deltaCursor() {
+        Random random = new Random(25);
+        int[] values = new int[200];
+        long[] longs = new long[values.length];
+        for (int row = 0; row < values.length; row++) {
+            values[row] = random.nextInt(1_000_000) - 500_000;
+            longs[row] = random.nextLong();
+        }
+        IntColumn column = IntColumn.encode(values, false);
+        LongColumn longColumn = LongColumn.encode(longs);
+        IntColumn.Cursor cursor = column.cursor();
+        IntColumn.Cursor longCursor = longColumn.cursor();
+        assertTrue(cursor != null && longCursor != null, "delta encoding expected");
+        for (int row = 0; row < values.length; row++) {
+            assertEquals(values[row], column.get(row, cursor));
+            assertEquals(longs[row], longColumn.get(row, longCursor));
+        }
+        for (int row = values.length - 1; row >= 0; row--) {
+            assertEquals(values[row], column.get(row, cursor));
+            assertEquals(longs[row], longColumn.get(row, longCursor));
+        }
+        for (int i = 0; i < 1_000; i++) {
+            int row = random.nextInt(values.length);
+            assertEquals(values[row], column.get(row, cursor));
+            assertEquals(longs[row], longColumn.get(row, longCursor));
+        }
+    }
+
+    @Test
+    @DisplayName("regular 30-year monthly schedule is stored as its rule plus exceptions")
+    void regularSchedule() {
+        LocalDate firstMaturityDate = LocalDate.parse("2024-01-31");
+        List<InstallmentV3> installments = new ArrayList<>();
+        for (int period = 1; period <= 360; period++) {
+            LocalDate maturityDate = firstMaturityDate.plusMonths(period - 1);
+            boolean paid = period <= 20;
+            installments.add(InstallmentV3.builder()
+                    .maturityDate(maturityDate)
+                    .amount(BigDecimal.valueOf(2_500_000))
+                    .paidAmount(paid ? BigDecimal.valueOf(2_500_000) : BigDecimal.ZERO)
+                    .repaymentStatus(paid ? RepaymentStatus.PAID : RepaymentStatus.NOT_PAID)
+                    .repaymentDate(paid ? maturityDate.plusDays(period % 4) : null)
+                    .period(period)
+                    .build());
+        }
+        InstallmentLoanV3 loan = InstallmentLoanV3.builder().installments(installments).status(Status.DISBURSEMENT).build();
+
+        CompactSchedule compact = CompactSchedule.of(loan);
+
+        int columnarBytes = 360 * (4 * Integer.BYTES + 2 * Long.BYTES + 1);
+        assertTrue(compact.encodedBytes() * 10 < columnarBytes, compact.encodedBytes() + " bytes");
+        LocalDate calculationDate = LocalDate.parse("2025-12-15");
+        Dpd expected = loan.calculateLatestDpd(calculationDate);
+        assertEquals(expected.getLatestDpd(), compact.calculateLatestDpd(calculationDate).getLatestDpd());
+        assertEquals(expected.getMaxDpd(), compact.calculateLatestDpd(calculationDate).getMaxDpd());
+        assertEquals(EpochDays.of(LocalDate.parse("2024-02-29")), compact.maturityDay(1));
+        assertEquals(EpochDays.of(LocalDate.parse("2053-12-31")), compact.maturityDay(359));
+    }
+}
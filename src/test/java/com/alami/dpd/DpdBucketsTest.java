@@ -0,0 +1,114 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class DpdBucketsTest {
+    private static final LocalDate CALCULATION_DATE = LocalDate.parse("2025-03-15");
+
+    @Test
+    @DisplayName("standard buckets and labels")
+    void standardBuckets() {
+        DpdBuckets buckets = DpdBuckets.standard();
+
+        assertEquals(5, buckets.bucketCount());
+        assertEquals(0, buckets.bucketOf(-3));
+        assertEquals(0, buckets.bucketOf(0));
+        assertEquals(1, buckets.bucketOf(1));
+        assertEquals(1, buckets.bucketOf(30));
+        assertEquals(2, buckets.bucketOf(31));
+        assertEquals(4, buckets.bucketOf(91));
+        assertEquals(List.of("current", "1-30", "31-60", "61-90", "91+"),
+                List.of(buckets.bucketLabel(0), buckets.bucketLabel(1), buckets.bucketLabel(2),
+                        buckets.bucketLabel(3), buckets.bucketLabel(4)));
+        assertThrows(IllegalArgumentException.class, () -> DpdBuckets.withBoundaries(30, 30));
+    }
+
+    @Test
+    @DisplayName("counts filled during a parallel run match each loan's DPD bucketed by hand")
+    void parallelRun() {
+        Random random = new Random(8);
+        List<Object> loans = new ArrayList<>();
+        for (int i = 0; i < 6_000; i++) {
+            if (i % 2 == 0) {
+                loans.add(RandomSchedules.loan(random));
+            } else {
+                loans.add(LumpsumLoan.builder()
+                        .maturityDate(RandomSchedules.calculationDate(random))
+                        .status(i % 3 == 0 ? Status.DISBURSEMENT : Status.REPAYMENT_SUCCESS)
+                        .build());
+            }
+        }
+        DpdBuckets buckets = DpdBuckets.withBoundaries(0, 7, 30, 90, 180);
+        ForkJoinPool pool = new ForkJoinPool(8);
+        PortfolioDpdEngine.builder().pool(pool).chunkSize(50).build()
+                .calculate(loans, CALCULATION_DATE, buckets);
+        pool.shutdown();
+
+        long[][][] expectedLatest = new long[Product.values().length][Status.values().length][6];
+        long[][][] expectedMax = new long[Product.values().length][Status.values().length][6];
+        Lumpsum lumpsum = new Lumpsum();
+        for (Object loan : loans) {
+            Product product;
+            Status status;
+            Dpd dpd;
+            if (loan instanceof InstallmentLoanV3 installmentLoan) {
+                product = Product.INSTALLMENT;
+                status = installmentLoan.getStatus();
+                dpd = installmentLoan.calculateLatestDpd(CALCULATION_DATE);
+            } else {
+                LumpsumLoan lumpsumLoan = (LumpsumLoan) loan;
+                product = Product.LUMPSUM;
+                status = lumpsumLoan.getStatus();
+                dpd = lumpsum.calculate(lumpsumLoan, CALCULATION_DATE);
+            }
+            expectedLatest[product.ordinal()][status.ordinal()][bucket(dpd.getLatestDpd())]++;
+            expectedMax[product.ordinal()][status.ordinal()][bucket(dpd.getMaxDpd())]++;
+        }
+
+        assertEquals(6, buckets.bucketCount());
+        for (Product product : Product.values()) {
+            for (Status status : Status.values()) {
+                for (int bucket = 0; bucket < buckets.bucketCount(); bucket++) {
+                    String slot = product + " " + status + " bucket " + bucket;
+                    assertEquals(expectedLatest[product.ordinal()][status.ordinal()][bucket],
+                            buckets.latestCount(product, status, bucket), slot);
+                    assertEquals(expectedMax[product.ordinal()][status.ordinal()][bucket],
+                            buckets.maxCount(product, status, bucket), slot);
+                }
+            }
+        }
+        long total = 0;
+        for (int bucket = 0; bucket < buckets.bucketCount(); bucket++) {
+            total += buckets.latestCount(Product.INSTALLMENT, bucket) + buckets.latestCount(Product.LUMPSUM, bucket);
+        }
+        assertEquals(loans.size(), total);
+    }
+
+    /**
+     * Bucket of boundaries 0, 7, 30, 90 and 180, spelled out.
+     */
+    private static int bucket(int dpd) {
+        if (dpd <= 0) {
+            return 0;
+        } else if (dpd <= 7) {
+            return 1;
+        } else if (dpd <= 30) {
+            return 2;
+        } else if (dpd <= 90) {
+            return 3;
+        } else if (dpd <= 180) {
+            return 4;
+        }
+        return 5;
+    }
+}
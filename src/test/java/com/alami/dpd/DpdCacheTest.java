@@ -0,0 +1,129 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class DpdCacheTest {
+    private static final LocalDate CALCULATION_DATE = LocalDate.parse("2025-02-01");
+
+    @Test
+    @DisplayName("same loan, version and date is calculated once")
+    void hit() {
+        DpdCache cache = DpdCache.builder().maximumSize(100).segments(1).build();
+        AtomicInteger calculations = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            Dpd dpd = cache.get(1L, 1L, CALCULATION_DATE, () -> {
+                calculations.incrementAndGet();
+                return new Dpd(12, 40);
+            });
+            assertEquals(12, dpd.getLatestDpd());
+            assertEquals(40, dpd.getMaxDpd());
+        }
+        cache.get(1L, 2L, CALCULATION_DATE, () -> new Dpd(0, 40));
+        cache.get(1L, 2L, CALCULATION_DATE.plusDays(1), () -> new Dpd(0, 40));
+
+        assertEquals(1, calculations.get());
+        assertEquals(4, cache.hitCount());
+        assertEquals(3, cache.missCount());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    @DisplayName("invalidate drops every result of the loan only")
+    void invalidate() {
+        DpdCache cache = DpdCache.builder().maximumSize(100).segments(4).build();
+        for (long loanId = 1; loanId <= 10; loanId++) {
+            for (int day = 0; day < 3; day++) {
+                cache.get(loanId, 1L, CALCULATION_DATE.plusDays(day), () -> new Dpd(1, 1));
+            }
+        }
+
+        cache.invalidate(7L);
+
+        assertEquals(27, cache.size());
+        AtomicInteger calculations = new AtomicInteger();
+        cache.get(7L, 1L, CALCULATION_DATE, () -> new Dpd(calculations.incrementAndGet(), 1));
+        cache.get(8L, 1L, CALCULATION_DATE, () -> new Dpd(calculations.incrementAndGet(), 1));
+        assertEquals(1, calculations.get());
+    }
+
+    @Test
+    @DisplayName("size stays bounded and the least recently used results are evicted")
+    void eviction() {
+        DpdCache cache = DpdCache.builder().maximumSize(2).segments(1).build();
+        cache.get(1L, 1L, CALCULATION_DATE, () -> new Dpd(1, 1));
+        cache.get(2L, 1L, CALCULATION_DATE, () -> new Dpd(2, 2));
+        cache.get(1L, 1L, CALCULATION_DATE, () -> new Dpd(-1, -1));
+        cache.get(3L, 1L, CALCULATION_DATE, () -> new Dpd(3, 3));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertEquals(1, cache.get(1L, 1L, CALCULATION_DATE, () -> new Dpd(-1, -1)).getLatestDpd());
+        assertEquals(-2, cache.get(2L, 1L, CALCULATION_DATE, () -> new Dpd(-2, -2)).getLatestDpd());
+    }
+
+    @Test
+    @DisplayName("invalidate after eviction removes only the loan's remaining results")
+    void invalidateAfterEviction() {
+        DpdCache cache = DpdCache.builder().maximumSize(2).segments(1).build();
+        cache.get(1L, 1L, CALCULATION_DATE, () -> new Dpd(1, 1));
+        cache.get(1L, 1L, CALCULATION_DATE.plusDays(1), () -> new Dpd(1, 1));
+        cache.get(2L, 1L, CALCULATION_DATE, () -> new Dpd(2, 2));
+
+        cache.invalidate(1L);
+        cache.invalidate(3L);
+
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.get(2L, 1L, CALCULATION_DATE, () -> new Dpd(-2, -2)).getLatestDpd());
+        assertEquals(-1, cache.get(1L, 1L, CALCULATION_DATE.plusDays(1), () -> new Dpd(-1, -1)).getLatestDpd());
+    }
+
+    @Test
+    @DisplayName("concurrent lookups return the calculated DPD")
+    void concurrent() throws Exception {
+        Random random = new Random(9);
+        List<InstallmentLoanV3> loans = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            loans.add(RandomSchedules.loan(random));
+        }
+        DpdCache cache = DpdCache.builder().maximumSize(4_000).build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int seed = t;
+            futures.add(executor.submit(() -> {
+                Random threadRandom = new Random(seed);
+                for (int i = 0; i < 5_000; i++) {
+                    int loan = threadRandom.nextInt(loans.size());
+                    LocalDate date = CALCULATION_DATE.plusDays(threadRandom.nextInt(10));
+                    Dpd expected = loans.get(loan).calculateLatestDpd(date);
+                    Dpd actual = cache.calculateLatestDpd(loan, 1L, loans.get(loan), date);
+                    assertEquals(expected.getLatestDpd(), actual.getLatestDpd());
+                    assertEquals(expected.getMaxDpd(), actual.getMaxDpd());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertTrue(cache.hitRate() > 0.9);
+        assertTrue(cache.size() <= 4_000);
+    }
+}
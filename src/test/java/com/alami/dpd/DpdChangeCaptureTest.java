@@ -0,0 +1,124 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DpdChangeCaptureTest {
+    private static final LocalDate PREVIOUS_DATE = LocalDate.parse("2025-03-01");
+    private static final LocalDate CURRENT_DATE = PREVIOUS_DATE.plusDays(1);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("only inserts, changes and deletions are emitted, ageing optionally suppressed")
+    void changes() throws IOException {
+        Path previousFile = directory.resolve("previous.dpd");
+        DpdResultFile.writer(PREVIOUS_DATE)
+                .add(5, 0, 12)
+                .add(1, 10, 10)
+                .add(2, 3, 40)
+                .add(3, 45, 45)
+                .add(4, 7, 7)
+                .add(7, 20, 50)
+                .write(previousFile);
+        DpdResultFile previous = DpdResultFile.open(previousFile);
+        assertEquals(PREVIOUS_DATE, previous.calculationDate());
+        assertEquals(6, previous.size());
+        assertEquals(1, previous.loanId(0));
+        assertEquals(4, previous.indexOf(5));
+
+        long[][] current = {
+                {1, 11, 11},   // ageing
+                {2, 3, 40},    // unchanged
+                {3, 0, 45},    // paid
+                {5, 1, 12},    // newly overdue
+                {6, 2, 2},     // new loan
+                {7, 21, 50},   // ageing below an older maximum
+        };
+
+        List<String> all = capture(previous, current, false);
+        assertEquals(List.of("UPDATE 1 11/11", "UPDATE 3 0/45", "UPDATE 5 1/12", "INSERT 6 2/2", "UPDATE 7 21/50",
+                "DELETE 4 7/7"), all);
+        List<String> withoutAgeing = capture(previous, current, true);
+        assertEquals(List.of("UPDATE 3 0/45", "UPDATE 5 1/12", "INSERT 6 2/2", "DELETE 4 7/7"), withoutAgeing);
+
+        Path currentFile = directory.resolve("current.dpd");
+        DpdResultFile.Writer writer = DpdResultFile.writer(CURRENT_DATE);
+        for (long[] result : current) {
+            writer.add(result[0], (int) result[1], (int) result[2]);
+        }
+        writer.write(currentFile);
+        List<String> merged = new ArrayList<>();
+        DpdChangeCapture capture = DpdChangeCapture.diff(previous, DpdResultFile.open(currentFile), true,
+                (change, loanId, latestDpd, maxDpd) -> merged.add(change + " " + loanId + " " + latestDpd + "/" + maxDpd));
+        assertEquals(List.of("UPDATE 3 0/45", "DELETE 4 7/7", "UPDATE 5 1/12", "INSERT 6 2/2"), merged);
+        assertEquals(2, capture.getSuppressed());
+        assertEquals(2, capture.getUpdates());
+    }
+
+    @Test
+    @DisplayName("duplicate loan ids are rejected by the writer and by the capture")
+    void duplicate() throws IOException {
+        DpdResultFile.Writer writer = DpdResultFile.writer(PREVIOUS_DATE).add(2, 0, 0).add(1, 0, 0).add(2, 1, 1);
+        assertThrows(IllegalArgumentException.class, () -> writer.write(directory.resolve("duplicate.dpd")));
+
+        Path previousFile = directory.resolve("previous.dpd");
+        DpdResultFile.writer(PREVIOUS_DATE).add(1, 0, 0).add(2, 0, 0).write(previousFile);
+        DpdResultFile previous = DpdResultFile.open(previousFile);
+        assertThrows(IllegalArgumentException.class, () -> capture(previous, new long[][]{{1, 0, 0}, {2, 0, 0}, {1, 1, 1}}, false));
+        assertThrows(IllegalArgumentException.class, () -> capture(previous, new long[][]{{9, 0, 0}, {2, 0, 0}, {9, 1, 1}}, false));
+    }
+
+    @Test
+    @DisplayName("results added in any order are written in loan id order")
+    void unsorted() throws IOException {
+        Random random = new Random(23);
+        DpdResultFile.Writer writer = DpdResultFile.writer(PREVIOUS_DATE);
+        List<Long> loanIds = new ArrayList<>();
+        for (long loanId = 0; loanId < 5_000; loanId++) {
+            loanIds.add(loanId * 7 - 10_000);
+        }
+        Collections.shuffle(loanIds, random);
+        for (long loanId : loanIds) {
+            writer.add(loanId, (int) loanId, (int) -loanId);
+        }
+        Path file = directory.resolve("unsorted.dpd");
+        writer.write(file);
+
+        DpdResultFile results = DpdResultFile.open(file);
+        for (int index = 0; index < results.size(); index++) {
+            long loanId = index * 7L - 10_000;
+            assertEquals(loanId, results.loanId(index));
+            assertEquals(loanId, results.latestDpd(index));
+            assertEquals(-loanId, results.maxDpd(index));
+        }
+    }
+
+    private static List<String> capture(DpdResultFile previous, long[][] current, boolean suppressAgeing) {
+        List<String> changes = new ArrayList<>();
+        DpdChangeCapture capture = DpdChangeCapture.builder()
+                .previous(previous)
+                .calculationDate(CURRENT_DATE)
+                .suppressAgeing(suppressAgeing)
+                .sink((change, loanId, latestDpd, maxDpd) -> changes.add(change + " " + loanId + " " + latestDpd + "/" + maxDpd))
+                .build();
+        for (long[] result : current) {
+            capture.accept(result[0], (int) result[1], (int) result[2]);
+        }
+        capture.finish();
+        return changes;
+    }
+}
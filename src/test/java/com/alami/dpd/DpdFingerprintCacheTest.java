@@ -0,0 +1,95 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class DpdFingerprintCacheTest {
+    private static final LocalDate CALCULATION_DATE = LocalDate.parse("2025-03-01");
+
+    @Test
+    @DisplayName("cached DPD is the same as InstallmentLoanV3.calculateLatestDpd, also for a small cache")
+    void matchesInstallmentLoanV3() {
+        Random random = new Random(25);
+        List<InstallmentLoanV3> loans = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            loans.add(RandomSchedules.loan(random));
+        }
+        List<LocalDate> calculationDates = new ArrayList<>();
+        for (int d = 0; d < 10; d++) {
+            calculationDates.add(RandomSchedules.calculationDate(random));
+        }
+        DpdFingerprintCache cache = DpdFingerprintCache.builder().maximumBytes(16 * 1024).segments(4).build();
+
+        for (int round = 0; round < 2; round++) {
+            for (LocalDate calculationDate : calculationDates) {
+                for (InstallmentLoanV3 loan : loans) {
+                    Dpd expected = loan.calculateLatestDpd(calculationDate);
+                    Dpd actual = cache.calculateLatestDpd(loan, calculationDate);
+                    assertEquals(expected.getLatestDpd(), actual.getLatestDpd());
+                    assertEquals(expected.getMaxDpd(), actual.getMaxDpd());
+                }
+            }
+        }
+        assertTrue(cache.estimatedBytes() <= 16 * 1024, cache.estimatedBytes() + " bytes");
+        assertTrue(cache.evictionCount() > 0);
+    }
+
+    @Test
+    @DisplayName("loans with the same schedule shape are calculated once per date")
+    void sharedShape() {
+        List<InstallmentLoanV3> loans = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            loans.add(loan(i % 3 == 0, BigDecimal.valueOf(1_000_000 + i)));
+        }
+        DpdFingerprintCache cache = DpdFingerprintCache.builder().maximumBytes(1 << 20).build();
+
+        int[] latestDpd = new int[loans.size()];
+        int[] maxDpd = new int[loans.size()];
+        cache.calculateAll(loans, CALCULATION_DATE, (index, latest, max) -> {
+            latestDpd[index] = latest;
+            maxDpd[index] = max;
+        });
+        cache.calculateAll(loans, CALCULATION_DATE.plusDays(1), (index, latest, max) -> { });
+
+        for (int i = 0; i < loans.size(); i++) {
+            Dpd expected = loans.get(i).calculateLatestDpd(CALCULATION_DATE);
+            assertEquals(expected.getLatestDpd(), latestDpd[i]);
+            assertEquals(expected.getMaxDpd(), maxDpd[i]);
+        }
+        assertEquals(4, cache.missCount());
+        assertEquals(1_996, cache.hitCount());
+        assertEquals(0.998, cache.hitRate(), 1e-9);
+        assertEquals(4, cache.size());
+        // calculation day, status and five fields for each of the twelve installments
+        assertEquals(4 * (104 + (2 + 12 * 5) * Integer.BYTES), cache.estimatedBytes());
+    }
+
+    /**
+     * Twelve monthly installments disbursed on the same day; the amount does not change the shape.
+     */
+    private static InstallmentLoanV3 loan(boolean firstPaidLate, BigDecimal amount) {
+        List<InstallmentV3> installments = new ArrayList<>();
+        LocalDate firstMaturityDate = LocalDate.parse("2024-11-15");
+        for (int period = 1; period <= 12; period++) {
+            LocalDate maturityDate = firstMaturityDate.plusMonths(period - 1);
+            boolean paid = firstPaidLate && period == 1;
+            installments.add(InstallmentV3.builder()
+                    .maturityDate(maturityDate)
+                    .amount(amount)
+                    .repaymentStatus(paid ? RepaymentStatus.PAID : RepaymentStatus.NOT_PAID)
+                    .repaymentDate(paid ? maturityDate.plusDays(9) : null)
+                    .period(period)
+                    .build());
+        }
+        return InstallmentLoanV3.builder().installments(installments).status(Status.DISBURSEMENT).build();
+    }
+}
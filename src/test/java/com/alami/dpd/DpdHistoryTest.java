@@ -0,0 +1,85 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class DpdHistoryTest {
+
+    @Test
+    @DisplayName("every day of the sweep matches calculateLatestDpd on that day")
+    void matchesDailyCalculation() {
+        Random random = new Random(21);
+        for (int i = 0; i < 400; i++) {
+            InstallmentLoanV3 loan = RandomSchedules.loan(random);
+            LocalDate from = RandomSchedules.calculationDate(random).minusDays(200);
+            LocalDate to = from.plusDays(random.nextInt(500));
+
+            DpdHistory history = loan.calculateDpdHistory(from, to);
+
+            assertEquals(to.toEpochDay() - from.toEpochDay() + 1, history.size());
+            for (int day = 0; day < history.size(); day++) {
+                LocalDate date = from.plusDays(day);
+                Dpd expected = loan.calculateLatestDpd(date);
+                assertEquals(expected.getLatestDpd(), history.getLatestDpd(day), "latestDpd of loan " + i + " at " + date);
+                assertEquals(expected.getMaxDpd(), history.getMaxDpd(day), "maxDpd of loan " + i + " at " + date);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("single day range and lookup by date")
+    void singleDay() {
+        InstallmentLoanV3 loan = RandomSchedules.loan(new Random(4));
+        LocalDate date = LocalDate.parse("2025-01-31");
+
+        DpdHistory history = loan.calculateDpdHistory(date, date);
+
+        assertEquals(1, history.size());
+        assertEquals(loan.calculateLatestDpd(date).getMaxDpd(), history.get(date).getMaxDpd());
+        assertThrows(IllegalArgumentException.class, () -> history.get(date.plusDays(1)));
+        assertThrows(IllegalArgumentException.class, () -> loan.calculateDpdHistory(date, date.minusDays(1)));
+    }
+
+    @Test
+    @DisplayName("amounts with more decimals than the default scale are swept like calculateLatestDpd")
+    void anyScale() {
+        LocalDate maturityDate = LocalDate.parse("2025-01-20");
+        InstallmentLoanV3 loan = InstallmentLoanV3.builder()
+                .installments(List.of(
+                        InstallmentV3.builder()
+                                .maturityDate(maturityDate)
+                                .amount(new BigDecimal("1000.125"))
+                                .repaymentStatus(RepaymentStatus.NOT_PAID)
+                                .period(1)
+                                .build(),
+                        InstallmentV3.builder()
+                                .maturityDate(maturityDate.plusMonths(1))
+                                .amount(new BigDecimal("0.000"))
+                                .repaymentStatus(RepaymentStatus.GRACE_PERIOD)
+                                .period(2)
+                                .build()))
+                .status(Status.DISBURSEMENT)
+                .build();
+        LocalDate from = maturityDate.minusDays(5);
+        LocalDate to = maturityDate.plusDays(60);
+
+        DpdHistory history = loan.calculateDpdHistory(from, to);
+        DpdSummary summary = loan.calculateDpdSummary();
+
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            Dpd expected = loan.calculateLatestDpd(date);
+            assertEquals(expected.getLatestDpd(), history.get(date).getLatestDpd(), "latestDpd at " + date);
+            assertEquals(expected.getMaxDpd(), history.get(date).getMaxDpd(), "maxDpd at " + date);
+            assertEquals(expected.getLatestDpd(), summary.getLatestDpd(date), "summary latestDpd at " + date);
+            assertEquals(expected.getMaxDpd(), summary.getMaxDpd(date), "summary maxDpd at " + date);
+        }
+    }
+}
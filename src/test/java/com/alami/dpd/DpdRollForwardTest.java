@@ -0,0 +1,72 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class DpdRollForwardTest {
+
+    @Test
+    @DisplayName("daily roll with occasional schedule changes matches full calculation every day")
+    void matchesFullCalculation() {
+        Random random = new Random(11);
+        List<InstallmentLoanV3> loans = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            loans.add(RandomSchedules.loan(random));
+        }
+        ColumnarSchedule schedule = ColumnarSchedule.of(loans);
+        DpdRollForward rollForward = new DpdRollForward(loans.size());
+        int[] latestDpd = new int[loans.size()];
+        int[] maxDpd = new int[loans.size()];
+
+        LocalDate date = RandomSchedules.FIRST_MATURITY_DATE.minusDays(5);
+        for (int day = 0; day < 900; day++, date = date.plusDays(1)) {
+            BitSet changedLoans = new BitSet();
+            if (day % 30 == 29) {
+                // a few loans get a new ledger
+                for (int i = 0; i < 5; i++) {
+                    int loan = random.nextInt(loans.size());
+                    loans.set(loan, RandomSchedules.loan(random));
+                    changedLoans.set(loan);
+                }
+                schedule = ColumnarSchedule.of(loans);
+            }
+
+            rollForward.rollTo(schedule, date, changedLoans, latestDpd, maxDpd);
+
+            for (int loan = 0; loan < loans.size(); loan++) {
+                Dpd expected = loans.get(loan).calculateLatestDpd(date);
+                assertEquals(expected.getLatestDpd(), latestDpd[loan], "latestDpd of loan " + loan + " at " + date);
+                assertEquals(expected.getMaxDpd(), maxDpd[loan], "maxDpd of loan " + loan + " at " + date);
+            }
+        }
+        assertTrue(rollForward.getRolledLoans() > 10 * rollForward.getRecalculatedLoans());
+    }
+
+    @Test
+    @DisplayName("rolling back in time recalculates every loan")
+    void rollBack() {
+        Random random = new Random(3);
+        List<InstallmentLoanV3> loans = List.of(RandomSchedules.loan(random), RandomSchedules.loan(random));
+        ColumnarSchedule schedule = ColumnarSchedule.of(loans);
+        DpdRollForward rollForward = new DpdRollForward(loans.size());
+        int[] latestDpd = new int[2];
+        int[] maxDpd = new int[2];
+
+        rollForward.rollTo(schedule, LocalDate.parse("2025-06-01"), new BitSet(), latestDpd, maxDpd);
+        rollForward.rollTo(schedule, LocalDate.parse("2024-06-01"), new BitSet(), latestDpd, maxDpd);
+
+        assertEquals(4, rollForward.getRecalculatedLoans());
+        for (int loan = 0; loan < loans.size(); loan++) {
+            assertEquals(loans.get(loan).calculateLatestDpd(LocalDate.parse("2024-06-01")).getLatestDpd(), latestDpd[loan]);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class DpdSummaryTest {
+
+    @Test
+    @DisplayName("summary gives the same DPD as InstallmentLoanV3.calculateLatestDpd on any date, also after a round trip")
+    void matchesInstallmentLoanV3() {
+        Random random = new Random(20);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 1_000; i++) {
+            InstallmentLoanV3 loan = RandomSchedules.loan(random);
+            DpdSummary summary = loan.calculateDpdSummary();
+
+            buffer.clear();
+            summary.writeTo(buffer);
+            assertEquals(summary.serializedSize(), buffer.position());
+            buffer.flip();
+            DpdSummary read = DpdSummary.readFrom(buffer);
+
+            for (int d = 0; d < 20; d++) {
+                LocalDate calculationDate = RandomSchedules.calculationDate(random);
+                Dpd expected = loan.calculateLatestDpd(calculationDate);
+                for (DpdSummary actual : List.of(summary, read)) {
+                    assertEquals(expected.getLatestDpd(), actual.getLatestDpd(calculationDate), "loan " + i + " at " + calculationDate);
+                    assertEquals(expected.getMaxDpd(), actual.getMaxDpd(calculationDate), "loan " + i + " at " + calculationDate);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("summary gives the same DPD as InstallmentLoanV3.calculateLatestDpd on every day around the schedule")
+    void everyDay() {
+        Random random = new Random(21);
+        for (int i = 0; i < 100; i++) {
+            InstallmentLoanV3 loan = RandomSchedules.loan(random);
+            DpdSummary summary = loan.calculateDpdSummary();
+            LocalDate from = RandomSchedules.FIRST_MATURITY_DATE.minusDays(5);
+            for (LocalDate date = from; date.isBefore(from.plusDays(1_400)); date = date.plusDays(1)) {
+                Dpd expected = loan.calculateLatestDpd(date);
+                assertEquals(expected.getLatestDpd(), summary.getLatestDpd(date), "loan " + i + " at " + date);
+                assertEquals(expected.getMaxDpd(), summary.getMaxDpd(date), "loan " + i + " at " + date);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("summary keeps only the segments where the DPD changes")
+    void compact() {
+        LocalDate firstMaturityDate = LocalDate.parse("2025-01-10");
+        List<InstallmentV3> installments = new ArrayList<>();
+        for (int period = 1; period <= 360; period++) {
+            LocalDate maturityDate = firstMaturityDate.plusMonths(period - 1);
+            installments.add(installment(period, maturityDate, RepaymentStatus.PAID, maturityDate));
+        }
+        DpdSummary summary = InstallmentLoanV3.builder()
+                .installments(installments)
+                .status(Status.DISBURSEMENT)
+                .build()
+                .calculateDpdSummary();
+
+        assertEquals(12 * Integer.BYTES, summary.serializedSize());
+        assertEquals(0, summary.getMaxDpd(firstMaturityDate.plusYears(40)));
+    }
+
+    @Test
+    @DisplayName("summary keeps the schedule facts")
+    void facts() {
+        LocalDate firstMaturityDate = LocalDate.parse("2025-01-10");
+        InstallmentLoanV3 loan = InstallmentLoanV3.builder()
+                .installments(List.of(
+                        installment(1, firstMaturityDate, RepaymentStatus.PAID, firstMaturityDate.plusDays(12)),
+                        installment(2, firstMaturityDate.plusMonths(1), RepaymentStatus.PAID, firstMaturityDate.plusMonths(1)),
+                        installment(3, firstMaturityDate.plusMonths(2), RepaymentStatus.NOT_PAID, null),
+                        installment(4, firstMaturityDate.plusMonths(3), RepaymentStatus.NOT_PAID, null)))
+                .status(Status.DISBURSEMENT)
+                .build();
+
+        DpdSummary summary = loan.calculateDpdSummary();
+
+        assertEquals(firstMaturityDate, summary.getEarliestMaturityDate());
+        assertEquals(firstMaturityDate.plusMonths(3), summary.getLatestMaturityDate());
+        assertEquals(3, summary.getFirstUnpaidPeriod());
+        assertEquals(12, summary.getMaxLatePaymentDpd());
+        assertNull(summary.getWrittenOffDate());
+        assertEquals(0, summary.calculateLatestDpd(firstMaturityDate).getLatestDpd());
+        assertEquals(40, summary.calculateLatestDpd(firstMaturityDate.plusMonths(2).plusDays(40)).getLatestDpd());
+    }
+
+    private static InstallmentV3 installment(int period, LocalDate maturityDate, RepaymentStatus repaymentStatus,
+                                             LocalDate repaymentDate) {
+        return InstallmentV3.builder()
+                .period(period)
+                .maturityDate(maturityDate)
+                .amount(BigDecimal.valueOf(1_000_000))
+                .repaymentStatus(repaymentStatus)
+                .repaymentDate(repaymentDate)
+                .build();
+    }
+}
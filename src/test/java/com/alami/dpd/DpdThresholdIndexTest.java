@@ -0,0 +1,194 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class DpdThresholdIndexTest {
+    private static final LocalDate FIRST_MATURITY_DATE = LocalDate.parse("2025-01-20");
+
+    @Test
+    @DisplayName("unpaid installments cross each threshold on maturity date plus threshold")
+    void crossings() {
+        DpdThresholdIndex index = DpdThresholdIndex.standard();
+        index.add(1, loan(6, 2, Status.DISBURSEMENT));
+        index.add(2, loan(6, 6, Status.DISBURSEMENT));
+        index.add(3, loan(6, 0, Status.WRITE_OFF));
+
+        LocalDate thirdMaturity = FIRST_MATURITY_DATE.plusMonths(2);
+        List<DpdThresholdIndex.Crossing> on = index.crossingsOn(thirdMaturity.plusDays(30));
+        assertEquals(List.of(new DpdThresholdIndex.Crossing(1, 3, 30, thirdMaturity.plusDays(30))), on);
+
+        List<DpdThresholdIndex.Crossing> all = index.crossingsBetween(LocalDate.MIN, LocalDate.MAX);
+        assertEquals(4 * 3, all.size());
+        assertTrue(all.stream().allMatch(crossing -> crossing.getLoanId() == 1 && crossing.getPeriod() > 2));
+
+        List<DpdThresholdIndex.Crossing> period = index.crossingsBetween(thirdMaturity.plusDays(31), thirdMaturity.plusDays(61));
+        assertEquals(List.of(3, 4), period.stream().map(DpdThresholdIndex.Crossing::getPeriod).collect(Collectors.toList()));
+    }
+
+    @Test
+    @DisplayName("loan crossings follow the oldest unpaid installment and move on repayment")
+    void loanCrossings() {
+        DpdThresholdIndex index = DpdThresholdIndex.standard();
+        InstallmentLoanV3 loan = loan(6, 2, Status.DISBURSEMENT);
+        index.add(7, loan);
+
+        for (DpdThresholdIndex.Crossing crossing : index.loanCrossingsBetween(LocalDate.MIN, LocalDate.MAX)) {
+            assertEquals(3, crossing.getPeriod());
+            assertEquals(crossing.getThreshold(), loan.calculateLatestDpd(crossing.getDate()).getLatestDpd());
+            assertTrue(loan.calculateLatestDpd(crossing.getDate().minusDays(1)).getLatestDpd() < crossing.getThreshold());
+        }
+
+        index.apply(RepaymentEvent.builder()
+                .loanId(7)
+                .period(3)
+                .status(RepaymentStatus.PAID)
+                .date(FIRST_MATURITY_DATE.plusMonths(2))
+                .build());
+
+        List<DpdThresholdIndex.Crossing> crossings = index.loanCrossingsBetween(LocalDate.MIN, LocalDate.MAX);
+        assertEquals(3, crossings.size());
+        assertTrue(crossings.stream().allMatch(crossing -> crossing.getPeriod() == 4));
+        assertEquals(3 * 3, index.crossingsBetween(LocalDate.MIN, LocalDate.MAX).size());
+
+        index.apply(RepaymentEvent.builder()
+                .loanId(7)
+                .status(RepaymentStatus.WRITE_OFF)
+                .date(FIRST_MATURITY_DATE.plusMonths(4))
+                .build());
+
+        assertTrue(index.crossingsBetween(LocalDate.MIN, LocalDate.MAX).isEmpty());
+        assertTrue(index.loanCrossingsBetween(LocalDate.MIN, LocalDate.MAX).isEmpty());
+    }
+
+    @Test
+    @DisplayName("every loan crossing is a day on which latestDpd reaches the threshold from below")
+    void loanCrossingsMatchLatestDpd() {
+        Random random = new Random(2016);
+        List<InstallmentLoanV3> loans = new ArrayList<>();
+        DpdThresholdIndex index = new DpdThresholdIndex(1, 7, 30, 60, 90);
+        for (int loanId = 0; loanId < 2_000; loanId++) {
+            InstallmentLoanV3 loan = RandomSchedules.loan(random);
+            loans.add(loan);
+            index.add(loanId, loan);
+        }
+
+        List<DpdThresholdIndex.Crossing> crossings = index.loanCrossingsBetween(LocalDate.MIN, LocalDate.MAX);
+        assertTrue(crossings.size() > 1_000);
+        for (DpdThresholdIndex.Crossing crossing : crossings) {
+            InstallmentLoanV3 loan = loans.get((int) crossing.getLoanId());
+            int threshold = crossing.getThreshold();
+            assertTrue(loan.calculateLatestDpd(crossing.getDate()).getLatestDpd() >= threshold, crossing::toString);
+            assertTrue(loan.calculateLatestDpd(crossing.getDate().minusDays(1)).getLatestDpd() < threshold,
+                    crossing::toString);
+        }
+    }
+
+    @Test
+    @DisplayName("repayments applied incrementally give the same index as indexing the repaid loans again")
+    void incrementalMatchesRebuild() {
+        Random random = new Random(16);
+        DpdThresholdIndex incremental = DpdThresholdIndex.standard();
+        DpdThresholdIndex rebuilt = DpdThresholdIndex.standard();
+        for (int loanId = 0; loanId < 500; loanId++) {
+            InstallmentLoanV3 loan = RandomSchedules.loan(random);
+            incremental.add(loanId, loan);
+            List<InstallmentV3> repaid = new ArrayList<>();
+            int repaidPeriod = 1 + random.nextInt(6);
+            incremental.repaid(loanId, repaidPeriod);
+            for (InstallmentV3 installment : loan.getInstallments()) {
+                boolean repay = installment.getPeriod() == repaidPeriod && !installment.isGracePeriod();
+                repaid.add(repay ? paid(installment) : installment);
+            }
+            rebuilt.add(loanId, InstallmentLoanV3.builder().installments(repaid).status(loan.getStatus()).build());
+        }
+
+        assertEquals(rebuilt.crossingsBetween(LocalDate.MIN, LocalDate.MAX), incremental.crossingsBetween(LocalDate.MIN, LocalDate.MAX));
+        assertEquals(rebuilt.loanCrossingsBetween(LocalDate.MIN, LocalDate.MAX), incremental.loanCrossingsBetween(LocalDate.MIN, LocalDate.MAX));
+        LocalDate from = RandomSchedules.FIRST_MATURITY_DATE.plusDays(40);
+        assertEquals(rebuilt.crossingsBetween(from, from.plusDays(20)), incremental.crossingsBetween(from, from.plusDays(20)));
+    }
+
+    @Test
+    @DisplayName("non-positive and duplicate thresholds are rejected")
+    void invalidThresholds() {
+        assertThrows(IllegalArgumentException.class, () -> new DpdThresholdIndex(0, 30));
+        assertThrows(IllegalArgumentException.class, () -> new DpdThresholdIndex(30, -1));
+        assertThrows(IllegalArgumentException.class, () -> new DpdThresholdIndex(60, 30, 60));
+    }
+
+    @Test
+    @DisplayName("PAID event without period is rejected")
+    void paidWithoutPeriod() {
+        DpdThresholdIndex index = DpdThresholdIndex.standard();
+        index.add(1, loan(6, 2, Status.DISBURSEMENT));
+
+        assertThrows(IllegalArgumentException.class, () -> index.apply(RepaymentEvent.builder()
+                .loanId(1)
+                .status(RepaymentStatus.PAID)
+                .date(FIRST_MATURITY_DATE)
+                .build()));
+        assertEquals(4 * 3, index.crossingsBetween(LocalDate.MIN, LocalDate.MAX).size());
+    }
+
+    /**
+     * Every installment of the period repaid on its maturity date, so none of them ages.
+     */
+    private static InstallmentV3 paid(InstallmentV3 installment) {
+        return InstallmentV3.builder()
+                .maturityDate(installment.getMaturityDate())
+                .amount(installment.getAmount())
+                .paidAmount(installment.getAmount())
+                .repaymentStatus(RepaymentStatus.PAID)
+                .repaymentDate(installment.getMaturityDate())
+                .period(installment.getPeriod())
+                .build();
+    }
+
+    /**
+     * Monthly schedule whose first {@code paidPeriods} periods are paid on time, with a grace period
+     * at the end. A written-off loan gets an extra write-off row.
+     */
+    private static InstallmentLoanV3 loan(int periods, int paidPeriods, Status status) {
+        List<InstallmentV3> installments = new ArrayList<>();
+        for (int period = 1; period <= periods; period++) {
+            LocalDate maturityDate = FIRST_MATURITY_DATE.plusMonths(period - 1);
+            boolean paid = period <= paidPeriods;
+            installments.add(InstallmentV3.builder()
+                    .maturityDate(maturityDate)
+                    .amount(BigDecimal.valueOf(1_000_000))
+                    .repaymentStatus(paid ? RepaymentStatus.PAID : RepaymentStatus.NOT_PAID)
+                    .repaymentDate(paid ? maturityDate : null)
+                    .period(period)
+                    .build());
+        }
+        installments.add(InstallmentV3.builder()
+                .maturityDate(FIRST_MATURITY_DATE.plusMonths(periods))
+                .amount(BigDecimal.ZERO)
+                .repaymentStatus(RepaymentStatus.GRACE_PERIOD)
+                .period(periods + 1)
+                .build());
+        if (status == Status.WRITE_OFF) {
+            installments.add(InstallmentV3.builder()
+                    .repaymentStatus(RepaymentStatus.WRITE_OFF)
+                    .writtenOfDate(FIRST_MATURITY_DATE.plusMonths(periods + 3))
+                    .period(periods + 2)
+                    .build());
+        }
+        return InstallmentLoanV3.builder()
+                .installments(installments)
+                .status(status)
+                .build();
+    }
+}
@@ -0,0 +1,109 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class InstallmentLoanV3ConcurrencyTest {
+    private static final int THREADS = 16;
+    private static final int CALLS_PER_THREAD = 2_000;
+    private static final LocalDate FIRST_MATURITY_DATE = LocalDate.parse("2024-12-20");
+
+    @Test
+    @DisplayName("shared loans give the same DPD from many threads and are never modified")
+    void sharedLoans() throws Exception {
+        List<InstallmentLoanV3> loans = List.of(
+                loan(12, Status.DISBURSEMENT),
+                loan(36, Status.PARTIAL_REPAYMENT_SUCCESS),
+                loan(6, Status.WRITE_OFF));
+        List<LocalDate> calculationDates = new ArrayList<>();
+        for (int day = 0; day < 400; day += 7) {
+            calculationDates.add(FIRST_MATURITY_DATE.minusDays(10).plusDays(day));
+        }
+
+        int[][] expectedLatest = new int[loans.size()][calculationDates.size()];
+        int[][] expectedMax = new int[loans.size()][calculationDates.size()];
+        for (int l = 0; l < loans.size(); l++) {
+            for (int d = 0; d < calculationDates.size(); d++) {
+                Dpd dpd = loans.get(l).calculateLatestDpd(calculationDates.get(d));
+                expectedLatest[l][d] = dpd.getLatestDpd();
+                expectedMax[l][d] = dpd.getMaxDpd();
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                    int l = random.nextInt(loans.size());
+                    int d = random.nextInt(calculationDates.size());
+                    Dpd dpd = loans.get(l).calculateLatestDpd(calculationDates.get(d));
+                    assertEquals(expectedLatest[l][d], dpd.getLatestDpd());
+                    assertEquals(expectedMax[l][d], dpd.getMaxDpd());
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertEquals(12, loans.get(0).getInstallments().size());
+        assertEquals(36, loans.get(1).getInstallments().size());
+        assertEquals(7, loans.get(2).getInstallments().size());
+    }
+
+    /**
+     * Monthly schedule where every fourth period is a grace period, the first third is paid
+     * (some of it late) and the rest is not paid. A written-off loan gets an extra write-off row.
+     */
+    private static InstallmentLoanV3 loan(int periods, Status status) {
+        List<InstallmentV3> installments = new ArrayList<>();
+        for (int period = 1; period <= periods; period++) {
+            LocalDate maturityDate = FIRST_MATURITY_DATE.plusMonths(period - 1);
+            InstallmentV3.InstallmentV3Builder installment = InstallmentV3.builder()
+                    .maturityDate(maturityDate)
+                    .period(period);
+            if (period % 4 == 0) {
+                installment.amount(BigDecimal.ZERO).repaymentStatus(RepaymentStatus.GRACE_PERIOD);
+            } else if (period <= periods / 3) {
+                installment.amount(BigDecimal.valueOf(50_000_000))
+                        .paidAmount(BigDecimal.valueOf(50_000_000))
+                        .repaymentStatus(RepaymentStatus.PAID)
+                        .repaymentDate(maturityDate.plusDays(period % 3 * 5L));
+            } else {
+                installment.amount(BigDecimal.valueOf(50_000_000)).repaymentStatus(RepaymentStatus.NOT_PAID);
+            }
+            installments.add(installment.build());
+        }
+        if (status == Status.WRITE_OFF) {
+            installments.add(InstallmentV3.builder()
+                    .repaymentStatus(RepaymentStatus.WRITE_OFF)
+                    .writtenOfDate(FIRST_MATURITY_DATE.plusMonths(periods + 3))
+                    .period(periods + 1)
+                    .build());
+        }
+        return InstallmentLoanV3.builder()
+                .installments(installments)
+                .status(status)
+                .build();
+    }
+}
@@ -6,7 +6,9 @@ import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -1029,5 +1031,40 @@ class InstallmentV3Test {
         assertEquals(35, dpd.getLatestDpd());
         assertEquals(35, dpd.getMaxDpd());
     }
+
+    @Test
+    @DisplayName("""
+        Calculate DPD for a daily schedule of 360 installments starting 2025-01-01
+        PERIOD 1-99: status=PAID on maturity date, except PERIOD 50 paid 3 days late
+        PERIOD 100-360: status=NOT_PAID, PERIOD 100 maturity=2025-04-10
+
+        Expected: latestDpd=52, maxDpd=52
+        """)
+    void testCase16() {
+        List<InstallmentV3> installments = new ArrayList<>();
+        LocalDate firstMaturityDate = LocalDate.parse("2025-01-01");
+        for (int period = 1; period <= 360; period++) {
+            LocalDate maturityDate = firstMaturityDate.plusDays(period - 1);
+            boolean paid = period < 100;
+            installments.add(InstallmentV3.builder()
+                    .maturityDate(maturityDate)
+                    .amount(BigDecimal.valueOf(1_000_000))
+                    .paidAmount(paid ? BigDecimal.valueOf(1_000_000) : null)
+                    .repaymentStatus(paid ? RepaymentStatus.PAID : RepaymentStatus.NOT_PAID)
+                    .repaymentDate(paid ? maturityDate.plusDays(period == 50 ? 3 : 0) : null)
+                    .period(period)
+                    .build());
+        }
+
+        InstallmentLoanV3 loan = InstallmentLoanV3.builder()
+                .installments(installments)
+                .status(Status.DISBURSEMENT)
+                .build();
+
+        LocalDate calculationDate = LocalDate.parse("2025-06-01");
+        Dpd dpd = loan.calculateLatestDpd(calculationDate);
+        assertEquals(52, dpd.getLatestDpd());
+        assertEquals(52, dpd.getMaxDpd());
+    }
     }
 }
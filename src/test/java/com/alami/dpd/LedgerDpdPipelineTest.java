@@ -0,0 +1,171 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LedgerDpdPipelineTest {
+    private static final LocalDate CALCULATION_DATE = LocalDate.parse("2025-02-14");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("streamed ledger gives the same DPD as InstallmentLoanV3.calculateLatestDpd")
+    void matchesInstallmentLoanV3() throws IOException {
+        Random random = new Random(11);
+        List<InstallmentLoanV3> loans = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            loans.add(RandomSchedules.loan(random));
+        }
+        Path ledger = directory.resolve("ledger.tsv");
+        Path output = directory.resolve("dpd.csv");
+        Files.write(ledger, ledger(loans, '\t'), StandardCharsets.US_ASCII);
+
+        LedgerDpdPipeline pipeline = LedgerDpdPipeline.builder()
+                .calculationDate(CALCULATION_DATE)
+                .delimiter('\t')
+                .bufferSize(4096)
+                .build();
+        LedgerDpdPipeline.Summary summary = pipeline.run(ledger, output);
+
+        List<String> lines = Files.readAllLines(output, StandardCharsets.US_ASCII);
+        assertEquals(loans.size(), summary.getLoans());
+        assertEquals(loans.stream().mapToLong(loan -> loan.getInstallments().size()).sum(), summary.getRows());
+        assertEquals(loans.size(), lines.size());
+        for (int i = 0; i < loans.size(); i++) {
+            Dpd expected = loans.get(i).calculateLatestDpd(CALCULATION_DATE);
+            assertEquals("L" + i + "," + expected.getLatestDpd() + "," + expected.getMaxDpd(), lines.get(i));
+        }
+    }
+
+    @Test
+    @DisplayName("CRLF line endings, a missing final newline and empty fields are accepted")
+    void crlf() throws IOException {
+        String ledger = "loan_id,loan_status,period,maturity_date,amount,paid_amount,repayment_status,repayment_date,written_off_date\r\n"
+                + "A,DISBURSEMENT,1,2025-01-10,1000000.50,,NOT_PAID,,\r\n"
+                + "A,DISBURSEMENT,2,2025-02-10,1000000,,NOT_PAID,,\r\n"
+                + "B,REPAYMENT_SUCCESS,1,2025-01-10,1000000,1000000,PAID,2025-01-20,";
+        Path input = directory.resolve("ledger.csv");
+        Path output = directory.resolve("dpd.csv");
+        Files.writeString(input, ledger, StandardCharsets.US_ASCII);
+
+        LedgerDpdPipeline.builder().calculationDate(CALCULATION_DATE).build().run(input, output);
+
+        assertEquals(List.of("A,35,35", "B,10,10"), Files.readAllLines(output, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    @DisplayName("paid tolerance counts an almost fully repaid installment as paid")
+    void paidTolerance() throws IOException {
+        Path input = directory.resolve("ledger.csv");
+        Path output = directory.resolve("dpd.csv");
+        Files.writeString(input, "A,DISBURSEMENT,1,2025-01-10,1000000,999999.50,PARTIAL_REPAYMENT,2025-01-20,\n",
+                StandardCharsets.US_ASCII);
+
+        LedgerDpdPipeline.builder().calculationDate(CALCULATION_DATE).header(false).build().run(input, output);
+        assertEquals(List.of("A,35,35"), Files.readAllLines(output, StandardCharsets.US_ASCII));
+
+        LedgerDpdPipeline.builder().calculationDate(CALCULATION_DATE).header(false)
+                .paidTolerance(new BigDecimal("0.50")).build().run(input, output);
+        assertEquals(List.of("A,10,10"), Files.readAllLines(output, StandardCharsets.US_ASCII));
+
+        Files.writeString(input, "B,DISBURSEMENT,1,2025-01-10,1000,999,NOT_PAID,,\n", StandardCharsets.US_ASCII);
+        LedgerDpdPipeline.builder().calculationDate(CALCULATION_DATE).header(false)
+                .paidTolerance(new BigDecimal("5")).build().run(input, output);
+        assertEquals(List.of("B,0,0"), Files.readAllLines(output, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    @DisplayName("malformed lines are rejected with their line number")
+    void malformed() throws IOException {
+        Path output = directory.resolve("dpd.csv");
+        LedgerDpdPipeline pipeline = LedgerDpdPipeline.builder().calculationDate(CALCULATION_DATE).header(false).build();
+
+        Path unordered = directory.resolve("unordered.csv");
+        Files.writeString(unordered, "A,DISBURSEMENT,2,2025-02-10,1,,NOT_PAID,,\nA,DISBURSEMENT,1,2025-01-10,1,,NOT_PAID,,\n");
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> pipeline.run(unordered, output));
+        assertEquals("line 2: rows of a loan must be ordered by period", exception.getMessage());
+
+        Path badDate = directory.resolve("bad-date.csv");
+        Files.writeString(badDate, "A,DISBURSEMENT,1,2025-02-30,1,,NOT_PAID,,\n");
+        assertThrows(IllegalArgumentException.class, () -> pipeline.run(badDate, output));
+
+        Path badAmount = directory.resolve("bad-amount.csv");
+        Files.writeString(badAmount, "A,DISBURSEMENT,1,2025-02-10,1.005,,NOT_PAID,,\n");
+        assertThrows(IllegalArgumentException.class, () -> pipeline.run(badAmount, output));
+    }
+
+    @Test
+    @DisplayName("loan ids that come back after another loan and numbers without digits are rejected")
+    void interleavedAndEmptyNumbers() throws IOException {
+        Path output = directory.resolve("dpd.csv");
+        LedgerDpdPipeline pipeline = LedgerDpdPipeline.builder().calculationDate(CALCULATION_DATE).header(false).build();
+
+        Path interleaved = directory.resolve("interleaved.csv");
+        Files.writeString(interleaved, "A,DISBURSEMENT,1,2025-01-10,1,,NOT_PAID,,\n"
+                + "B,DISBURSEMENT,1,2025-01-10,1,,NOT_PAID,,\n"
+                + "A,DISBURSEMENT,2,2025-02-10,1,,NOT_PAID,,\n");
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> pipeline.run(interleaved, output));
+        assertEquals("line 3: loan id A is out of order, rows must be grouped and sorted by loan id", exception.getMessage());
+
+        for (String line : List.of("A,DISBURSEMENT,-,2025-01-10,1,,NOT_PAID,,\n",
+                "A,DISBURSEMENT,1,2025-01-10,.,,NOT_PAID,,\n",
+                "A,DISBURSEMENT,1,2025-01-10,-,,NOT_PAID,,\n",
+                "A,DISBURSEMENT,1,2025-01-10,1,-.,NOT_PAID,,\n")) {
+            Path noDigits = directory.resolve("no-digits.csv");
+            Files.writeString(noDigits, line);
+            assertThrows(IllegalArgumentException.class, () -> pipeline.run(noDigits, output), line);
+        }
+    }
+
+    @Test
+    @DisplayName("loan ids longer than the output buffer are written in full")
+    void longLoanId() throws IOException {
+        String longId = "X".repeat(3_000);
+        Path input = directory.resolve("ledger.csv");
+        Path output = directory.resolve("dpd.csv");
+        Files.writeString(input, "A,DISBURSEMENT,1,2025-01-10,1,,NOT_PAID,,\n"
+                + longId + ",DISBURSEMENT,1,2025-01-10,1,,NOT_PAID,,\n", StandardCharsets.US_ASCII);
+
+        LedgerDpdPipeline.builder().calculationDate(CALCULATION_DATE).header(false).bufferSize(4096).build().run(input, output);
+
+        assertEquals(List.of("A,35,35", longId + ",35,35"), Files.readAllLines(output, StandardCharsets.US_ASCII));
+    }
+
+    private static List<String> ledger(List<InstallmentLoanV3> loans, char delimiter) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.join(String.valueOf(delimiter), "loan_id", "loan_status", "period", "maturity_date", "amount",
+                "paid_amount", "repayment_status", "repayment_date", "written_off_date"));
+        for (int i = 0; i < loans.size(); i++) {
+            InstallmentLoanV3 loan = loans.get(i);
+            for (InstallmentV3 installment : loan.getInstallments()) {
+                lines.add(String.join(String.valueOf(delimiter),
+                        "L" + i,
+                        loan.getStatus().name(),
+                        String.valueOf(installment.getPeriod()),
+                        Objects.toString(installment.getMaturityDate(), ""),
+                        Objects.toString(installment.getAmount(), ""),
+                        Objects.toString(installment.getPaidAmount(), ""),
+                        Objects.toString(installment.getRepaymentStatus(), ""),
+                        Objects.toString(installment.getRepaymentDate(), ""),
+                        Objects.toString(installment.getWrittenOfDate(), "")));
+            }
+        }
+        return lines;
+    }
+}
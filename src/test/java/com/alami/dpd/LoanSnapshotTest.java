@@ -0,0 +1,135 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LoanSnapshotTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("mapped snapshot gives the same DPD as the product calculators")
+    void matchesProductCalculators() throws IOException {
+        Random random = new Random(3);
+        List<Object> loans = new ArrayList<>();
+        LoanSnapshot.Writer writer = LoanSnapshot.writer();
+        for (int i = 0; i < 1_500; i++) {
+            // added in descending id order so the writer has to sort the index
+            long loanId = 1_000_000L - i * 7L;
+            switch (i % 3) {
+                case 0 -> {
+                    InstallmentLoanV3 loan = RandomSchedules.loan(random);
+                    loans.add(loan);
+                    writer.add(loanId, loan);
+                }
+                case 1 -> {
+                    LumpsumLoan loan = LumpsumLoan.builder()
+                            .maturityDate(RandomSchedules.calculationDate(random))
+                            .status(i % 2 == 0 ? Status.DISBURSEMENT : Status.REPAYMENT_SUCCESS)
+                            .repaymentStatus(RepaymentStatus.NOT_PAID)
+                            .build();
+                    loans.add(loan);
+                    writer.add(loanId, loan);
+                }
+                default -> {
+                    List<PartialLumpsumLoan> tranches = new ArrayList<>();
+                    for (int period = 1 + random.nextInt(3); period > 0; period--) {
+                        tranches.add(PartialLumpsumLoan.builder()
+                                .period(period)
+                                .amount(BigDecimal.valueOf(250_000.5))
+                                .maturityDate(RandomSchedules.calculationDate(random))
+                                .status(RepaymentStatus.NOT_PAID)
+                                .build());
+                    }
+                    loans.add(tranches);
+                    writer.addPartialLumpsum(loanId, tranches);
+                }
+            }
+        }
+        Path file = directory.resolve("loans.snapshot");
+        writer.write(file);
+
+        LoanSnapshot snapshot = LoanSnapshot.open(file);
+        assertEquals(loans.size(), snapshot.loanCount());
+        assertEquals(-1, snapshot.indexOf(1L));
+        for (int i = 0; i < loans.size(); i++) {
+            int loan = snapshot.indexOf(1_000_000L - i * 7L);
+            LocalDate calculationDate = RandomSchedules.calculationDate(random);
+            Dpd expected = expected(loans.get(i), calculationDate);
+            Dpd actual = snapshot.calculateLatestDpd(loan, calculationDate);
+            assertEquals(expected.getLatestDpd(), actual.getLatestDpd(), "latestDpd of loan " + i + " at " + calculationDate);
+            assertEquals(expected.getMaxDpd(), actual.getMaxDpd(), "maxDpd of loan " + i + " at " + calculationDate);
+        }
+    }
+
+    @Test
+    @DisplayName("rows and index round-trip through the file")
+    void roundTrip() throws IOException {
+        InstallmentLoanV3 loan = RandomSchedules.loan(new Random(5));
+        Path file = directory.resolve("one.snapshot");
+        LoanSnapshot.writer().add(42L, loan).write(file);
+
+        LoanSnapshot snapshot = LoanSnapshot.open(file);
+        ColumnarSchedule schedule = ColumnarSchedule.of(List.of(loan));
+        assertEquals(42L, snapshot.loanId(0));
+        assertEquals(Product.INSTALLMENT, snapshot.product(0));
+        assertEquals(loan.getStatus(), snapshot.status(0));
+        assertEquals(schedule.rowCount(), snapshot.rowCount(0));
+        for (int row = 0; row < schedule.rowCount(); row++) {
+            assertEquals(schedule.period(row), snapshot.period(row));
+            assertEquals(schedule.maturityDay(row), snapshot.maturityDay(row));
+            assertEquals(schedule.repaymentDay(row), snapshot.repaymentDay(row));
+            assertEquals(schedule.writtenOffDay(row), snapshot.writtenOffDay(row));
+            assertEquals(schedule.repaymentStatus(row), snapshot.repaymentStatus(row));
+            assertEquals(schedule.amount(row), snapshot.amount(row));
+            assertEquals(schedule.paidAmount(row), snapshot.paidAmount(row));
+        }
+    }
+
+    @Test
+    @DisplayName("duplicate loan ids are rejected")
+    void duplicateLoanId() {
+        LoanSnapshot.Writer writer = LoanSnapshot.writer()
+                .add(2L, RandomSchedules.loan(new Random(1)))
+                .add(1L, RandomSchedules.loan(new Random(2)))
+                .add(2L, RandomSchedules.loan(new Random(3)));
+
+        assertThrows(IllegalArgumentException.class, () -> writer.write(directory.resolve("duplicate.snapshot")));
+    }
+
+    @Test
+    @DisplayName("partial lumpsum loan without tranches is rejected")
+    void emptyPartialLumpsum() throws IOException {
+        LoanSnapshot.Writer writer = LoanSnapshot.writer();
+
+        assertThrows(IllegalArgumentException.class, () -> writer.addPartialLumpsum(1L, List.of()));
+        Path file = directory.resolve("empty-tranches.snapshot");
+        writer.add(2L, RandomSchedules.loan(new Random(4))).write(file);
+        LoanSnapshot snapshot = LoanSnapshot.open(file);
+        assertEquals(1, snapshot.loanCount());
+        assertEquals(-1, snapshot.indexOf(1L));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Dpd expected(Object loan, LocalDate calculationDate) {
+        if (loan instanceof InstallmentLoanV3 installmentLoan) {
+            return installmentLoan.calculateLatestDpd(calculationDate);
+        }
+        if (loan instanceof LumpsumLoan lumpsumLoan) {
+            return new Lumpsum().calculate(lumpsumLoan, calculationDate);
+        }
+        return new PartialLumpsum().calculate((List<PartialLumpsumLoan>) loan, calculationDate);
+    }
+}
@@ -0,0 +1,77 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class LumpsumBatchTest {
+    private static final LocalDate CALCULATION_DATE = LocalDate.parse("2025-06-30");
+
+    @Test
+    @DisplayName("batch DPD matches Lumpsum.calculate for every status, including the tail of the batch")
+    void matchesLumpsum() {
+        Random random = new Random(23);
+        int size = 10_007;
+        int[] maturityDays = new int[size];
+        byte[] statuses = new byte[size];
+        LumpsumLoan[] loans = new LumpsumLoan[size];
+        for (int i = 0; i < size; i++) {
+            LocalDate maturityDate = CALCULATION_DATE.plusDays(random.nextInt(400) - 300);
+            Status status = Status.values()[random.nextInt(Status.values().length)];
+            maturityDays[i] = (int) maturityDate.toEpochDay();
+            statuses[i] = (byte) status.ordinal();
+            loans[i] = LumpsumLoan.builder().maturityDate(maturityDate).status(status).build();
+        }
+        int[] dpd = new int[size];
+        int[] scalarDpd = new int[size];
+
+        LumpsumBatch.calculate(maturityDays, statuses, CALCULATION_DATE, dpd);
+        new ScalarLumpsumKernel().calculate(maturityDays, statuses, 0, size, (int) CALCULATION_DATE.toEpochDay(), scalarDpd);
+
+        Lumpsum lumpsum = new Lumpsum();
+        for (int i = 0; i < size; i++) {
+            int expected = lumpsum.calculate(loans[i], CALCULATION_DATE).getLatestDpd();
+            assertEquals(expected, dpd[i], "loan " + i);
+            assertEquals(expected, scalarDpd[i], "loan " + i);
+        }
+    }
+
+    @Test
+    @DisplayName("the vector kernel is used whenever the vector profile compiled it")
+    void vectorizedWithProfile() {
+        boolean compiled;
+        try {
+            Class.forName(LumpsumBatch.VECTOR_KERNEL, false, LumpsumBatch.class.getClassLoader());
+            compiled = true;
+        } catch (ClassNotFoundException e) {
+            compiled = false;
+        }
+        assertTrue(!compiled || LumpsumBatch.isVectorized(), "vector kernel compiled but failed to load");
+    }
+
+    @Test
+    @DisplayName("sub-range only writes its own indexes and bad ranges are rejected")
+    void range() {
+        int[] maturityDays = new int[20];
+        byte[] statuses = new byte[20];
+        Arrays.fill(maturityDays, (int) CALCULATION_DATE.minusDays(5).toEpochDay());
+        Arrays.fill(statuses, InstallmentRows.NO_STATUS);
+        int[] dpd = new int[20];
+
+        LumpsumBatch.calculate(maturityDays, statuses, 3, 19, CALCULATION_DATE, dpd);
+
+        assertEquals(0, dpd[2]);
+        assertEquals(5, dpd[3]);
+        assertEquals(5, dpd[18]);
+        assertEquals(0, dpd[19]);
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> LumpsumBatch.calculate(maturityDays, statuses, 0, 21, CALCULATION_DATE, dpd));
+    }
+}
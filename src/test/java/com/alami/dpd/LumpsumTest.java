@@ -3,6 +3,9 @@ package com.alami.dpd;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
@@ -170,4 +173,28 @@ public class LumpsumTest {
             assertEquals(0, dpd.getMaxDpd());
         }
     }
+
+    @Nested
+    class Batch {
+        @Test
+        @DisplayName("batch: same DPD as calculating each loan as of the batch date")
+        void calculate_all() {
+            LocalDate today = LocalDate.of(2024, 12, 31);
+            List<LumpsumLoan> lumpsumLoans = List.of(
+                LumpsumLoan.builder().maturityDate(LocalDate.of(2024, 12, 24)).status(Status.DISBURSEMENT).build(),
+                LumpsumLoan.builder().maturityDate(LocalDate.of(2025, 1, 24)).status(Status.DISBURSEMENT).build(),
+                LumpsumLoan.builder().maturityDate(LocalDate.of(2024, 11, 24)).status(Status.REPAYMENT_SUCCESS).build()
+            );
+
+            Map<LumpsumLoan, Dpd> dpds = new HashMap<>();
+            lumpsum.calculateAll(lumpsumLoans, today, dpds::put);
+
+            for (LumpsumLoan lumpsumLoan : lumpsumLoans) {
+                Dpd expected = lumpsum.calculate(lumpsumLoan, today);
+                assertEquals(expected.getLatestDpd(), dpds.get(lumpsumLoan).getLatestDpd());
+                assertEquals(expected.getMaxDpd(), dpds.get(lumpsumLoan).getMaxDpd());
+            }
+            assertEquals(7, dpds.get(lumpsumLoans.get(0)).getLatestDpd());
+        }
+    }
 }
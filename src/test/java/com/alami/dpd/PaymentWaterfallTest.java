@@ -0,0 +1,153 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class PaymentWaterfallTest {
+    private static final LocalDate FIRST_MATURITY_DATE = LocalDate.parse("2025-01-10");
+    private static final LocalDate CALCULATION_DATE = LocalDate.parse("2025-04-20");
+
+    private final InstallmentLoanV3 loan = loan(6);
+
+    @Test
+    @DisplayName("payments fill the oldest installments first and credit waits for the next maturity")
+    void oldestFirst() {
+        PaymentWaterfall waterfall = PaymentWaterfall.builder().build();
+
+        PaymentWaterfall.Allocation allocation = waterfall.allocate(loan, List.of(
+                payment("2025-03-01", "600"),
+                payment("2025-02-15", "1500")), CALCULATION_DATE);
+
+        List<InstallmentV3> installments = allocation.getLoan().getInstallments();
+        assertInstallment(installments.get(0), RepaymentStatus.PAID, "1000", "2025-02-15");
+        assertInstallment(installments.get(1), RepaymentStatus.PAID, "1000", "2025-03-01");
+        assertInstallment(installments.get(2), RepaymentStatus.PARTIAL_REPAYMENT, "100", "2025-03-10");
+        assertInstallment(installments.get(3), RepaymentStatus.NOT_PAID, null, null);
+        assertEquals(41, allocation.getDpd().getLatestDpd());
+        assertEquals(41, allocation.getDpd().getMaxDpd());
+        assertEquals(0, BigDecimal.ZERO.compareTo(allocation.getUnallocated()));
+        assertSameDpd(allocation);
+    }
+
+    @Test
+    @DisplayName("prepayment applies what is left to later installments on the payment date")
+    void prepayment() {
+        PaymentWaterfall waterfall = PaymentWaterfall.builder().prepayment(true).build();
+
+        PaymentWaterfall.Allocation allocation = waterfall.allocate(loan, List.of(
+                payment("2025-02-15", "1500"),
+                payment("2025-03-01", "4600")), CALCULATION_DATE);
+
+        List<InstallmentV3> installments = allocation.getLoan().getInstallments();
+        for (int i = 1; i < 6; i++) {
+            assertInstallment(installments.get(i), RepaymentStatus.PAID, "1000", "2025-03-01");
+        }
+        assertEquals(0, new BigDecimal("100").compareTo(allocation.getUnallocated()));
+        assertEquals(19, allocation.getDpd().getLatestDpd());
+        assertEquals(36, allocation.getDpd().getMaxDpd());
+        assertSameDpd(allocation);
+    }
+
+    @Test
+    @DisplayName("paid tolerance closes a short installment, a payment after the calculation date is ignored")
+    void paidTolerance() {
+        PaymentWaterfall waterfall = PaymentWaterfall.builder().paidTolerance(new BigDecimal("1.00")).build();
+
+        PaymentWaterfall.Allocation allocation = waterfall.allocate(loan, List.of(
+                payment("2025-01-10", "999.50"),
+                payment("2025-05-01", "5000")), CALCULATION_DATE);
+
+        List<InstallmentV3> installments = allocation.getLoan().getInstallments();
+        assertInstallment(installments.get(0), RepaymentStatus.PAID, "999.50", "2025-01-10");
+        assertInstallment(installments.get(1), RepaymentStatus.NOT_PAID, null, null);
+        assertEquals(69, allocation.getDpd().getLatestDpd());
+        assertSameDpd(allocation);
+    }
+
+    @Test
+    @DisplayName("rows in minor units allocate the same way and untouched installments are kept as they are")
+    void primitiveRows() {
+        PaymentWaterfall waterfall = PaymentWaterfall.builder().build();
+        PaymentWaterfall.Allocation allocation = waterfall.allocate(loan, List.of(
+                payment("2025-02-15", "1500"),
+                payment("2025-03-01", "600")), CALCULATION_DATE);
+
+        InstallmentRowBuffer rows = new InstallmentRowBuffer();
+        for (InstallmentV3 installment : loan.getInstallments()) {
+            rows.add(installment.getPeriod(), EpochDays.of(installment.getMaturityDate()), InstallmentRows.NO_DATE,
+                    InstallmentRows.NO_DATE, 100_000, InstallmentRows.NO_AMOUNT, DpdKernel.NOT_PAID);
+        }
+        int[] paymentDays = {EpochDays.of(LocalDate.parse("2025-02-15")), EpochDays.of(LocalDate.parse("2025-03-01"))};
+        long unallocated = waterfall.allocate(rows, paymentDays, new long[]{150_000, 60_000}, 2, EpochDays.of(CALCULATION_DATE));
+
+        assertEquals(0, unallocated);
+        List<InstallmentV3> installments = allocation.getLoan().getInstallments();
+        for (int row = 0; row < rows.size(); row++) {
+            assertEquals(installments.get(row).getRepaymentStatus().ordinal(), rows.repaymentStatus(row));
+            assertEquals(EpochDays.of(installments.get(row).getRepaymentDate()), rows.repaymentDay(row));
+        }
+        assertEquals(10_000, rows.paidAmount(2));
+        assertSame(loan.getInstallments().get(3), installments.get(3));
+    }
+
+    @Test
+    @DisplayName("payments without date or amount, or with a negative amount, are rejected")
+    void invalidPayments() {
+        PaymentWaterfall waterfall = PaymentWaterfall.builder().build();
+
+        assertThrows(IllegalArgumentException.class, () -> waterfall.allocate(loan, List.of(
+                payment("2025-01-10", "500"),
+                new PaymentWaterfall.Payment(LocalDate.parse("2025-02-10"), null)), CALCULATION_DATE));
+        assertThrows(IllegalArgumentException.class, () -> waterfall.allocate(loan, List.of(
+                new PaymentWaterfall.Payment(null, new BigDecimal("500")),
+                payment("2025-01-10", "500")), CALCULATION_DATE));
+        assertThrows(IllegalArgumentException.class, () -> waterfall.allocate(loan, List.of(
+                payment("2025-01-10", "-500")), CALCULATION_DATE));
+    }
+
+    private static void assertSameDpd(PaymentWaterfall.Allocation allocation) {
+        Dpd expected = allocation.getLoan().calculateLatestDpd(CALCULATION_DATE);
+        assertEquals(expected.getLatestDpd(), allocation.getDpd().getLatestDpd());
+        assertEquals(expected.getMaxDpd(), allocation.getDpd().getMaxDpd());
+    }
+
+    private static void assertInstallment(InstallmentV3 installment, RepaymentStatus repaymentStatus,
+                                          String paidAmount, String repaymentDate) {
+        assertEquals(repaymentStatus, installment.getRepaymentStatus());
+        if (paidAmount == null) {
+            assertEquals(null, installment.getPaidAmount());
+        } else {
+            assertEquals(0, new BigDecimal(paidAmount).compareTo(installment.getPaidAmount()));
+        }
+        assertEquals(repaymentDate == null ? null : LocalDate.parse(repaymentDate), installment.getRepaymentDate());
+    }
+
+    private static PaymentWaterfall.Payment payment(String date, String amount) {
+        return new PaymentWaterfall.Payment(LocalDate.parse(date), new BigDecimal(amount));
+    }
+
+    private static InstallmentLoanV3 loan(int periods) {
+        List<InstallmentV3> installments = new ArrayList<>();
+        for (int period = 1; period <= periods; period++) {
+            installments.add(InstallmentV3.builder()
+                    .maturityDate(FIRST_MATURITY_DATE.plusMonths(period - 1))
+                    .amount(new BigDecimal("1000"))
+                    .repaymentStatus(RepaymentStatus.NOT_PAID)
+                    .period(period)
+                    .build());
+        }
+        return InstallmentLoanV3.builder()
+                .installments(installments)
+                .status(Status.DISBURSEMENT)
+                .build();
+    }
+}
@@ -0,0 +1,130 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class PortfolioDpdEngineTest {
+    private static final LocalDate CALCULATION_DATE = LocalDate.parse("2025-04-30");
+
+    private final List<Object> portfolio = portfolio(20_000);
+
+    @Test
+    @DisplayName("collection of mixed loans gives the same DPD as the single-loan calculators")
+    void collection() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        PortfolioDpdEngine engine = PortfolioDpdEngine.builder().pool(pool).chunkSize(64).build();
+
+        Map<Object, Dpd> results = new ConcurrentHashMap<>();
+        engine.calculate(portfolio, CALCULATION_DATE, results::put);
+        pool.shutdown();
+
+        assertMatchesSingleLoanCalculation(results);
+    }
+
+    @Test
+    @DisplayName("stream of mixed loans gives the same DPD as the single-loan calculators")
+    void stream() {
+        PortfolioDpdEngine engine = PortfolioDpdEngine.builder().build();
+
+        Map<Object, Dpd> results = new ConcurrentHashMap<>();
+        engine.calculate(portfolio.stream().filter(loan -> true), CALCULATION_DATE, results::put);
+
+        assertMatchesSingleLoanCalculation(results);
+    }
+
+    @Test
+    @DisplayName("single-product portfolio runs through the product calculator's batch method")
+    void productCalculator() {
+        List<LumpsumLoan> lumpsumLoans = new ArrayList<>();
+        for (Object loan : portfolio) {
+            if (loan instanceof LumpsumLoan lumpsumLoan) {
+                lumpsumLoans.add(lumpsumLoan);
+            }
+        }
+        PortfolioDpdEngine engine = PortfolioDpdEngine.builder().chunkSize(100).build();
+
+        Map<LumpsumLoan, Dpd> results = new ConcurrentHashMap<>();
+        engine.calculate(lumpsumLoans, new Lumpsum(), CALCULATION_DATE, results::put);
+
+        assertEquals(lumpsumLoans.size(), results.size());
+        for (LumpsumLoan lumpsumLoan : lumpsumLoans) {
+            assertEquals(new Lumpsum().calculate(lumpsumLoan).getLatestDpd(), results.get(lumpsumLoan).getLatestDpd());
+        }
+    }
+
+    @Test
+    @DisplayName("unsupported loan type is rejected")
+    void unsupportedLoan() {
+        PortfolioDpdEngine engine = PortfolioDpdEngine.builder().build();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> engine.calculate(List.of("loan"), CALCULATION_DATE, (loan, dpd) -> { }));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assertMatchesSingleLoanCalculation(Map<Object, Dpd> results) {
+        assertEquals(portfolio.size(), results.size());
+        for (Object loan : portfolio) {
+            Dpd expected;
+            if (loan instanceof InstallmentLoanV3 installmentLoan) {
+                expected = installmentLoan.calculateLatestDpd(CALCULATION_DATE);
+            } else if (loan instanceof LumpsumLoan lumpsumLoan) {
+                expected = new Lumpsum().calculate(lumpsumLoan);
+            } else {
+                expected = new PartialLumpsum().calculate((List<PartialLumpsumLoan>) loan);
+            }
+            assertEquals(expected.getLatestDpd(), results.get(loan).getLatestDpd());
+            assertEquals(expected.getMaxDpd(), results.get(loan).getMaxDpd());
+        }
+    }
+
+    private static List<Object> portfolio(int size) {
+        List<Object> loans = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            LocalDate maturityDate = CALCULATION_DATE.minusDays(i % 200).plusDays(30);
+            switch (i % 3) {
+                case 0 -> loans.add(LumpsumLoan.builder()
+                        .maturityDate(maturityDate)
+                        .today(CALCULATION_DATE)
+                        .status(i % 2 == 0 ? Status.DISBURSEMENT : Status.REPAYMENT_SUCCESS)
+                        .repaymentStatus(RepaymentStatus.NOT_PAID)
+                        .build());
+                case 1 -> loans.add(List.of(
+                        PartialLumpsumLoan.builder().period(1).maturityDate(maturityDate.minusDays(30))
+                                .today(CALCULATION_DATE).status(RepaymentStatus.PAID).build(),
+                        PartialLumpsumLoan.builder().period(2).maturityDate(maturityDate)
+                                .today(CALCULATION_DATE).status(RepaymentStatus.NOT_PAID).build()));
+                default -> {
+                    List<InstallmentV3> installments = new ArrayList<>();
+                    for (int period = 1; period <= 12; period++) {
+                        LocalDate installmentMaturityDate = maturityDate.minusMonths(6).plusMonths(period);
+                        boolean paid = period <= i % 7;
+                        installments.add(InstallmentV3.builder()
+                                .maturityDate(installmentMaturityDate)
+                                .amount(BigDecimal.valueOf(1_000_000))
+                                .repaymentStatus(paid ? RepaymentStatus.PAID : RepaymentStatus.NOT_PAID)
+                                .repaymentDate(paid ? installmentMaturityDate.plusDays(i % 5) : null)
+                                .period(period)
+                                .build());
+                    }
+                    loans.add(InstallmentLoanV3.builder()
+                            .installments(installments)
+                            .status(Status.DISBURSEMENT)
+                            .build());
+                }
+            }
+        }
+        return loans;
+    }
+}
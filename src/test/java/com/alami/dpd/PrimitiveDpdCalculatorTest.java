@@ -0,0 +1,69 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class PrimitiveDpdCalculatorTest {
+    private static final LocalDate CALCULATION_DATE = LocalDate.parse("2025-01-05");
+
+    @Test
+    @DisplayName("primitive results match calculateLatestDpd, also for schedules out of period order")
+    void matchesInstallmentLoanV3() {
+        Random random = new Random(17);
+        List<InstallmentLoanV3> loans = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            InstallmentLoanV3 loan = RandomSchedules.loan(random);
+            if (i % 4 == 0) {
+                List<InstallmentV3> shuffled = new ArrayList<>(loan.getInstallments());
+                Collections.shuffle(shuffled, random);
+                loan = InstallmentLoanV3.builder().installments(shuffled).status(loan.getStatus()).build();
+            }
+            loans.add(loan);
+        }
+        int[] latestDpd = new int[loans.size()];
+        int[] maxDpd = new int[loans.size()];
+
+        PrimitiveDpdCalculator.calculateAll(loans, CALCULATION_DATE, (index, latest, max) -> {
+            latestDpd[index] = latest;
+            maxDpd[index] = max;
+        });
+
+        for (int i = 0; i < loans.size(); i++) {
+            Dpd expected = loans.get(i).calculateLatestDpd(CALCULATION_DATE);
+            assertEquals(expected.getLatestDpd(), latestDpd[i], "latestDpd of loan " + i);
+            assertEquals(expected.getMaxDpd(), maxDpd[i], "maxDpd of loan " + i);
+        }
+    }
+
+    @Test
+    @DisplayName("steady state calculation allocates nothing per loan")
+    void allocationFree() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Random random = new Random(19);
+        List<InstallmentLoanV3> loans = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            loans.add(RandomSchedules.loan(random));
+        }
+        long[] checksum = new long[1];
+        PrimitiveDpdSink sink = (index, latest, max) -> checksum[0] += latest + max;
+        PrimitiveDpdCalculator.calculateAll(loans, CALCULATION_DATE, sink);
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 20; i++) {
+            PrimitiveDpdCalculator.calculateAll(loans, CALCULATION_DATE, sink);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue(allocated < 20 * loans.size(), "allocated " + allocated + " bytes for " + 20 * loans.size() + " loans");
+    }
+}
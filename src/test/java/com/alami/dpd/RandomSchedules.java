@@ -0,0 +1,80 @@
+package com.alami.dpd;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random installment loans covering grace periods, partial repayments, early and late payments,
+ * several rows per period and written-off loans, for comparing calculation paths.
+ */
+final class RandomSchedules {
+    static final LocalDate FIRST_MATURITY_DATE = LocalDate.parse("2024-01-20");
+    private static final Status[] ACTIVE_STATUSES = {
+            Status.DISBURSEMENT, Status.READY_FOR_PARTIAL_REPAYMENT, Status.PARTIAL_REPAYMENT_SUCCESS, Status.REPAYMENT_SUCCESS
+    };
+
+    private RandomSchedules() {
+    }
+
+    static InstallmentLoanV3 loan(Random random) {
+        int periods = 1 + random.nextInt(40);
+        boolean daily = random.nextInt(4) == 0;
+        boolean writtenOff = random.nextInt(8) == 0;
+        List<InstallmentV3> installments = new ArrayList<>();
+        for (int period = 1; period <= periods; period++) {
+            LocalDate maturityDate = daily
+                    ? FIRST_MATURITY_DATE.plusDays(period - 1L)
+                    : FIRST_MATURITY_DATE.plusMonths(period - 1L);
+            int rows = random.nextInt(5) == 0 ? 2 : 1;
+            for (int i = 0; i < rows; i++) {
+                installments.add(installment(random, period, maturityDate));
+            }
+        }
+        if (writtenOff) {
+            boolean withMaturity = random.nextBoolean();
+            installments.add(InstallmentV3.builder()
+                    .maturityDate(withMaturity ? FIRST_MATURITY_DATE.plusMonths(periods) : null)
+                    .repaymentStatus(RepaymentStatus.WRITE_OFF)
+                    .writtenOfDate(withMaturity && random.nextBoolean()
+                            ? null
+                            : FIRST_MATURITY_DATE.plusMonths(periods).plusDays(random.nextInt(200)))
+                    .period(periods + 1)
+                    .build());
+        }
+        return InstallmentLoanV3.builder()
+                .installments(installments)
+                .status(writtenOff ? Status.WRITE_OFF : ACTIVE_STATUSES[random.nextInt(ACTIVE_STATUSES.length)])
+                .build();
+    }
+
+    /**
+     * Dates from before the first maturity until well after the last one.
+     */
+    static LocalDate calculationDate(Random random) {
+        return FIRST_MATURITY_DATE.minusDays(10).plusDays(random.nextInt(1_400));
+    }
+
+    private static InstallmentV3 installment(Random random, int period, LocalDate maturityDate) {
+        InstallmentV3.InstallmentV3Builder installment = InstallmentV3.builder()
+                .maturityDate(maturityDate)
+                .amount(BigDecimal.valueOf(1_000_000))
+                .period(period);
+        switch (random.nextInt(6)) {
+            case 0 -> installment.amount(BigDecimal.ZERO).repaymentStatus(RepaymentStatus.GRACE_PERIOD);
+            case 1 -> installment.repaymentStatus(RepaymentStatus.NOT_PAID);
+            case 2 -> installment.repaymentStatus(RepaymentStatus.PARTIAL_REPAYMENT)
+                    .paidAmount(BigDecimal.valueOf(400_000))
+                    .repaymentDate(maturityDate.plusDays(random.nextInt(30) - 10));
+            case 3 -> installment.repaymentStatus(RepaymentStatus.PAID)
+                    .paidAmount(BigDecimal.valueOf(1_000_000))
+                    .repaymentDate(random.nextInt(20) == 0 ? null : maturityDate.plusDays(random.nextInt(60) - 15));
+            default -> installment.repaymentStatus(RepaymentStatus.PAID)
+                    .paidAmount(BigDecimal.valueOf(1_000_000))
+                    .repaymentDate(maturityDate);
+        }
+        return installment.build();
+    }
+}
@@ -0,0 +1,91 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RepaymentEventProcessorTest {
+
+    @Test
+    @DisplayName("live DPD after every event matches a full calculation of the updated loan")
+    void matchesFullCalculation() {
+        Random random = new Random(13);
+        LocalDate today = RandomSchedules.FIRST_MATURITY_DATE.minusDays(5);
+        RepaymentEventProcessor processor = new RepaymentEventProcessor(today);
+        List<InstallmentLoanV3> loans = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            InstallmentLoanV3 loan = RandomSchedules.loan(random);
+            loans.add(loan);
+            processor.add(i, loan);
+        }
+
+        for (int step = 0; step < 20_000; step++) {
+            if (step % 50 == 0) {
+                // mostly forward, now and then back in time
+                today = today.plusDays(random.nextInt(10) == 0 ? -random.nextInt(60) : random.nextInt(15));
+                processor.advanceTo(today);
+            }
+            int loanId = random.nextInt(loans.size());
+            int periods = loans.get(loanId).getInstallments().stream().mapToInt(InstallmentV3::getPeriod).max().orElse(1);
+            RepaymentEvent event = event(random, loanId, 1 + random.nextInt(periods), today);
+
+            Dpd actual = processor.apply(event);
+
+            Dpd expected = processor.loan(loanId).calculateLatestDpd(today);
+            assertEquals(expected.getLatestDpd(), actual.getLatestDpd(), "latestDpd after " + event + " at " + today);
+            assertEquals(expected.getMaxDpd(), actual.getMaxDpd(), "maxDpd after " + event + " at " + today);
+        }
+        for (int loanId = 0; loanId < loans.size(); loanId++) {
+            Dpd expected = processor.loan(loanId).calculateLatestDpd(today);
+            assertEquals(expected.getLatestDpd(), processor.dpd(loanId).getLatestDpd());
+            assertEquals(expected.getMaxDpd(), processor.dpd(loanId).getMaxDpd());
+        }
+    }
+
+    @Test
+    @DisplayName("repaying the only overdue installment late keeps its delay as latestDpd and maxDpd until the next one is overdue")
+    void repayment() {
+        InstallmentLoanV3 loan = InstallmentLoanV3.builder()
+                .status(Status.DISBURSEMENT)
+                .installments(List.of(
+                        InstallmentV3.builder().period(1).maturityDate(LocalDate.parse("2025-01-10"))
+                                .amount(BigDecimal.valueOf(500_000)).repaymentStatus(RepaymentStatus.NOT_PAID).build(),
+                        InstallmentV3.builder().period(2).maturityDate(LocalDate.parse("2025-02-10"))
+                                .amount(BigDecimal.valueOf(500_000)).repaymentStatus(RepaymentStatus.NOT_PAID).build()))
+                .build();
+        RepaymentEventProcessor processor = new RepaymentEventProcessor(LocalDate.parse("2025-01-25"));
+        processor.add(7L, loan);
+        assertEquals(15, processor.dpd(7L).getLatestDpd());
+
+        Dpd dpd = processor.apply(RepaymentEvent.builder()
+                .loanId(7L).period(1).status(RepaymentStatus.PAID).date(LocalDate.parse("2025-01-25")).build());
+
+        assertEquals(15, dpd.getLatestDpd());
+        assertEquals(15, dpd.getMaxDpd());
+        processor.advanceTo(LocalDate.parse("2025-02-15"));
+        assertEquals(5, processor.dpd(7L).getLatestDpd());
+        assertEquals(15, processor.dpd(7L).getMaxDpd());
+        assertThrows(IllegalArgumentException.class, () -> processor.apply(RepaymentEvent.builder()
+                .loanId(7L).period(9).status(RepaymentStatus.PAID).date(LocalDate.parse("2025-02-15")).build()));
+    }
+
+    private static RepaymentEvent event(Random random, long loanId, int period, LocalDate today) {
+        LocalDate date = today.minusDays(random.nextInt(40));
+        RepaymentEvent.RepaymentEventBuilder event = RepaymentEvent.builder().loanId(loanId).date(date);
+        return switch (random.nextInt(10)) {
+            case 0 -> event.status(RepaymentStatus.WRITE_OFF).build();
+            case 1 -> event.status(RepaymentStatus.WRITE_OFF).period(period).build();
+            case 2, 3 -> event.status(RepaymentStatus.PARTIAL_REPAYMENT).period(period)
+                    .paidAmount(BigDecimal.valueOf(100_000)).build();
+            default -> event.status(RepaymentStatus.PAID).period(period).build();
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RollRateMatrixTest {
+    private static final List<LocalDate> MONTH_ENDS = List.of(
+            LocalDate.parse("2024-05-31"), LocalDate.parse("2024-06-30"), LocalDate.parse("2024-07-31"));
+
+    @Test
+    @DisplayName("parallel roll counts match bucketing calculateLatestDpd at each date, the sink gets the last date")
+    void matchesSingleDateCalculation() {
+        Random random = new Random(21);
+        List<Object> loans = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            switch (i % 3) {
+                case 0 -> loans.add(LumpsumLoan.builder()
+                        .maturityDate(MONTH_ENDS.get(0).plusDays(random.nextInt(120) - 60))
+                        .status(random.nextBoolean() ? Status.DISBURSEMENT : Status.REPAYMENT_SUCCESS)
+                        .build());
+                case 1 -> loans.add(List.of(PartialLumpsumLoan.builder()
+                        .period(1)
+                        .maturityDate(MONTH_ENDS.get(0).plusDays(random.nextInt(120) - 60))
+                        .status(RepaymentStatus.NOT_PAID)
+                        .build()));
+                default -> loans.add(RandomSchedules.loan(random));
+            }
+        }
+        DpdBuckets buckets = DpdBuckets.standard();
+        RollRateMatrix matrix = RollRateMatrix.between(buckets, MONTH_ENDS);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        DpdBuckets lastDate = DpdBuckets.standard();
+        matrix.addAll(loans, PortfolioDpdEngine.builder().pool(pool).chunkSize(64).build(), lastDate);
+        pool.shutdown();
+
+        PortfolioDpdCalculator calculator = PortfolioDpdCalculator.builder().build();
+        long[][][][] expected = new long[Product.values().length][2][buckets.bucketCount()][buckets.bucketCount()];
+        DpdBuckets expectedLastDate = DpdBuckets.standard();
+        for (Object loan : loans) {
+            expectedLastDate.accept(loan, calculator.calculate(loan, MONTH_ENDS.get(2)));
+            int[] bucket = new int[MONTH_ENDS.size()];
+            for (int d = 0; d < MONTH_ENDS.size(); d++) {
+                bucket[d] = buckets.bucketOf(calculator.calculate(loan, MONTH_ENDS.get(d)).getLatestDpd());
+            }
+            for (int t = 0; t < 2; t++) {
+                expected[Product.of(loan).ordinal()][t][bucket[t]][bucket[t + 1]]++;
+            }
+        }
+        for (Product product : Product.values()) {
+            for (int t = 0; t < 2; t++) {
+                for (int from = 0; from < buckets.bucketCount(); from++) {
+                    for (int to = 0; to < buckets.bucketCount(); to++) {
+                        assertEquals(expected[product.ordinal()][t][from][to], matrix.count(product, t, from, to),
+                                product + " " + t + " " + buckets.bucketLabel(from) + " -> " + buckets.bucketLabel(to));
+                    }
+                }
+            }
+            for (int bucket = 0; bucket < buckets.bucketCount(); bucket++) {
+                assertEquals(expectedLastDate.latestCount(product, bucket), lastDate.latestCount(product, bucket));
+                assertEquals(expectedLastDate.maxCount(product, bucket), lastDate.maxCount(product, bucket));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("roll rate is the share of a bucket that moved to another")
+    void rollRate() {
+        RollRateMatrix matrix = RollRateMatrix.between(DpdBuckets.standard(), LocalDate.parse("2025-01-31"), LocalDate.parse("2025-02-28"));
+        matrix.add(LumpsumLoan.builder().maturityDate(LocalDate.parse("2025-01-11")).status(Status.DISBURSEMENT).build());
+        matrix.add(LumpsumLoan.builder().maturityDate(LocalDate.parse("2025-01-30")).status(Status.DISBURSEMENT).build());
+        matrix.add(LumpsumLoan.builder().maturityDate(LocalDate.parse("2025-02-20")).status(Status.DISBURSEMENT).build());
+
+        assertEquals(1, matrix.count(Product.LUMPSUM, 0, 1, 2));
+        assertEquals(1, matrix.count(0, 1, 1));
+        assertEquals(1, matrix.count(0, 0, 1));
+        assertEquals(0.5, matrix.rollRate(Product.LUMPSUM, 0, 1, 2), 1e-9);
+        assertEquals(0, matrix.rollRate(Product.INSTALLMENT, 0, 1, 2));
+        assertThrows(IllegalArgumentException.class,
+                () -> RollRateMatrix.between(DpdBuckets.standard(), LocalDate.parse("2025-02-28"), LocalDate.parse("2025-01-31")));
+    }
+}
@@ -0,0 +1,92 @@
+package com.alami.dpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class VintageAnalysisTest {
+    private static final LocalDate OBSERVATION_DATE = LocalDate.parse("2026-06-30");
+    private static final int[] THRESHOLDS = {30, 60, 90};
+
+    @Test
+    @DisplayName("first crossing dates match a day-by-day search with calculateLatestDpd, as does the DPD at the observation date")
+    void firstCrossingDays() {
+        Random random = new Random(22);
+        VintageAnalysis analysis = VintageAnalysis.builder().observationDate(OBSERVATION_DATE).build();
+        LocalDate disbursementDate = RandomSchedules.FIRST_MATURITY_DATE.minusMonths(1);
+        int[] crossingDays = new int[THRESHOLDS.length];
+        for (int i = 0; i < 200; i++) {
+            InstallmentLoanV3 loan = RandomSchedules.loan(random);
+            long dpd = analysis.firstCrossingDays(loan, (int) disbursementDate.toEpochDay(), crossingDays);
+
+            int[] expected = new int[THRESHOLDS.length];
+            Arrays.fill(expected, InstallmentRows.NO_DATE);
+            for (LocalDate date = disbursementDate; !date.isAfter(OBSERVATION_DATE); date = date.plusDays(1)) {
+                int maxDpd = loan.calculateLatestDpd(date).getMaxDpd();
+                for (int t = 0; t < THRESHOLDS.length; t++) {
+                    if (expected[t] == InstallmentRows.NO_DATE && maxDpd >= THRESHOLDS[t]) {
+                        expected[t] = (int) date.toEpochDay();
+                    }
+                }
+            }
+            for (int t = 0; t < THRESHOLDS.length; t++) {
+                assertEquals(expected[t], crossingDays[t], "loan " + i + " threshold " + THRESHOLDS[t]);
+            }
+            Dpd observed = loan.calculateLatestDpd(OBSERVATION_DATE);
+            assertEquals(observed.getLatestDpd(), DpdKernel.latestDpd(dpd), "loan " + i);
+            assertEquals(observed.getMaxDpd(), DpdKernel.maxDpd(dpd), "loan " + i);
+        }
+    }
+
+    @Test
+    @DisplayName("cohort curves count crossings by month on book, merged across threads, the sink gets the observation date")
+    void curves() {
+        Map<Object, LocalDate> disbursementDates = new IdentityHashMap<>();
+        List<Object> loans = new ArrayList<>();
+        for (int i = 0; i < 4_000; i++) {
+            LocalDate disbursementDate = LocalDate.parse("2026-01-15").plusMonths(i % 3);
+            Object loan = LumpsumLoan.builder()
+                    .maturityDate(disbursementDate.plusMonths(1))
+                    .status(i % 4 == 0 ? Status.REPAYMENT_SUCCESS : Status.DISBURSEMENT)
+                    .build();
+            loans.add(loan);
+            disbursementDates.put(loan, disbursementDate);
+        }
+
+        DpdBuckets buckets = DpdBuckets.standard();
+        VintageCurves curves = VintageAnalysis.builder()
+                .observationDate(OBSERVATION_DATE)
+                .maxMonthsOnBook(12)
+                .engine(PortfolioDpdEngine.builder().chunkSize(100).build())
+                .build()
+                .calculate(loans, disbursementDates::get, buckets);
+
+        YearMonth january = YearMonth.parse("2026-01");
+        assertEquals(List.of(january, YearMonth.parse("2026-02"), YearMonth.parse("2026-03")), curves.cohorts());
+        long cohortSize = curves.loanCount(january);
+        assertEquals(1334, cohortSize);
+        // matures 2026-02-15, DPD 30 on 2026-03-17 (month on book 2), DPD 90 on 2026-05-16 (4)
+        assertEquals(0, curves.reachedCount(january, 30, 1));
+        assertEquals(1000, curves.reachedCount(january, 30, 2));
+        assertEquals(0, curves.reachedCount(january, 90, 3));
+        assertEquals(1000, curves.reachedCount(january, 90, 4));
+        assertEquals(1000.0 / cohortSize, curves.share(january, 90, 5), 1e-9);
+        assertEquals(5, curves.observedMonthsOnBook(january));
+        assertTrue(Double.isNaN(curves.share(january, 90, 6)));
+        assertEquals(1000, buckets.latestCount(Product.LUMPSUM, Status.REPAYMENT_SUCCESS, 0));
+        // the March cohort matured 2026-04-15 and is 76 days past due at the observation date
+        assertEquals(1000, buckets.latestCount(Product.LUMPSUM, Status.DISBURSEMENT, 3));
+        assertEquals(2000, buckets.latestCount(Product.LUMPSUM, Status.DISBURSEMENT, 4));
+    }
+}
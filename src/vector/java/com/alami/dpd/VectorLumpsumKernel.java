@@ -0,0 +1,60 @@
+package com.alami.dpd;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link LumpsumKernel} on the JDK Vector API, only compiled with the {@code vector} Maven profile.
+ * Loaded reflectively by {@link LumpsumBatch}, which falls back to {@link ScalarLumpsumKernel}.
+ *
+ * <p>Statuses are loaded as at least 128-bit byte vectors, the smallest shape every vector ISA has,
+ * and widened to the preferred int species one part at a time, so 128-bit hardware gets four parts of
+ * four ints and 512-bit hardware one part of sixteen.
+ */
+final class VectorLumpsumKernel implements LumpsumKernel {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class,
+            VectorShape.forBitSize(Math.max(ByteVector.SPECIES_128.vectorBitSize(), INTS.length() * Byte.SIZE)));
+    private static final int PARTS = BYTES.length() / INTS.length();
+    private static final int STEP = PARTS * INTS.length();
+    private static final int[] PAID_ORDINALS = paidOrdinals();
+
+    private final ScalarLumpsumKernel tail = new ScalarLumpsumKernel();
+
+    @Override
+    public void calculate(int[] maturityDays, byte[] statuses, int from, int to, int calculationDay, int[] dpd) {
+        IntVector zero = IntVector.zero(INTS);
+        IntVector day = IntVector.broadcast(INTS, calculationDay);
+        int i = from;
+        // the byte load reads BYTES.length() statuses, which may be more than the STEP consumed
+        for (; to - i >= BYTES.length(); i += STEP) {
+            ByteVector bytes = ByteVector.fromArray(BYTES, statuses, i);
+            for (int part = 0; part < PARTS; part++) {
+                int offset = i + part * INTS.length();
+                IntVector status = (IntVector) bytes.convertShape(VectorOperators.B2I, INTS, part);
+                VectorMask<Integer> paid = status.eq(PAID_ORDINALS[0]);
+                for (int p = 1; p < PAID_ORDINALS.length; p++) {
+                    paid = paid.or(status.eq(PAID_ORDINALS[p]));
+                }
+                day.sub(IntVector.fromArray(INTS, maturityDays, offset))
+                        .max(zero)
+                        .blend(zero, paid)
+                        .intoArray(dpd, offset);
+            }
+        }
+        tail.calculate(maturityDays, statuses, i, to, calculationDay, dpd);
+    }
+
+    private static int[] paidOrdinals() {
+        int[] ordinals = new int[Lumpsum.PAID_STATUSES.size()];
+        int i = 0;
+        for (Status status : Lumpsum.PAID_STATUSES) {
+            ordinals[i++] = status.ordinal();
+        }
+        return ordinals;
+    }
+}